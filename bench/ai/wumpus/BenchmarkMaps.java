@@ -0,0 +1,79 @@
+package ai.wumpus;
+
+import java.util.Random;
+
+// Fixed corpus of playable maps for the benchmarks. Every map has exactly one
+// start room and one Wumpus, like the levels the GA converges to, and the same
+// seed always gives the same corpus.
+public class BenchmarkMaps {
+
+	public static final int ROWS = 7;
+	public static final int COLUMNS = 10;
+
+	public static int[][][] corpus(int size, long seed) {
+		return corpus(size, seed, ROWS, COLUMNS);
+	}
+
+	// Corpus of maps with the given number of rows and columns
+	public static int[][][] corpus(int size, long seed, int rows, int columns) {
+		Random random = new Random(seed);
+		int[][][] maps = new int[size][][];
+
+		for (int ii = 0; ii < size; ii++) {
+			int[][] map = new int[rows][columns];
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					// Rooms and tunnels with the odd pit. The start room and
+					// the Wumpus are placed below.
+					map[row][column] = random.nextInt(20) == 0 ? Grid.PIT
+							: Grid.EMPTY + random.nextInt(3);
+				}
+			}
+
+			int start = random.nextInt(rows * columns);
+			int wumpus = (start + 1 + random.nextInt(rows * columns - 1))
+					% (rows * columns);
+			map[start / columns][start % columns] = Grid.START;
+			map[wumpus / columns][wumpus % columns] = Grid.WUMPUS;
+			maps[ii] = map;
+		}
+		return maps;
+	}
+
+	// Builds a linked grid with the breezes and Wumpus lairs placed the way
+	// WumpusAI places them
+	public static Grid toGrid(int[][] map) {
+		Grid grid = new Grid(COLUMNS, ROWS);
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				grid.setCellType(row, column, map[row][column]);
+			}
+		}
+		grid.informTilesOfTheirNeighbors();
+
+		for (int cell = 0; cell < grid.getCellCount(); cell++) {
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = grid.getNeighbor(cell, direction);
+				if (grid.isWumpus(cell) && !grid.isPit(neighbor)) {
+					grid.setLair(neighbor);
+				} else if (grid.isPit(cell) && !grid.isWumpus(neighbor)) {
+					grid.setBreezy(neighbor);
+				}
+			}
+		}
+		return grid;
+	}
+
+	// Row and column of the start room
+	public static int[] findStart(int[][] map) {
+		for (int row = 0; row < ROWS; row++) {
+			for (int column = 0; column < COLUMNS; column++) {
+				if (map[row][column] == Grid.START) {
+					return new int[] { row, column };
+				}
+			}
+		}
+		return new int[] { 0, 0 };
+	}
+
+}
@@ -0,0 +1,93 @@
+package ai.wumpus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Benchmarks of the synthetic player. Every operation works through the whole
+// map corpus, so the scores are per corpus rather than per map.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+
+	private static final int CORPUS_SIZE = 64;
+	private static final long CORPUS_SEED = 42;
+
+	private int[][][] maps;
+	private int[][] starts;
+	private Grid[] grids;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		maps = BenchmarkMaps.corpus(CORPUS_SIZE, CORPUS_SEED);
+		starts = new int[CORPUS_SIZE][];
+		grids = new Grid[CORPUS_SIZE];
+		for (int ii = 0; ii < CORPUS_SIZE; ii++) {
+			starts[ii] = BenchmarkMaps.findStart(maps[ii]);
+			grids[ii] = BenchmarkMaps.toGrid(maps[ii]);
+		}
+	}
+
+	// A whole game per map, as the fitness function plays it
+	@Benchmark
+	public void runSimulation(Blackhole blackhole) {
+		for (int[][] map : maps) {
+			blackhole.consume(WumpusAI.runSimulation(map,
+					BenchmarkMaps.COLUMNS, BenchmarkMaps.ROWS));
+		}
+	}
+
+	// Rebuilding the neighbor tables. Setting a cell to its own type is the
+	// cheapest way to make the grid relink.
+	@Benchmark
+	public void informTilesOfTheirNeighbors(Blackhole blackhole) {
+		for (Grid grid : grids) {
+			grid.setCellType(0, 0, grid.getCellType(0));
+			grid.informTilesOfTheirNeighbors();
+			blackhole.consume(grid.getNeighbor(0, 0));
+		}
+	}
+
+	// Creating an evaluator on a fresh grid, the baseline for evaluateTile
+	@Benchmark
+	public void newEvaluator(Blackhole blackhole) {
+		for (int ii = 0; ii < maps.length; ii++) {
+			Grid grid = BenchmarkMaps.toGrid(maps[ii]);
+			blackhole.consume(new MapEvaluator(grid, starts[ii][0],
+					starts[ii][1]));
+		}
+	}
+
+	// Evaluating every non-tunnel tile of a map in row-major order on a
+	// fresh evaluator. Subtract newEvaluator for the cost of the evaluations.
+	@Benchmark
+	public void evaluateTile(Blackhole blackhole) {
+		for (int ii = 0; ii < maps.length; ii++) {
+			Grid grid = BenchmarkMaps.toGrid(maps[ii]);
+			MapEvaluator mapEvaluator = new MapEvaluator(grid, starts[ii][0],
+					starts[ii][1]);
+			for (int cell = 0; cell < grid.getCellCount(); cell++) {
+				if (!grid.isTunnel(cell)) {
+					mapEvaluator.evaluateTile(grid.getTile(cell));
+				}
+			}
+			blackhole.consume(mapEvaluator.getLikelyWumpusCell());
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package jgap;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jgap.Chromosome;
+import org.jgap.Configuration;
+import org.jgap.Gene;
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.impl.DefaultConfiguration;
+import org.jgap.impl.IntegerGene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.wumpus.BenchmarkMaps;
+import ai.wumpus.SimulationResult;
+import ai.wumpus.WumpusAI;
+
+/**
+ * Benchmarks of the fitness function and of whole GA runs.
+ *
+ */
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+
+	private static final int CORPUS_SIZE = 64;
+	private static final long CORPUS_SEED = 42;
+	private static final int ISLANDS = 4;
+
+	@Param({ "easy", "medium", "hard" })
+	public String difficulty;
+
+	private Configuration conf;
+	private IChromosome[] chromosomes;
+	private WumpusFitnessFunction fitnessFunction;
+
+	// Simulations and cell counts of the corpus, for scoring alone
+	private int[][][] maps;
+	private SimulationResult[] results;
+	private int[][] cellCounts;
+	private final LevelFeatures features = new LevelFeatures();
+
+	// Discards the levels generate() logs
+	private PrintWriter logWriter;
+	private long seed;
+	private ExecutorService islandExecutor;
+
+	@Setup(Level.Trial)
+	public void setUp() throws InvalidConfigurationException {
+		conf = new DefaultConfiguration("benchmark", "benchmark");
+		fitnessFunction = new WumpusFitnessFunction(difficulty);
+
+		maps = BenchmarkMaps.corpus(CORPUS_SIZE, CORPUS_SEED);
+		chromosomes = new IChromosome[CORPUS_SIZE];
+		for (int ii = 0; ii < CORPUS_SIZE; ii++) {
+			Gene[] genes = new Gene[BenchmarkMaps.ROWS * BenchmarkMaps.COLUMNS];
+			for (int jj = 0; jj < genes.length; jj++) {
+				genes[jj] = new IntegerGene(conf, 0, 5);
+				genes[jj].setAllele(maps[ii][jj / BenchmarkMaps.COLUMNS][jj
+						% BenchmarkMaps.COLUMNS]);
+			}
+			chromosomes[ii] = new Chromosome(conf, genes);
+		}
+
+		results = new SimulationResult[CORPUS_SIZE];
+		cellCounts = new int[CORPUS_SIZE][];
+		for (int ii = 0; ii < CORPUS_SIZE; ii++) {
+			results[ii] = WumpusAI.runSimulation(maps[ii]);
+			cellCounts[ii] = features.extract(maps[ii]).getCellCounts()
+					.clone();
+		}
+
+		logWriter = new PrintWriter(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		islandExecutor = Executors.newFixedThreadPool(ISLANDS);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Configuration.reset("benchmark");
+		islandExecutor.shutdown();
+	}
+
+	// One uncached evaluation per corpus map
+	@Benchmark
+	@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public void evaluate(Blackhole blackhole) {
+		for (IChromosome chromosome : chromosomes) {
+			blackhole.consume(fitnessFunction.getFitnessValue(chromosome));
+		}
+	}
+
+	// Scoring of every corpus map against the difficulty profile, without
+	// simulating
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public void score(Blackhole blackhole) {
+		for (int ii = 0; ii < CORPUS_SIZE; ii++) {
+			blackhole.consume(fitnessFunction.score(results[ii],
+					cellCounts[ii], 0));
+		}
+	}
+
+	// Extraction of the level features of every corpus map
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public void features(Blackhole blackhole) {
+		for (int[][] map : maps) {
+			blackhole.consume(features.extract(map).getComponents());
+		}
+	}
+
+	// A complete 50-generation run on one thread
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public int[][] generate() {
+		return GenerateWumpusLevels.generate(logWriter, difficulty, null,
+				seed++);
+	}
+
+	// A 50-generation run of four islands with ring migration, one thread
+	// per island
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public GeneratedLevel generateOnIslands() {
+		GenerationOptions options = new GenerationOptions();
+		options.setSeed(seed++);
+		options.setIslands(ISLANDS);
+		options.setIslandExecutor(islandExecutor);
+		return GenerateWumpusLevels.generate(logWriter, difficulty, options);
+	}
+
+}
@@ -0,0 +1,118 @@
+package jgap;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.wumpus.BenchmarkMaps;
+import ai.wumpus.WumpusAI;
+
+/**
+ * Simulation and generation time against level size, from the default
+ * 7x10 up to 64x64.
+ *
+ */
+@Fork(1)
+public class GridSizeBenchmark {
+
+	private static final int CORPUS_SIZE = 16;
+	private static final long CORPUS_SEED = 42;
+
+	// Short runs, so that the largest levels finish in seconds
+	private static final int GENERATIONS = 10;
+
+	// Corpus maps of one size. The engine plays no part in simulating them,
+	// so simulate is not measured once per engine.
+	@State(Scope.Thread)
+	public static class Maps {
+
+		// Rows x columns
+		@Param({ "7x10", "16x16", "32x32", "64x64" })
+		public String size;
+
+		private int[][][] maps;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			String[] dimensions = size.split("x");
+			maps = BenchmarkMaps.corpus(CORPUS_SIZE, CORPUS_SEED,
+					Integer.parseInt(dimensions[0]),
+					Integer.parseInt(dimensions[1]));
+		}
+	}
+
+	// Settings of the generation runs of one size and engine
+	@State(Scope.Thread)
+	public static class Runs {
+
+		// Rows x columns
+		@Param({ "7x10", "16x16", "32x32", "64x64" })
+		public String size;
+
+		@Param({ "JGAP", "NATIVE" })
+		public GenerationOptions.Engine engine;
+
+		private int rows;
+		private int columns;
+
+		// Discards the levels generate() logs
+		private PrintWriter logWriter;
+		private long seed;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			String[] dimensions = size.split("x");
+			rows = Integer.parseInt(dimensions[0]);
+			columns = Integer.parseInt(dimensions[1]);
+
+			logWriter = new PrintWriter(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			});
+		}
+	}
+
+	// A whole game per corpus map
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public void simulate(Maps maps, Blackhole blackhole) {
+		for (int[][] map : maps.maps) {
+			blackhole.consume(WumpusAI.runSimulation(map));
+		}
+	}
+
+	// A complete run of GENERATIONS generations on one thread
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 5)
+	public GeneratedLevel generate(Runs runs) {
+		GenerationOptions options = new GenerationOptions();
+		options.setSeed(runs.seed++);
+		options.setEngine(runs.engine);
+		options.setGridSize(runs.rows, runs.columns);
+		options.setGenerations(GENERATIONS);
+		return GenerateWumpusLevels.generate(runs.logWriter, "medium",
+				options);
+	}
+
+}
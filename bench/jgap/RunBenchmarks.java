@@ -0,0 +1,32 @@
+package jgap;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark with the GC profiler, so that allocation rates are
+ * reported next to throughput and latency. Results are also written to
+ * jmh-result.json for comparison between revisions.
+ *
+ * An optional argument narrows the run to benchmarks matching a regular
+ * expression, e.g. "SimulationBenchmark".
+ *
+ */
+public class RunBenchmarks {
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : "Benchmark")
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json")
+				.build();
+
+		new Runner(options).run();
+	}
+
+}
@@ -1,254 +1,230 @@
 package ai.wumpus;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
-
-import jgap.WumpusSimulation;
 
 public class Agent {
 	// The grid (world) the agent can operate on
 	private Grid grid;
 
-	// Agent location
-	private int agentXPos;
-	private int agentYPos;
-
 	// The agent's "memory"
 	private MapEvaluator mapEvaluator;
 
+	// Finds paths back through the visited part of the grid
+	private PathPlanner pathPlanner;
+
 	// The best cell to move to next turn
-	private Tile nextTile;
+	private int nextCell = Grid.NONE;
 
 	// The cell which the agent started on
-	private Tile startTile;
+	private int startCell;
 
 	// Amount of arrows available to hunt the Wumpus
 	private int ARROW_COUNT = 1;
 
 	// Flag for end of game
-	public static boolean IS_GAME_OVER = false;
+	private boolean isGameOver = false;
+
+	// Statistics recorded when the game ended
+	private int outcome;
+	private String causeOfDeath;
+	private int finalSteps;
+	private int finalUnique;
 
-	private Tile currentTile;
+	// Agent location
+	private int currentCell;
 
 	// Counts the number of movements
 	private int moveCounter;
 
-	// Collection of visited tiles
-	private ArrayList<Tile> uniqueTiles;
+	// Visited cells and how many there are
+	private boolean[] uniqueCells;
+	private int uniqueCount;
+
+	// Whether decisions are recorded as AgentDecisionEvents
+	private final boolean traced;
 
 	public Agent(Grid agentGrid, int startX, int startY) {
 		this.grid = agentGrid;
 
-		this.agentXPos = startX;
-		this.agentYPos = startY;
-
 		this.mapEvaluator = new MapEvaluator(this.grid, startX, startY);
-		startTile = grid.getTile(startX, startY);
-		currentTile = grid.getTile(agentXPos, agentYPos);
-
-		uniqueTiles = new ArrayList<Tile>();
+		this.pathPlanner = new PathPlanner(this.grid);
+		startCell = grid.getCellId(startX, startY);
+		currentCell = startCell;
 
-		IS_GAME_OVER = false;
+		uniqueCells = new boolean[grid.getCellCount()];
+		traced = AgentDecisionEvent.sampleSimulation();
 	}
 
 	// Manually move the agent
 	public void moveToTile(int directionConstant) {
-		Tile neighbor = grid.getTile(agentXPos, agentYPos).getNeighborTile(
-				directionConstant);
-		moveToTile(neighbor);
+		int neighbor = grid.getNeighbor(currentCell, directionConstant);
+		if (neighbor != Grid.NONE) {
+			moveToCell(neighbor);
+		}
 	}
 
-	// Move the agent to a specific cell
+	// Move the agent to a specific tile
 	public void moveToTile(Tile destination) {
 		if (destination != null) {
-			agentXPos = destination.getX();
-			agentYPos = destination.getY();
-
-			currentTile = destination;
+			moveToCell(destination.getId());
+		}
+	}
 
-			if (!uniqueTiles.contains(destination)) {
-				uniqueTiles.add(destination);
-			}
-			moveCounter++;
+	// Move the agent to a specific cell
+	public void moveToCell(int destination) {
+		currentCell = destination;
 
-			// Agent moves into dangerous tile
-			if (destination.isWumpus()) {				
-				// Log simulation statistics
-				WumpusAI.setOutcome(0);
-				WumpusAI.setCauseOfDeath("wumpus");
-				WumpusAI.setSteps(moveCounter);
-				WumpusAI.setUnique(uniqueTiles.size());
-				WumpusAI.setMoveratio(uniqueTiles.size() / ((double) moveCounter));
-				WumpusSimulation.setSumOfMoves(WumpusSimulation.getSumOfMoves()
-						+ moveCounter);
+		if (!uniqueCells[destination]) {
+			uniqueCells[destination] = true;
+			uniqueCount++;
+		}
+		moveCounter++;
 
-				IS_GAME_OVER = true;
-			} else if (destination.isPit()) {
+		// Agent moves into dangerous tile
+		if (grid.isWumpus(destination)) {
+			// Log simulation statistics
+			endGame(0, "wumpus");
+		} else if (grid.isPit(destination)) {
 
-				// Log simulation statistics
-				WumpusAI.setOutcome(0);
-				WumpusAI.setCauseOfDeath("pit");
-				WumpusAI.setSteps(moveCounter);
-				WumpusAI.setUnique(uniqueTiles.size());
-				WumpusAI.setMoveratio(uniqueTiles.size() / ((double) moveCounter));
-				WumpusSimulation.setSumOfMoves(WumpusSimulation.getSumOfMoves()
-						+ moveCounter);
-
-				IS_GAME_OVER = true;
-			}
+			// Log simulation statistics
+			endGame(0, "pit");
 		}
 	}
 
 	// Selects the next cell to move to
 	public void chooseNextTile() {
-		Tile currentTile = grid.getTile(agentXPos, agentYPos);
-		mapEvaluator.evaluateTile(currentTile);
+		AgentDecisionEvent event = traced ? new AgentDecisionEvent(
+				AgentDecisionEvent.CHOOSE_NEXT_TILE, moveCounter, currentCell)
+				: null;
+
+		mapEvaluator.evaluateCell(currentCell);
+
+		nextCell = chooseBestNeighbor();
 
-		ArrayList<Tile> neighbors = mapEvaluator.getTilesNeighbors(currentTile);
-		Tile bestNeighbor = chooseBestNeighbors(neighbors);
-		nextTile = grid.getTile(bestNeighbor.getX(), bestNeighbor.getY());
+		if (event != null)
+			event.finish(nextCell);
 	}
 
-	// Selects the most desirable neighbor tile to move to.
-	private Tile chooseBestNeighbors(ArrayList<Tile> neighbors) {
+	// Selects the most desirable neighbor cell to move to.
+	private int chooseBestNeighbor() {
 
 		// If there are neighbors we haven't visited, return first the neighbors
 		// we haven't visited.
-		ArrayList<Tile> nonVisited = Tile.where(neighbors,
-				o -> o.isVisited() == false && o.getCost() <= 1);
-		if (nonVisited.size() > 0) {
-			return nonVisited.get(0);
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(currentCell, direction);
+			if (neighbor != Grid.NONE && !grid.isVisited(neighbor)
+					&& grid.getCost(neighbor) <= 1) {
+				return neighbor;
+			}
 		}
 
-		// Check unvisitedSafeTiles
-		ArrayList<Tile> unvisitedSafeTiles = new ArrayList<Tile>(grid
-				.getUnvisitedSafeTiles().values());
-		if (!unvisitedSafeTiles.isEmpty()) {
-			Tile destination = unvisitedSafeTiles.remove(0);
-			grid.getUnvisitedSafeTiles().remove(
-					destination.getX() + "," + destination.getY());
-
-			ArrayList<Tile> destinationPath = doBFS(
-					currentTile,
-					Tile.where(destination.getAllNeighbors(),
-							o -> o.isVisited()).get(0));
-			for (Tile tileInPath : destinationPath) {
-				moveToTile(tileInPath);
+		// Check unvisitedSafeTiles, skipping any the agent cannot walk back to
+		while (grid.hasUnvisitedSafeCells()) {
+			int destination = grid.pollUnvisitedSafeCell();
+
+			int pathLength = findPathToNeighborOf(destination);
+			if (pathLength != Grid.NONE) {
+				for (int ii = 0; ii < pathLength; ii++) {
+					moveToCell(pathPlanner.getPathCell(ii));
+				}
+				return destination;
 			}
-			return destination;
 		}
 
 		// Check for suspected Wumpus
-		Tile likelyWumpusTile = mapEvaluator.getLikelyWumpusTile();
-		if (likelyWumpusTile != null
-				&& !(Tile.where(likelyWumpusTile.getAllNeighbors(),
-						o -> o.isVisited()).isEmpty())) {
-			ArrayList<Tile> destinationPath = doBFS(
-					currentTile,
-					Tile.where(likelyWumpusTile.getAllNeighbors(),
-							o -> o.isVisited()).get(0));
-			if (!destinationPath.isEmpty()) {
-				if (destinationPath.size() > 1) {
-					for (int ii = 0; ii < destinationPath.size() - 1; ii++) {
-						moveToTile(destinationPath.get(ii));
-					}
+		int likelyWumpusCell = mapEvaluator.getLikelyWumpusCell();
+		if (likelyWumpusCell != Grid.NONE) {
+			int pathLength = findPathToNeighborOf(likelyWumpusCell);
+			if (pathLength > 0) {
+				for (int ii = 0; ii < pathLength - 1; ii++) {
+					moveToCell(pathPlanner.getPathCell(ii));
 				}
-				return destinationPath.get(destinationPath.size() - 1);
+				return pathPlanner.getPathCell(pathLength - 1);
 			}
 		}
 
 		// Check neighbors with smallest count of pit prob and wumpus prob
-		ArrayList<Tile> nonVisitedNeighbors = Tile.where(neighbors,
-				o -> o.isVisited() == false);
 		int lowestRiskValue = Integer.MAX_VALUE;
-		Tile targetTile = null;
-		for (Tile aNeighbor : nonVisitedNeighbors) {
-			if (aNeighbor.getBreezeCounter() + aNeighbor.getLairCounter() < lowestRiskValue) {
-				lowestRiskValue = aNeighbor.getBreezeCounter()
-						+ aNeighbor.getLairCounter();
-				targetTile = aNeighbor;
+		int targetCell = Grid.NONE;
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(currentCell, direction);
+			if (neighbor != Grid.NONE
+					&& !grid.isVisited(neighbor)
+					&& grid.getBreezeCounter(neighbor)
+							+ grid.getLairCounter(neighbor) < lowestRiskValue) {
+				lowestRiskValue = grid.getBreezeCounter(neighbor)
+						+ grid.getLairCounter(neighbor);
+				targetCell = neighbor;
 			}
 		}
 
-		if (targetTile != null) {
-			return targetTile;
+		if (targetCell != Grid.NONE) {
+			return targetCell;
 		} else {
 			// Agent surrenders
 
 			// Log simulation statistics
-			WumpusAI.setOutcome(0);
-			WumpusAI.setCauseOfDeath("surrender");
-			WumpusAI.setSteps(moveCounter);
-			WumpusAI.setUnique(uniqueTiles.size());
-			WumpusAI.setMoveratio(uniqueTiles.size() / ((double) moveCounter));
-			WumpusSimulation.setSumOfMoves(WumpusSimulation.getSumOfMoves()
-					+ moveCounter);
-			
-			IS_GAME_OVER = true;
-			return currentTile;
+			endGame(0, "surrender");
+			return currentCell;
 		}
 
 	}
 
-	// Do BFS within all visited safe tiles
-	private ArrayList<Tile> doBFS(Tile start, Tile dest) {
-		ArrayList<Tile> result = new ArrayList<Tile>();
-
-		HashMap<Tile, Boolean> flag = new HashMap<Tile, Boolean>();
-		for (Tile t : grid.getAllMatchingTiles(o -> o.isVisited())) {
-			flag.put(t, false);
-		}
-
-		HashMap<Tile, Tile> prev = new HashMap<Tile, Tile>();
-
-		LinkedList<Tile> tileQ = new LinkedList<Tile>();
-		tileQ.push(start);
-		flag.put(start, true);
-
-		while (!tileQ.isEmpty()) {
-			Tile current = tileQ.pop();
-			if (current.equals(dest))
-				break;
-			for (Tile neighborTile : Tile.where(current.getAllNeighbors(),
-					o -> o.isVisited())) {
-				if (flag.get(neighborTile) == false) {
-					prev.put(neighborTile, current);
-					tileQ.push(neighborTile);
-					flag.put(neighborTile, true);
-				}
-			}
-		}
-
-		Tile targetDest = dest;
+	// Finds a shortest path through visited cells to the first visited
+	// neighbor of the given cell. Returns the path length, or Grid.NONE if
+	// there is no such path.
+	private int findPathToNeighborOf(int cell) {
+		if (!traced)
+			return findPathToVisitedNeighborOf(cell);
+
+		AgentDecisionEvent event = new AgentDecisionEvent(
+				AgentDecisionEvent.FIND_PATH, moveCounter, currentCell);
+		int pathLength = findPathToVisitedNeighborOf(cell);
+		event.finish(pathLength);
+		return pathLength;
+	}
 
-		while (!targetDest.equals(start)) {
-			// System.out.println("BFS target dest: " + targetDest.getName());
-			result.add(targetDest);
-			targetDest = prev.get(targetDest);
-		}
-		Collections.reverse(result);
-		return result;
+	private int findPathToVisitedNeighborOf(int cell) {
+		int visitedNeighbor = mapEvaluator.getFirstVisitedNeighbor(cell);
+		if (visitedNeighbor == Grid.NONE)
+			return Grid.NONE;
+
+		// The start cell is visited before the agent first walks through it,
+		// so until then which shortest path is taken changes the unique count.
+		// Afterwards every cell on a path has been counted, and any shortest
+		// path will do.
+		if (!uniqueCells[startCell])
+			return pathPlanner.findPath(currentCell, visitedNeighbor);
+		return pathPlanner.findPathBidirectional(currentCell, visitedNeighbor);
 	}
 
 	// Moves the agent to the desired tile
 	public void moveToBestTile() {
-		if (nextTile != null) {
-			moveToTile(nextTile);
+		if (nextCell != Grid.NONE) {
+			moveToCell(nextCell);
 		}
 	}
 
 	// If we are next to what we think is the Wumpus, then kill it!
 	public boolean tryToKillWumpus() {
-		if (mapEvaluator.getLikelyWumpusTile() == null || ARROW_COUNT <= 0)
-			return false;
+		if (!traced)
+			return shootIfNextToWumpus();
+
+		AgentDecisionEvent event = new AgentDecisionEvent(
+				AgentDecisionEvent.TRY_TO_KILL_WUMPUS, moveCounter, currentCell);
+		boolean killed = shootIfNextToWumpus();
+		event.finish(killed ? 1 : 0);
+		return killed;
+	}
 
-		Tile testTile = mapEvaluator.getLikelyWumpusTile();
+	private boolean shootIfNextToWumpus() {
+		int likelyWumpusCell = mapEvaluator.getLikelyWumpusCell();
+		if (likelyWumpusCell == Grid.NONE || ARROW_COUNT <= 0)
+			return false;
 
-		for (Tile neighbor : this.currentTile.getAllNeighbors()) {
-			if ((testTile.getX() == neighbor.getX())
-					&& (testTile.getY() == neighbor.getY())) {
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(currentCell, direction);
+			if (neighbor == likelyWumpusCell) {
 				return killTheWumpus(neighbor);
 			}
 		}
@@ -256,32 +232,42 @@ public class Agent {
 	}
 
 	// Tries to kill the wumpus
-	private boolean killTheWumpus(Tile suspectedTile) {
+	private boolean killTheWumpus(int suspectedCell) {
 		if (ARROW_COUNT > 0) {
 			this.ARROW_COUNT = 0;
-			
-			if (suspectedTile.isWumpus()) {
+
+			if (grid.isWumpus(suspectedCell)) {
 				// Agent killed wumpus
-				mapEvaluator.wumpusKilled(suspectedTile);
+				mapEvaluator.wumpusKilled(suspectedCell);
 
 				// Log simulation statistics
-				WumpusAI.setOutcome(1);
-				WumpusAI.setCauseOfDeath("n/a");
-				WumpusAI.setSteps(moveCounter);
-				WumpusAI.setUnique(uniqueTiles.size());
-				WumpusAI.setMoveratio(uniqueTiles.size() / ((double) moveCounter));
-				WumpusSimulation.setSumOfMoves(WumpusSimulation.getSumOfMoves()
-						+ moveCounter);
-				WumpusSimulation.setSumOfKilledWumpus(WumpusSimulation
-						.getSumOfKilledWumpus() + 1);
-
-				IS_GAME_OVER = true;
-				return true;				
+				endGame(1, "n/a");
+				return true;
 			}
 		}
 		return false;
 	}
 
+	// Ends the game and records its statistics
+	private void endGame(int outcome, String causeOfDeath) {
+		this.outcome = outcome;
+		this.causeOfDeath = causeOfDeath;
+		this.finalSteps = moveCounter;
+		this.finalUnique = uniqueCount;
+
+		isGameOver = true;
+	}
+
+	// Statistics of the finished game
+	public SimulationResult getResult(double runtime) {
+		return new SimulationResult(outcome, finalSteps, finalUnique,
+				finalUnique / ((double) finalSteps), runtime, causeOfDeath);
+	}
+
+	public boolean isGameOver() {
+		return isGameOver;
+	}
+
 	public boolean haveAllSafeTilesBeenVisited() {
 		ArrayList<Tile> unvisitedTiles = mapEvaluator
 				.getAllTraversableUnvisitedTiles();
@@ -294,15 +280,15 @@ public class Agent {
 	}
 
 	public boolean isAtStartTile() {
-		return this.startTile == currentTile;
+		return this.startCell == currentCell;
 	}
 
 	public Tile getCurrentTile() {
-		return currentTile;
+		return grid.getTile(currentCell);
 	}
 
 	public void setCurrentTile(Tile currentTile) {
-		this.currentTile = currentTile;
+		this.currentCell = currentTile.getId();
 	}
 
 }
@@ -0,0 +1,73 @@
+package ai.wumpus;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event spanning one decision of the agent. There are
+// several per move, so the event is disabled unless a recording enables it,
+// and even then only every SAMPLE_INTERVAL-th simulation is traced. Agents
+// of other simulations create no events at all.
+@Name("ai.wumpus.AgentDecision")
+@Label("Agent Decision")
+@Category({ "Wumpus", "Simulation" })
+@Description("A decision of the synthetic player in a sampled simulation")
+@Enabled(false)
+class AgentDecisionEvent extends Event {
+
+	// Decisions
+	static final String CHOOSE_NEXT_TILE = "chooseNextTile";
+	static final String FIND_PATH = "findPath";
+	static final String TRY_TO_KILL_WUMPUS = "tryToKillWumpus";
+
+	// One in this many simulations is traced
+	static final int SAMPLE_INTERVAL = 16;
+
+	private static final AtomicLong simulations = new AtomicLong();
+
+	@Label("Decision")
+	String decision;
+
+	@Label("Step")
+	@Description("Moves of the agent before the decision")
+	int step;
+
+	@Label("Cell")
+	@Description("Cell id of the agent, row * width + column")
+	int cell;
+
+	@Label("Result")
+	@Description("Cell chosen, path length or -1 if none, or 1 if the Wumpus was killed")
+	int result;
+
+	private AgentDecisionEvent() {
+	}
+
+	AgentDecisionEvent(String decision, int step, int cell) {
+		this.decision = decision;
+		this.step = step;
+		this.cell = cell;
+		begin();
+	}
+
+	// Commits the event if it is recorded
+	void finish(int result) {
+		end();
+		if (shouldCommit()) {
+			this.result = result;
+			commit();
+		}
+	}
+
+	// Whether a new simulation traces its decisions
+	static boolean sampleSimulation() {
+		return new AgentDecisionEvent().isEnabled()
+				&& simulations.getAndIncrement() % SAMPLE_INTERVAL == 0;
+	}
+
+}
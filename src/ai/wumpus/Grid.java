@@ -1,188 +1,482 @@
 package ai.wumpus;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Predicate;
 
 public class Grid {
 
+	// Cell type codes, same as the gene IDs used by the level generator
+	public static final byte START = 0;
+	public static final byte EMPTY = 1;
+	public static final byte NE_SW_TUNNEL = 2;
+	public static final byte NW_SE_TUNNEL = 3;
+	public static final byte PIT = 4;
+	public static final byte WUMPUS = 5;
+
+	// Cell id used for "no cell", e.g. the neighbors of a tunnel
+	public static final int NONE = -1;
+
+	// Cell flags
+	private static final byte FLAG_BREEZE = 1;
+	private static final byte FLAG_LAIR = 1 << 1;
+	private static final byte FLAG_VISITED = 1 << 2;
+
 	// Default height, equals number of rows
-	private final int DEFAULT_HEIGHT = 7;
+	public static final int DEFAULT_HEIGHT = 7;
 
 	// Default width, equals number of columns
-	private final int DEFAULT_WIDTH = 10;
+	public static final int DEFAULT_WIDTH = 10;
 
 	private int gridWidth;
 	private int gridHeight;
 
-	private Tile[][] tiles;
+	// Cell state, indexed by cell id (row * gridWidth + column)
+	private byte[] cellTypes;
+	private byte[] flags;
+	private int[] costs;
+	private int[] breezeCounters;
+	private int[] lairCounters;
+
+	// Wumpus probabilities, kept in a max-heap of suspects
+	private WumpusSuspects wumpusSuspects;
+
+	// Tunnel-resolved neighbor cell ids, four per cell in direction constant
+	// order. Tunnels have no neighbors.
+	private int[] neighbors;
+
+	// Cells within two steps of each room, the area a Wumpus smell can come
+	// from. The cells around room c are wumpusNeighborCells[from..to) with
+	// from = wumpusNeighborOffsets[c] and to = wumpusNeighborOffsets[c + 1].
+	private int[] wumpusNeighborOffsets;
+	private int[] wumpusNeighborCells;
+
+	// Cells that have a given cell as a neighbor, once per direction, laid
+	// out the same way as the Wumpus neighborhoods
+	private int[] reverseNeighborOffsets;
+	private int[] reverseNeighborCells;
+
+	// Whether the tables above match the current cell types
+	private boolean linked;
 
-	// All visited safe tiles
-	private Map<String, Tile> unvisitedSafeTiles;
+	// All unvisited safe tiles
+	private UnvisitedSafeCells unvisitedSafeCells;
+
+	// Tile views, created on demand
+	private Tile[] tiles;
 
 	public Grid() {
 		gridWidth = DEFAULT_WIDTH;
 		gridHeight = DEFAULT_HEIGHT;
 
-		tiles = new Tile[gridHeight][gridWidth];
-
-		unvisitedSafeTiles = new HashMap<String, Tile>();
+		initCells();
 	}
 
 	public Grid(int width, int height) {
 		gridWidth = width;
 		gridHeight = height;
 
-		tiles = new Tile[gridHeight][gridWidth];
+		initCells();
+	}
+
+	private void initCells() {
+		int cellCount = gridWidth * gridHeight;
 
-		unvisitedSafeTiles = new HashMap<String, Tile>();
+		cellTypes = new byte[cellCount];
+		flags = new byte[cellCount];
+		costs = new int[cellCount];
+		breezeCounters = new int[cellCount];
+		lairCounters = new int[cellCount];
+		neighbors = new int[cellCount * 4];
+
+		Arrays.fill(cellTypes, EMPTY);
+		Arrays.fill(costs, 1);
+		Arrays.fill(neighbors, NONE);
+
+		wumpusSuspects = new WumpusSuspects(cellCount);
+		unvisitedSafeCells = new UnvisitedSafeCells(gridWidth, gridHeight);
+		tiles = new Tile[cellCount];
 	}
 
-	public Tile getTile(int xPos, int yPos) {
-		return tiles[xPos][yPos];
+	// Cell id helpers
+	public int getCellCount() {
+		return cellTypes.length;
+	}
+
+	public int getCellId(int row, int column) {
+		return row * gridWidth + column;
+	}
+
+	public int getRow(int cell) {
+		return cell / gridWidth;
+	}
+
+	public int getColumn(int cell) {
+		return cell % gridWidth;
+	}
+
+	// Cell type accessors
+	public byte getCellType(int cell) {
+		return cellTypes[cell];
+	}
+
+	public void setCellType(int row, int column, int type) {
+		cellTypes[getCellId(row, column)] = (byte) type;
+		linked = false;
+	}
+
+	public boolean isTunnel(int cell) {
+		return cellTypes[cell] == NE_SW_TUNNEL
+				|| cellTypes[cell] == NW_SE_TUNNEL;
+	}
+
+	public boolean isPit(int cell) {
+		return cellTypes[cell] == PIT;
+	}
+
+	public boolean isWumpus(int cell) {
+		return cellTypes[cell] == WUMPUS;
+	}
+
+	// Cell flag accessors
+	public boolean isBreezy(int cell) {
+		return (flags[cell] & FLAG_BREEZE) != 0;
+	}
+
+	public void setBreezy(int cell) {
+		flags[cell] |= FLAG_BREEZE;
+	}
+
+	public boolean isLair(int cell) {
+		return (flags[cell] & FLAG_LAIR) != 0;
+	}
+
+	public void setLair(int cell) {
+		flags[cell] |= FLAG_LAIR;
+	}
+
+	public boolean isVisited(int cell) {
+		return (flags[cell] & FLAG_VISITED) != 0;
+	}
+
+	public void setVisited(int cell, boolean visited) {
+		if (visited)
+			flags[cell] |= FLAG_VISITED;
+		else
+			flags[cell] &= ~FLAG_VISITED;
+	}
+
+	// Agent knowledge accessors
+	public int getCost(int cell) {
+		return costs[cell];
 	}
 
-	public void setTile(Tile aTile, int xPos, int yPos) {
-		this.tiles[xPos][yPos] = aTile;
+	public void setCost(int cell, int cost) {
+		costs[cell] = cost;
 	}
 
-	// Links tiles to each other
+	public boolean isSafe(int cell) {
+		return costs[cell] == 1;
+	}
+
+	public int getBreezeCounter(int cell) {
+		return breezeCounters[cell];
+	}
+
+	public void setBreezeCounter(int cell, int value) {
+		breezeCounters[cell] = value;
+	}
+
+	public int getLairCounter(int cell) {
+		return lairCounters[cell];
+	}
+
+	public void setLairCounter(int cell, int value) {
+		lairCounters[cell] = value;
+	}
+
+	// Returns NONE if the cell was never suspected to be the Wumpus
+	public int getWumpusProbability(int cell) {
+		return wumpusSuspects.getProbability(cell);
+	}
+
+	public void setWumpusProbability(int cell, int probability) {
+		wumpusSuspects.setProbability(cell, probability);
+	}
+
+	public void clearWumpusProbability(int cell) {
+		wumpusSuspects.remove(cell);
+	}
+
+	// Returns the cell with the highest Wumpus probability, the last one in
+	// row-major order on ties, or NONE if no cell is suspected
+	public int getMostLikelyWumpusCell() {
+		return wumpusSuspects.peek();
+	}
+
+	// Unvisited safe cell bookkeeping
+	public void addUnvisitedSafeCell(int cell) {
+		unvisitedSafeCells.add(cell);
+	}
+
+	public void removeUnvisitedSafeCell(int cell) {
+		unvisitedSafeCells.remove(cell);
+	}
+
+	public boolean hasUnvisitedSafeCells() {
+		return !unvisitedSafeCells.isEmpty();
+	}
+
+	// Removes and returns the next unvisited safe cell, or NONE
+	public int pollUnvisitedSafeCell() {
+		return unvisitedSafeCells.poll();
+	}
+
+	// Links tiles to each other. The neighbor and Wumpus neighborhood tables
+	// are built once per map and reused until a cell type changes.
 	public void informTilesOfTheirNeighbors() {
+		if (linked)
+			return;
+
+		Arrays.fill(neighbors, NONE);
 		for (int row = 0; row < gridHeight; row++) {
 			for (int column = 0; column < gridWidth; column++) {
 
-				Tile currentTile = tiles[row][column];
-				if (!currentTile.isTunnelNE() && !currentTile.isTunnelNW()) {
+				int currentCell = getCellId(row, column);
+				if (!isTunnel(currentCell)) {
 					for (int directionConstants = 0; directionConstants < 4; directionConstants++) {
-						Tile tmp = getNeighbor(row, column, directionConstants);
-						currentTile.setNeighborTile(tmp, directionConstants);
+						neighbors[currentCell * 4 + directionConstants] = resolveNeighbor(
+								row, column, directionConstants);
 					}
 				}
 			}
 		}
+
+		linkReverseNeighbors();
+		linkWumpusNeighbors();
+		linked = true;
+	}
+
+	// Returns the neighbor cell id in certain direction, or NONE for tunnels
+	public int getNeighbor(int cell, int directionConstant) {
+		return neighbors[cell * 4 + directionConstant];
+	}
+
+	// Direction the agent leaves a tunnel in, indexed by the direction it
+	// entered in
+	private static final int[] NE_SW_TUNNEL_EXITS = { Tile.DIRECTIONS_WEST,
+			Tile.DIRECTIONS_SOUTH, Tile.DIRECTIONS_EAST, Tile.DIRECTIONS_NORTH };
+	private static final int[] NW_SE_TUNNEL_EXITS = { Tile.DIRECTIONS_EAST,
+			Tile.DIRECTIONS_NORTH, Tile.DIRECTIONS_WEST, Tile.DIRECTIONS_SOUTH };
+
+	// Get neighboring cell in certain direction, following tunnels and
+	// wrapping around the edges until a room is reached
+	private int resolveNeighbor(int row, int column, int directionConstant) {
+		int neighbor = resolveNeighbor(cellTypes, gridHeight, gridWidth, row,
+				column, directionConstant);
+		if (neighbor == NONE) {
+			throw new IllegalStateException("Tunnel cycle leaving " + row
+					+ "," + column + " in direction " + directionConstant);
+		}
+		return neighbor;
 	}
 
-	// Get neighboring tile in certain direction
-	private Tile getNeighbor(int row, int column, int directionConstant) {
+	/**
+	 * The movement rules of the game: the room reached leaving a cell in a
+	 * direction, following tunnels and wrapping around the edges.
+	 *
+	 * @param cellTypes Cell types, indexed by cell id (row * columns +
+	 *                  column)
+	 * @param rows Number of rows
+	 * @param columns Number of columns
+	 * @param row Row of the cell left
+	 * @param column Column of the cell left
+	 * @param directionConstant The direction, a Tile.DIRECTIONS_ constant
+	 * @return The cell id of the room reached, or NONE if the tunnels go
+	 *         around forever
+	 */
+	public static int resolveNeighbor(byte[] cellTypes, int rows, int columns,
+			int row, int column, int directionConstant) {
 		int neighborRow = row;
 		int neighborColumn = column;
+		int direction = directionConstant;
+
+		// Each cell can be entered from four directions, so a longer chain
+		// has come back to where it was and would go around forever
+		for (int steps = 0; steps <= 4 * cellTypes.length; steps++) {
+			switch (direction) {
+			case Tile.DIRECTIONS_NORTH:
+				neighborRow = (neighborRow == 0) ? rows - 1 : neighborRow - 1;
+				break;
+			case Tile.DIRECTIONS_EAST:
+				neighborColumn = (neighborColumn == columns - 1) ? 0
+						: neighborColumn + 1;
+				break;
+			case Tile.DIRECTIONS_SOUTH:
+				neighborRow = (neighborRow == rows - 1) ? 0 : neighborRow + 1;
+				break;
+			default:
+				neighborColumn = (neighborColumn == 0) ? columns - 1
+						: neighborColumn - 1;
+			}
 
-		Tile neighbor;
-		switch (directionConstant) {
-		case Tile.DIRECTIONS_NORTH:
-			neighborRow = (row == 0) ? gridHeight - 1 : row - 1;
-			neighbor = tiles[neighborRow][neighborColumn];
-			if (neighbor.isTunnelNE())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_WEST);
-			else if (neighbor.isTunnelNW())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_EAST);
-			return neighbor;
-		case Tile.DIRECTIONS_EAST:
-			neighborColumn = (column + 1) % gridWidth;
-			neighbor = tiles[neighborRow][neighborColumn];
-			if (neighbor.isTunnelNE())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_SOUTH);
-			else if (neighbor.isTunnelNW())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_NORTH);
-			return neighbor;
-		case Tile.DIRECTIONS_SOUTH:
-			neighborRow = (row + 1) % gridHeight;
-			neighbor = tiles[neighborRow][neighborColumn];
-			if (neighbor.isTunnelNE())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_EAST);
-			else if (neighbor.isTunnelNW())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_WEST);
-			return neighbor;
-		default:
-			neighborColumn = (column == 0) ? gridWidth - 1 : column - 1;
-			neighbor = tiles[neighborRow][neighborColumn];
-			if (neighbor.isTunnelNE())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_NORTH);
-			else if (neighbor.isTunnelNW())
-				return getNeighbor(neighborRow, neighborColumn,
-						Tile.DIRECTIONS_SOUTH);
-			return neighbor;
+			int neighbor = neighborRow * columns + neighborColumn;
+			if (cellTypes[neighbor] == NE_SW_TUNNEL)
+				direction = NE_SW_TUNNEL_EXITS[direction];
+			else if (cellTypes[neighbor] == NW_SE_TUNNEL)
+				direction = NW_SE_TUNNEL_EXITS[direction];
+			else
+				return neighbor;
 		}
+		return NONE;
 	}
 
-	// Return all tiles surrounding the Wumpus
-	public ArrayList<Tile> getWumpusNeighbors(Tile tile) {
-		ArrayList<Tile> wumpusNeighbors = new ArrayList<Tile>();
-
-		// Loop for all tiles within two distance in all directions
-		for (int ii = 0; ii < 4; ii++) {
-			Tile oneTileNeighbor = getNeighbor(tile.getX(), tile.getY(), ii);
-
-			// If the one tile distance neighbor isn't the current tile, check
-			// for its neighbors
-			if (!oneTileNeighbor.equals(tile)) {
-				if (!wumpusNeighbors.contains(oneTileNeighbor))
-					wumpusNeighbors.add(oneTileNeighbor);
-				for (int jj = 0; jj < 4; jj++) {
-
-					// If the two tiles distance neighbor isn't already in the
-					// list, add it
-					Tile twoTilesNeighbor = getNeighbor(oneTileNeighbor.getX(),
-							oneTileNeighbor.getY(), jj);
-					if (!wumpusNeighbors.contains(twoTilesNeighbor)
-							&& !twoTilesNeighbor.equals(tile)) {
-						wumpusNeighbors.add(twoTilesNeighbor);
+	// Inverts the neighbor table
+	private void linkReverseNeighbors() {
+		reverseNeighborOffsets = new int[getCellCount() + 1];
+		for (int ii = 0; ii < neighbors.length; ii++) {
+			if (neighbors[ii] != NONE)
+				reverseNeighborOffsets[neighbors[ii] + 1]++;
+		}
+		for (int cell = 0; cell < getCellCount(); cell++) {
+			reverseNeighborOffsets[cell + 1] += reverseNeighborOffsets[cell];
+		}
+
+		reverseNeighborCells = new int[reverseNeighborOffsets[getCellCount()]];
+		int[] filled = new int[getCellCount()];
+		for (int ii = 0; ii < neighbors.length; ii++) {
+			int neighbor = neighbors[ii];
+			if (neighbor != NONE)
+				reverseNeighborCells[reverseNeighborOffsets[neighbor]
+						+ filled[neighbor]++] = ii / 4;
+		}
+	}
+
+	// Number of directions, over all cells, that lead to the given cell
+	public int getReverseNeighborCount(int cell) {
+		return reverseNeighborOffsets[cell + 1] - reverseNeighborOffsets[cell];
+	}
+
+	// The index-th cell that has the given cell as a neighbor
+	public int getReverseNeighbor(int cell, int index) {
+		return reverseNeighborCells[reverseNeighborOffsets[cell] + index];
+	}
+
+	// Collects the cells within two steps of every room
+	private void linkWumpusNeighbors() {
+		wumpusNeighborOffsets = new int[getCellCount() + 1];
+		int[] cells = new int[getCellCount() * 20];
+		int count = 0;
+
+		// Last room each cell was added for, to skip duplicates
+		int[] addedFor = new int[getCellCount()];
+		Arrays.fill(addedFor, NONE);
+
+		for (int cell = 0; cell < getCellCount(); cell++) {
+			wumpusNeighborOffsets[cell] = count;
+			if (isTunnel(cell))
+				continue;
+
+			// The room itself is never one of its own neighbors
+			addedFor[cell] = cell;
+			for (int ii = 0; ii < 4; ii++) {
+				int oneTileNeighbor = getNeighbor(cell, ii);
+
+				// If the one tile distance neighbor isn't the current cell,
+				// check for its neighbors
+				if (oneTileNeighbor != cell) {
+					if (addedFor[oneTileNeighbor] != cell) {
+						addedFor[oneTileNeighbor] = cell;
+						cells[count++] = oneTileNeighbor;
+					}
+					for (int jj = 0; jj < 4; jj++) {
+						int twoTilesNeighbor = getNeighbor(oneTileNeighbor, jj);
+						if (addedFor[twoTilesNeighbor] != cell) {
+							addedFor[twoTilesNeighbor] = cell;
+							cells[count++] = twoTilesNeighbor;
+						}
 					}
 				}
 			}
+		}
+		wumpusNeighborOffsets[getCellCount()] = count;
+		wumpusNeighborCells = Arrays.copyOf(cells, count);
+	}
+
+	// Number of cells surrounding a Wumpus in the given room
+	public int getWumpusNeighborCount(int cell) {
+		return wumpusNeighborOffsets[cell + 1] - wumpusNeighborOffsets[cell];
+	}
+
+	// The index-th cell surrounding a Wumpus in the given room
+	public int getWumpusNeighbor(int cell, int index) {
+		return wumpusNeighborCells[wumpusNeighborOffsets[cell] + index];
+	}
 
+	// Tile view methods, for code that still works with Tile objects
+
+	public Tile getTile(int xPos, int yPos) {
+		return getTile(getCellId(xPos, yPos));
+	}
+
+	public Tile getTile(int cell) {
+		if (tiles[cell] == null)
+			tiles[cell] = new Tile(this, cell);
+		return tiles[cell];
+	}
+
+	// Return all tiles surrounding the Wumpus
+	public ArrayList<Tile> getWumpusNeighbors(Tile tile) {
+		int count = getWumpusNeighborCount(tile.getId());
+
+		ArrayList<Tile> wumpusNeighborTiles = new ArrayList<Tile>(count);
+		for (int ii = 0; ii < count; ii++) {
+			wumpusNeighborTiles.add(getTile(getWumpusNeighbor(tile.getId(), ii)));
 		}
-		return wumpusNeighbors;
+		return wumpusNeighborTiles;
 	}
 
 	// Returns all tiles matching the filter criteria
 	public ArrayList<Tile> getAllMatchingTiles(Predicate<Tile> filter) {
 		ArrayList<Tile> matchingTiles = new ArrayList<Tile>();
 
-		for (int rows = 0; rows < gridHeight; rows++) {
-			for (int columns = 0; columns < gridWidth; columns++) {
-				Tile tmpTile = tiles[rows][columns];
-				if (filter.test(tmpTile))
-					matchingTiles.add(tmpTile);
-			}
+		for (int cell = 0; cell < getCellCount(); cell++) {
+			Tile tmpTile = getTile(cell);
+			if (filter.test(tmpTile))
+				matchingTiles.add(tmpTile);
 		}
 		return matchingTiles;
 	}
 
-	// Getter and setter method
+	// Getter methods
 	public Tile[][] getGrid() {
-		return tiles;
-	}
-
-	public void setGrid(Tile[][] grid) {
-		this.tiles = grid;
+		Tile[][] tileGrid = new Tile[gridHeight][gridWidth];
+		for (int row = 0; row < gridHeight; row++) {
+			for (int column = 0; column < gridWidth; column++) {
+				tileGrid[row][column] = getTile(row, column);
+			}
+		}
+		return tileGrid;
 	}
 
 	public int getGridWidth() {
 		return gridWidth;
 	}
 
-	public void setGridWidth(int gridWidth) {
-		this.gridWidth = gridWidth;
-	}
-
 	public int getGridHeight() {
 		return gridHeight;
 	}
 
-	public void setGridHeight(int gridHeight) {
-		this.gridHeight = gridHeight;
-	}
-
+	// Snapshot of the unvisited safe tiles keyed by "x,y", in the order the
+	// agent would visit them
 	public Map<String, Tile> getUnvisitedSafeTiles() {
+		Map<String, Tile> unvisitedSafeTiles = new LinkedHashMap<String, Tile>();
+		for (int cell : unvisitedSafeCells.toArray()) {
+			unvisitedSafeTiles.put(getRow(cell) + "," + getColumn(cell),
+					getTile(cell));
+		}
 		return unvisitedSafeTiles;
 	}
 
@@ -1,8 +1,8 @@
 package ai.wumpus;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
 
 public class MapEvaluator {
 	// Cost of a safe tile
@@ -22,133 +22,204 @@ public class MapEvaluator {
 	// Whether the Wumpus is killed or not
 	private boolean wumpusKilled = false;
 
+	// Visited neighbors of each cell, and how many of them are lairs.
+	// Neighbors reached through more than one direction count once per
+	// direction.
+	private int[] visitedNeighbors;
+	private int[] lairNeighbors;
+
+	// Unvisited rooms with at least one visited neighbor. Only these can have
+	// their rating resolved from what the agent has seen.
+	private BitSet frontier = new BitSet();
+
+	// Frontier cells whose danger rating is overturned by
+	// checkForInconsistentDangers. They go back into the unvisited safe
+	// tiles on every pass, so they are re-resolved every pass.
+	private BitSet inconsistentCells = new BitSet();
+
+	// Cells whose rating may have changed during the current step, to be
+	// re-resolved in row-major order
+	private int[] pendingCells;
+	private int pendingCount;
+	private int[] pendingPass;
+
+	// Cells whose cost or visited neighbors changed since markTheWumpus last
+	// ran
+	private int[] dirtyCells;
+	private int dirtyCount;
+	private boolean[] dirty;
+
+	// Cost of each re-resolved cell before the current pass
+	private int[] costBeforePass;
+	private int[] resolvedPass;
+
+	// Number of the current step, used to stamp pendingPass and resolvedPass
+	private int pass = 1;
+
 	public MapEvaluator(Grid worldGrid, int startX, int startY) {
 		// System.out.println("Log: MapEvaluator constructor called");
 		this.grid = worldGrid;
 		this.grid.informTilesOfTheirNeighbors();
+
+		int cellCount = grid.getCellCount();
+		visitedNeighbors = new int[cellCount];
+		lairNeighbors = new int[cellCount];
+		pendingCells = new int[cellCount];
+		pendingPass = new int[cellCount];
+		dirtyCells = new int[cellCount];
+		dirty = new boolean[cellCount];
+		costBeforePass = new int[cellCount];
+		resolvedPass = new int[cellCount];
 	}
 
 	// Evaluates a tile by determining cost and neighbors
 	public void evaluateTile(Tile aTile) {
+		evaluateCell(aTile.getId());
+	}
+
+	public void evaluateCell(int cell) {
 
-		if (!aTile.isVisited()) {
-			assignCostForCurrentTile(aTile);
-			estimateNeighbors(aTile);
+		if (!grid.isVisited(cell)) {
+			assignCostForCurrentCell(cell);
+			estimateNeighbors(cell);
 			resolveFalseRatings();
 		}
 	}
 
-	private void assignCostForCurrentTile(Tile aTile) {
-		if (aTile.isBreezy() || aTile.isLair() && !wumpusKilled) {
-			aTile.setCost(POTENTIAL_DANGER_COST);
-			grid.getUnvisitedSafeTiles().remove(
-					aTile.getX() + "," + aTile.getY());
-		} else if (aTile.isPit() || aTile.isWumpus() && !wumpusKilled) {
-			aTile.setCost(DANGER_COST);
-			grid.getUnvisitedSafeTiles().remove(
-					aTile.getX() + "," + aTile.getY());
+	private void assignCostForCurrentCell(int cell) {
+		if (grid.isBreezy(cell) || grid.isLair(cell) && !wumpusKilled) {
+			grid.setCost(cell, POTENTIAL_DANGER_COST);
+			grid.removeUnvisitedSafeCell(cell);
+		} else if (grid.isPit(cell) || grid.isWumpus(cell) && !wumpusKilled) {
+			grid.setCost(cell, DANGER_COST);
+			grid.removeUnvisitedSafeCell(cell);
 		} else {
-			aTile.setCost(SAFE_COST);
+			grid.setCost(cell, SAFE_COST);
+		}
+		grid.setVisited(cell, true);
+		markDirty(cell);
+
+		// The cell leaves the frontier and every cell next to it gains a
+		// visited neighbor
+		frontier.clear(cell);
+		inconsistentCells.clear(cell);
+		for (int ii = 0; ii < grid.getReverseNeighborCount(cell); ii++) {
+			int neighborOf = grid.getReverseNeighbor(cell, ii);
+			visitedNeighbors[neighborOf]++;
+			if (grid.isLair(cell))
+				lairNeighbors[neighborOf]++;
+			if (!grid.isTunnel(neighborOf) && !grid.isVisited(neighborOf))
+				frontier.set(neighborOf);
+			markPending(neighborOf);
 		}
-		aTile.setVisited(true);
 	}
 
 	// Calculates the likely value of any neighbor tiles
-	private void estimateNeighbors(Tile aTile) {
+	private void estimateNeighbors(int cell) {
 		// Update wumpusProb and pitProb for 1-tile and 2-tile neighbors
-		if (aTile.isBreezy()) {
-			ArrayList<Tile> breezeAffectedNeighbors = aTile.getAllNeighbors();
-			for (Tile neighbor : breezeAffectedNeighbors) {
-				neighbor.setBreezeCounter(neighbor.getBreezeCounter() + 1);
+		if (grid.isBreezy(cell)) {
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = grid.getNeighbor(cell, direction);
+				grid.setBreezeCounter(neighbor,
+						grid.getBreezeCounter(neighbor) + 1);
 
 				// If the neighbor has not been visited then it is a potential
 				// danger
 				// (Because the current tile is adjacent to a danger square)
 				// Update the cost
-				if (!neighbor.isVisited()) {
-					neighbor.setCost(POTENTIAL_DANGER_COST);
-					grid.getUnvisitedSafeTiles().remove(
-							neighbor.getX() + "," + neighbor.getY());
+				if (!grid.isVisited(neighbor)) {
+					grid.setCost(neighbor, POTENTIAL_DANGER_COST);
+					grid.removeUnvisitedSafeCell(neighbor);
+					markPending(neighbor);
 				}
 			}
 		}
 
-		if (aTile.isLair()) {
-			ArrayList<Tile> lairAffectedNeighbors = grid
-					.getWumpusNeighbors(aTile);
-			for (Tile neighbor : lairAffectedNeighbors) {
-				neighbor.setLairCounter(neighbor.getLairCounter() + 1);
+		if (grid.isLair(cell)) {
+			for (int ii = 0; ii < grid.getWumpusNeighborCount(cell); ii++) {
+				int neighbor = grid.getWumpusNeighbor(cell, ii);
+				grid.setLairCounter(neighbor, grid.getLairCounter(neighbor) + 1);
 
 				// If the neighbor has not been visited then it is a potential
 				// danger
 				// (Because the current tile is adjacent to a danger square)
 				// Update the cost
-				if (!neighbor.isVisited()) {
-					neighbor.setCost(POTENTIAL_DANGER_COST);
-					grid.getUnvisitedSafeTiles().remove(
-							neighbor.getX() + "," + neighbor.getY());
+				if (!grid.isVisited(neighbor)) {
+					grid.setCost(neighbor, POTENTIAL_DANGER_COST);
+					grid.removeUnvisitedSafeCell(neighbor);
+					markPending(neighbor);
 				}
 			}
 		}
 
-		if (!aTile.isLair() && !aTile.isBreezy()) {
-			for (Tile aNeighbor : Tile.where(aTile.getAllNeighbors(),
-					o -> !o.isVisited())) {
-				if (aNeighbor.isSafe()) {
-					grid.getUnvisitedSafeTiles().put(
-							aNeighbor.getX() + "," + aNeighbor.getY(),
-							aNeighbor);
+		if (!grid.isLair(cell) && !grid.isBreezy(cell)) {
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = grid.getNeighbor(cell, direction);
+				if (neighbor != Grid.NONE && !grid.isVisited(neighbor)
+						&& grid.isSafe(neighbor)) {
+					grid.addUnvisitedSafeCell(neighbor);
 				}
 			}
 		}
 
 	}
 
-	// Loop through all of the tiles
 	// The likely cost of any unvisited tiles which have neighbors who have been
-	// visited can be calculated
+	// visited can be calculated. A frontier tile's rating only depends on its
+	// visited neighbors, so only tiles next to the newly visited one, or
+	// whose cost was just overwritten, need it resolved again. Decisions are
+	// the same as resolving every frontier tile in row-major order.
 	private void resolveFalseRatings() {
-		// // System.out.println("Log: resolveFalseRatings called");
-		ArrayList<Tile> allTiles = grid.getAllMatchingTiles(o -> !o
-				.isTunnelNE() && !o.isTunnelNW());
-
-		for (Tile unknown : allTiles) {
-			if (!unknown.isVisited()) {
-				// Get all visited neighbor tiles, if any
-				ArrayList<Tile> neighbors = unknown.getAllNeighbors();
-
-				ArrayList<Tile> visitedNeighbors = Tile.where(neighbors,
-						o -> o.isVisited());
+		if (frontier.isEmpty()) {
+			pendingCount = 0;
+			pass++;
+			return;
+		}
 
-				if (visitedNeighbors.size() > 0) {
-					estimateUnknownTilesDanger(unknown, visitedNeighbors);
-				}
+		for (int cell = inconsistentCells.nextSetBit(0); cell >= 0; cell = inconsistentCells
+				.nextSetBit(cell + 1)) {
+			markPending(cell);
+		}
+		Arrays.sort(pendingCells, 0, pendingCount);
+
+		for (int ii = 0; ii < pendingCount; ii++) {
+			int unknown = pendingCells[ii];
+			if (frontier.get(unknown)) {
+				costBeforePass[unknown] = grid.getCost(unknown);
+				resolvedPass[unknown] = pass;
+				estimateUnknownTilesDanger(unknown);
 			}
 		}
+		markTheWumpus(frontier.nextSetBit(0));
+
+		pendingCount = 0;
+		pass++;
 	}
 
-	private void estimateUnknownTilesDanger(Tile aTile,
-			ArrayList<Tile> visitedNeighbors) {
-		ArrayList<Tile> safeTiles = Tile.where(visitedNeighbors,
-				o -> o.getCost() == SAFE_COST);
+	private void estimateUnknownTilesDanger(int cell) {
+		boolean hasSafeNeighbor = false;
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(cell, direction);
+			if (grid.isVisited(neighbor) && grid.getCost(neighbor) == SAFE_COST)
+				hasSafeNeighbor = true;
+		}
 
 		// If there are any safe neighbors the unknown tile cannot be dangerous
-		if (safeTiles.size() > 0) {
-			aTile.setCost(SAFE_COST);
-			if (!aTile.isVisited()) {
-				grid.getUnvisitedSafeTiles().put(
-						aTile.getX() + "," + aTile.getY(), aTile);
+		if (hasSafeNeighbor) {
+			grid.setCost(cell, SAFE_COST);
+			if (!grid.isVisited(cell)) {
+				grid.addUnvisitedSafeCell(cell);
 			}
 		} else {
 			// Else there were neighbors, but none of them were safe
-			aTile.setCost(DANGER_COST);
-			if (!aTile.isVisited()) {
-				grid.getUnvisitedSafeTiles().remove(
-						aTile.getX() + "," + aTile.getY());
+			grid.setCost(cell, DANGER_COST);
+			if (!grid.isVisited(cell)) {
+				grid.removeUnvisitedSafeCell(cell);
 			}
 		}
-		checkForInconsistentDangers(aTile, visitedNeighbors);
-		markTheWumpus();
+		boolean overturned = checkForInconsistentDangers(cell);
+		inconsistentCells.set(cell, overturned && !hasSafeNeighbor);
+		markDirty(cell);
 	}
 
 	// A corner case in false ratings for a situation such as
@@ -158,127 +229,146 @@ public class MapEvaluator {
 	//
 	// Since the dangers are inconsistant, the unknown tile must be safe
 	//
-	private void checkForInconsistentDangers(Tile aTile,
-			ArrayList<Tile> visitedNeighbors) {
-		ArrayList<Tile> dangerousNeighbors = Tile.where(visitedNeighbors,
-				o -> o.getCost() == POTENTIAL_DANGER_COST);
-		ArrayList<Tile> lairNeighbors = Tile.where(dangerousNeighbors,
-				o -> (grid.getTile(o.getX(), o.getY())).isLair());
-		ArrayList<Tile> breezyNeighbors = Tile.where(dangerousNeighbors,
-				o -> (grid.getTile(o.getX(), o.getY())).isBreezy());
-
-		if (dangerousNeighbors.size() > 2 && lairNeighbors.size() > 0
-				&& breezyNeighbors.size() > 0) {
-			if (lairNeighbors.size() != dangerousNeighbors.size()
-					&& breezyNeighbors.size() == dangerousNeighbors.size())
-				return;
-			if (breezyNeighbors.size() != dangerousNeighbors.size()
-					&& lairNeighbors.size() == dangerousNeighbors.size())
-				return;
-
-			aTile.setCost(SAFE_COST);
-			if (!aTile.isVisited()) {
-				grid.getUnvisitedSafeTiles().put(
-						aTile.getX() + "," + aTile.getY(), aTile);
+	private boolean checkForInconsistentDangers(int cell) {
+		int dangerousNeighbors = 0;
+		int lairNeighbors = 0;
+		int breezyNeighbors = 0;
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(cell, direction);
+			if (grid.isVisited(neighbor)
+					&& grid.getCost(neighbor) == POTENTIAL_DANGER_COST) {
+				dangerousNeighbors++;
+				if (grid.isLair(neighbor))
+					lairNeighbors++;
+				if (grid.isBreezy(neighbor))
+					breezyNeighbors++;
 			}
 		}
+
+		if (dangerousNeighbors > 2 && lairNeighbors > 0 && breezyNeighbors > 0) {
+			if (lairNeighbors != dangerousNeighbors
+					&& breezyNeighbors == dangerousNeighbors)
+				return false;
+			if (breezyNeighbors != dangerousNeighbors
+					&& lairNeighbors == dangerousNeighbors)
+				return false;
+
+			grid.setCost(cell, SAFE_COST);
+			if (!grid.isVisited(cell)) {
+				grid.addUnvisitedSafeCell(cell);
+			}
+			return true;
+		}
+		return false;
 	}
 
-	private void markTheWumpus() {
-		ArrayList<Tile> allTiles = grid.getAllMatchingTiles(o -> true);
-		ArrayList<Tile> dangerousTiles = Tile.where(allTiles, o -> !o.isSafe());
+	// Rates every dangerous tile whose visited neighbors are all lairs as a
+	// Wumpus suspect. The full evaluation checked all tiles once after every
+	// frontier tile it resolved; a tile that was not dirtied since then would
+	// get the same rating again, so only dirty tiles are checked. A resolved
+	// tile counts as dangerous if it was before it got resolved and at least
+	// one frontier tile came before it.
+	private void markTheWumpus(int firstFrontierCell) {
+		for (int ii = 0; ii < dirtyCount; ii++) {
+			int cell = dirtyCells[ii];
+			dirty[cell] = false;
+
+			boolean dangerous = !grid.isSafe(cell)
+					|| (resolvedPass[cell] == pass
+							&& cell != firstFrontierCell && costBeforePass[cell] != SAFE_COST);
+			if (dangerous && lairNeighbors[cell] == visitedNeighbors[cell]) {
+				grid.setWumpusProbability(cell, 10 * lairNeighbors[cell]);
+			}
+		}
+		dirtyCount = 0;
+	}
 
-		for (Tile aTile : dangerousTiles) {
+	// Queues a cell to be re-resolved this pass
+	private void markPending(int cell) {
+		markDirty(cell);
+		if (pendingPass[cell] != pass) {
+			pendingPass[cell] = pass;
+			pendingCells[pendingCount++] = cell;
+		}
+	}
 
-			ArrayList<Tile> visitedNeighbors = Tile.where(
-					aTile.getAllNeighbors(), o -> o.isVisited());
-			ArrayList<Tile> lairNeighbors = Tile.where(visitedNeighbors,
-					o -> (grid.getTile(o.getX(), o.getY())).isLair());
+	// Queues a cell to be checked by the next markTheWumpus
+	private void markDirty(int cell) {
+		if (!dirty[cell]) {
+			dirty[cell] = true;
+			dirtyCells[dirtyCount++] = cell;
+		}
+	}
 
-			if (lairNeighbors.size() == visitedNeighbors.size()) {
-				aTile.getWumpusProps().put("WumpusProbability",
-						(10 * lairNeighbors.size()));
-			}
+	// Returns the first visited neighbor in direction order, or Grid.NONE
+	public int getFirstVisitedNeighbor(int cell) {
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(cell, direction);
+			if (neighbor != Grid.NONE && grid.isVisited(neighbor))
+				return neighbor;
 		}
+		return Grid.NONE;
 	}
 
 	public ArrayList<Tile> getTilesNeighbors(Tile aTile) {
-		Tile tileInMemory = grid.getTile(aTile.getX(), aTile.getY());
-		return tileInMemory.getAllNeighbors();
+		return aTile.getAllNeighbors();
 	}
 
 	public ArrayList<Tile> getAllTraversableUnvisitedTiles() {
-		ArrayList<Tile> allTiles = grid.getAllMatchingTiles(o -> true);
-
 		ArrayList<Tile> unvisitedTiles = new ArrayList<Tile>();
 
-		for (Tile aTile : allTiles) {
-			if (!aTile.isVisited()) {
-				// Get all of the tiles visited neighbors, if any
-				ArrayList<Tile> visitedNeighbors = Tile.where(
-						aTile.getAllNeighbors(), o -> o.isVisited());
-
-				if (visitedNeighbors.size() > 0)
-					unvisitedTiles.add(aTile);
-			}
+		// Get all of the unvisited tiles with visited neighbors, if any
+		for (int cell = frontier.nextSetBit(0); cell >= 0; cell = frontier
+				.nextSetBit(cell + 1)) {
+			unvisitedTiles.add(grid.getTile(cell));
 		}
 		return unvisitedTiles;
 	}
 
 	public Tile getLikelyWumpusTile() {
-		ArrayList<Tile> orderedWumpusTiles = grid.getAllMatchingTiles(o -> o
-				.getWumpusProps().containsKey("WumpusProbability"));
+		int likelyWumpusCell = getLikelyWumpusCell();
+		return likelyWumpusCell == Grid.NONE ? null : grid
+				.getTile(likelyWumpusCell);
+	}
 
-		if (orderedWumpusTiles.size() > 0) {
-			Collections.sort(orderedWumpusTiles, new WumpusProbComparator());
+	// Returns the cell most likely to hold the Wumpus if its probability
+	// reaches the confidence threshold, or Grid.NONE
+	public int getLikelyWumpusCell() {
+		int likelyWumpusCell = grid.getMostLikelyWumpusCell();
 
-			int currentWumpusConfidence = Integer.parseInt(orderedWumpusTiles
-					.get(orderedWumpusTiles.size() - 1).getWumpusProps()
-					.get("WumpusProbability").toString());
-			if (currentWumpusConfidence >= WUMPUS_CONFIDENCE_THRESHOLD) {
-				return orderedWumpusTiles.get(orderedWumpusTiles.size() - 1);
-			}
+		if (likelyWumpusCell != Grid.NONE
+				&& grid.getWumpusProbability(likelyWumpusCell) >= WUMPUS_CONFIDENCE_THRESHOLD) {
+			return likelyWumpusCell;
 		}
-		return null;
+		return Grid.NONE;
 	}
 
 	public void wumpusKilled(Tile aTile) {
-		if (!aTile.isBreezy()) {
+		wumpusKilled(aTile.getId());
+	}
+
+	public void wumpusKilled(int cell) {
+		if (!grid.isBreezy(cell)) {
 			this.wumpusKilled = true;
-			aTile.setCost(SAFE_COST);
-			if (!aTile.isVisited()) {
-				grid.getUnvisitedSafeTiles().put(
-						aTile.getX() + "," + aTile.getY(), aTile);
+			grid.clearWumpusProbability(cell);
+			grid.setCost(cell, SAFE_COST);
+			markDirty(cell);
+			if (!grid.isVisited(cell)) {
+				grid.addUnvisitedSafeCell(cell);
 			}
 
-			ArrayList<Tile> wumpusNeighbors = aTile.getAllNeighbors();
-			for (Tile neighborTile : wumpusNeighbors) {
-				if ((grid.getTile(neighborTile.getX(), neighborTile.getY()))
-						.isBreezy())
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = grid.getNeighbor(cell, direction);
+				if (neighbor == Grid.NONE || grid.isBreezy(neighbor))
 					continue;
 
-				neighborTile.setCost(SAFE_COST);
-				if (!aTile.isVisited()) {
-					grid.getUnvisitedSafeTiles().put(
-							neighborTile.getX() + "," + neighborTile.getY(),
-							neighborTile);
+				grid.setCost(neighbor, SAFE_COST);
+				markDirty(neighbor);
+				if (!grid.isVisited(cell)) {
+					grid.addUnvisitedSafeCell(neighbor);
 				}
 			}
 		}
 	}
 
 }
-
-class WumpusProbComparator implements Comparator<Tile> {
-	@Override
-	public int compare(Tile t1, Tile t2) {
-		int wumpusProb1 = (int) t1.getWumpusProps().get("WumpusProbability");
-		int wumpusProb2 = (int) t2.getWumpusProps().get("WumpusProbability");
-
-		if (wumpusProb1 == wumpusProb2)
-			return 0;
-		if (wumpusProb1 > wumpusProb2)
-			return 1;
-		return -1;
-	}
-}
@@ -0,0 +1,216 @@
+package ai.wumpus;
+
+import java.util.Arrays;
+
+// Breadth-first path search over the cells the agent has visited. Visited
+// cells are ones the agent has already walked through alive, so they are
+// safe to walk through again. All buffers are allocated once and reused by
+// every search.
+class PathPlanner {
+
+	private final Grid grid;
+
+	// Search number that marks a cell as reached from the start or, in a
+	// bidirectional search, from the destination in the current search
+	private final int[] forwardStamp;
+	private final int[] backwardStamp;
+	private int stamp;
+
+	// Distance of each reached cell from the start or to the destination
+	private final int[] forwardDistance;
+	private final int[] backwardDistance;
+
+	// Cell each cell was reached from, towards the start or the destination
+	private final int[] parent;
+	private final int[] child;
+
+	// Cells waiting to be expanded on either side. Each cell is queued at
+	// most once per side and search, so the queues never wrap.
+	private final int[] forwardQueue;
+	private final int[] backwardQueue;
+
+	// Last path found, excluding the start cell and ending with the
+	// destination
+	private final int[] path;
+
+	public PathPlanner(Grid grid) {
+		this.grid = grid;
+
+		int cellCount = grid.getCellCount();
+		forwardStamp = new int[cellCount];
+		backwardStamp = new int[cellCount];
+		forwardDistance = new int[cellCount];
+		backwardDistance = new int[cellCount];
+		parent = new int[cellCount];
+		child = new int[cellCount];
+		forwardQueue = new int[cellCount];
+		backwardQueue = new int[cellCount];
+		path = new int[cellCount];
+	}
+
+	// Finds a shortest path from start to dest through visited cells and
+	// returns its length, 0 if start is dest, or Grid.NONE if dest cannot be
+	// reached. The cells are read with getPathCell.
+	//
+	// Of several shortest paths this finds the one a plain breadth-first
+	// search in direction order does, which is the path the agent has always
+	// taken.
+	public int findPath(int start, int dest) {
+		nextStamp();
+
+		int head = 0;
+		int tail = 0;
+		forwardQueue[tail++] = start;
+		forwardStamp[start] = stamp;
+
+		while (head < tail && forwardStamp[dest] != stamp) {
+			int current = forwardQueue[head++];
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = grid.getNeighbor(current, direction);
+				if (neighbor != Grid.NONE && grid.isVisited(neighbor)
+						&& forwardStamp[neighbor] != stamp) {
+					forwardStamp[neighbor] = stamp;
+					parent[neighbor] = current;
+					forwardQueue[tail++] = neighbor;
+				}
+			}
+		}
+
+		if (forwardStamp[dest] != stamp)
+			return Grid.NONE;
+
+		int pathLength = 0;
+		for (int cell = dest; cell != start; cell = parent[cell]) {
+			pathLength++;
+		}
+
+		int cell = dest;
+		for (int ii = pathLength - 1; ii >= 0; ii--) {
+			path[ii] = cell;
+			cell = parent[cell];
+		}
+		return pathLength;
+	}
+
+	// Same as findPath, but may find any of several shortest paths. It grows
+	// one search tree from the start and one from the destination, a whole
+	// level at a time on the side with the smaller frontier, until they
+	// touch. On large grids this reaches about half the cells findPath does.
+	public int findPathBidirectional(int start, int dest) {
+		if (start == dest)
+			return 0;
+
+		nextStamp();
+
+		int forwardHead = 0;
+		int forwardTail = 0;
+		forwardQueue[forwardTail++] = start;
+		forwardStamp[start] = stamp;
+		forwardDistance[start] = 0;
+
+		int backwardHead = 0;
+		int backwardTail = 0;
+		backwardQueue[backwardTail++] = dest;
+		backwardStamp[dest] = stamp;
+		backwardDistance[dest] = 0;
+
+		// Shortest connection found so far: a step from meetFrom, reached
+		// from the start, to meetTo, reached from the destination
+		int bestLength = Integer.MAX_VALUE;
+		int meetFrom = Grid.NONE;
+		int meetTo = Grid.NONE;
+
+		while (forwardHead < forwardTail && backwardHead < backwardTail) {
+			if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+				int levelEnd = forwardTail;
+				while (forwardHead < levelEnd) {
+					int current = forwardQueue[forwardHead++];
+					for (int direction = 0; direction < 4; direction++) {
+						int neighbor = grid.getNeighbor(current, direction);
+						if (neighbor == Grid.NONE || !grid.isVisited(neighbor))
+							continue;
+
+						if (backwardStamp[neighbor] == stamp) {
+							int length = forwardDistance[current] + 1
+									+ backwardDistance[neighbor];
+							if (length < bestLength) {
+								bestLength = length;
+								meetFrom = current;
+								meetTo = neighbor;
+							}
+						}
+						if (forwardStamp[neighbor] != stamp) {
+							forwardStamp[neighbor] = stamp;
+							forwardDistance[neighbor] = forwardDistance[current] + 1;
+							parent[neighbor] = current;
+							forwardQueue[forwardTail++] = neighbor;
+						}
+					}
+				}
+			} else {
+				int levelEnd = backwardTail;
+				while (backwardHead < levelEnd) {
+					int current = backwardQueue[backwardHead++];
+					int count = grid.getReverseNeighborCount(current);
+					for (int ii = 0; ii < count; ii++) {
+						int neighbor = grid.getReverseNeighbor(current, ii);
+						if (neighbor != start && !grid.isVisited(neighbor))
+							continue;
+
+						if (forwardStamp[neighbor] == stamp) {
+							int length = forwardDistance[neighbor] + 1
+									+ backwardDistance[current];
+							if (length < bestLength) {
+								bestLength = length;
+								meetFrom = neighbor;
+								meetTo = current;
+							}
+						}
+						if (backwardStamp[neighbor] != stamp) {
+							backwardStamp[neighbor] = stamp;
+							backwardDistance[neighbor] = backwardDistance[current] + 1;
+							child[neighbor] = current;
+							backwardQueue[backwardTail++] = neighbor;
+						}
+					}
+				}
+			}
+
+			// Both trees are complete up to their current depth, so a
+			// connection found while expanding a whole level is a shortest one
+			if (meetFrom != Grid.NONE)
+				break;
+		}
+
+		if (meetFrom == Grid.NONE)
+			return Grid.NONE;
+
+		int cell = meetFrom;
+		for (int ii = forwardDistance[meetFrom] - 1; ii >= 0; ii--) {
+			path[ii] = cell;
+			cell = parent[cell];
+		}
+
+		cell = meetTo;
+		for (int ii = forwardDistance[meetFrom]; ii < bestLength; ii++) {
+			path[ii] = cell;
+			cell = child[cell];
+		}
+		return bestLength;
+	}
+
+	// Starts a new search, so that no cell counts as reached
+	private void nextStamp() {
+		if (++stamp == Integer.MAX_VALUE) {
+			Arrays.fill(forwardStamp, 0);
+			Arrays.fill(backwardStamp, 0);
+			stamp = 1;
+		}
+	}
+
+	// The index-th cell of the last path found
+	public int getPathCell(int index) {
+		return path[index];
+	}
+
+}
@@ -0,0 +1,67 @@
+package ai.wumpus;
+
+// Statistics of a single simulation run
+public final class SimulationResult {
+
+	// 1 if the agent killed the Wumpus, 0 otherwise
+	private final double outcome;
+
+	// Number of moves made and number of distinct tiles moved into
+	private final double steps;
+	private final double unique;
+
+	// Distinct tiles per move
+	private final double moveratio;
+
+	// Wall-clock duration of the run, in seconds
+	private final double runtime;
+
+	// "wumpus", "pit", "surrender", or "n/a" if the agent won
+	private final String causeOfDeath;
+
+	public SimulationResult(double outcome, double steps, double unique,
+			double moveratio, double runtime, String causeOfDeath) {
+		this.outcome = outcome;
+		this.steps = steps;
+		this.unique = unique;
+		this.moveratio = moveratio;
+		this.runtime = runtime;
+		this.causeOfDeath = causeOfDeath;
+	}
+
+	public double getOutcome() {
+		return outcome;
+	}
+
+	public double getSteps() {
+		return steps;
+	}
+
+	public double getUnique() {
+		return unique;
+	}
+
+	public double getMoveratio() {
+		return moveratio;
+	}
+
+	public double getRuntime() {
+		return runtime;
+	}
+
+	public String getCauseOfDeath() {
+		return causeOfDeath;
+	}
+
+	public boolean isWumpusKilled() {
+		return outcome == 1;
+	}
+
+	@Override
+	public String toString() {
+		return "outcome=" + outcome + ", steps=" + steps + ", unique=" + unique
+				+ ", moveratio=" + moveratio + ", runtime=" + runtime
+				+ ", causeOfDeath=" + causeOfDeath;
+	}
+
+}
@@ -5,6 +5,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Predicate;
 
+// View of a single cell of a Grid. All state lives in the grid's arrays, so a
+// Tile always reflects the current state of its cell.
 public class Tile {
 
 	// Directional constants
@@ -13,81 +15,80 @@ public class Tile {
 	public static final int DIRECTIONS_SOUTH = 2;
 	public static final int DIRECTIONS_WEST = 3;
 
-	// Properties of a Wumpus Tile
-	private Map<String, Object> wumpusProps = new HashMap<String, Object>();
-	private String name;
-	private int x;
-	private int y;
-	private Map<Integer, Tile> neighbors;
+	// Name prefix of each cell type, indexed by type code
+	private static final String[] TYPE_NAMES = { "start", "empty",
+			Tile.NE_SW_TUNNEL, Tile.NW_SE_TUNNEL, Tile.PIT, Tile.WUMPUS };
 
-	public Tile(Map<String, Object> wumpusProps, String name, int x, int y) {
-		this.wumpusProps = wumpusProps;
-		this.name = name;
-		this.x = x;
-		this.y = y;
-		neighbors = new HashMap<Integer, Tile>();
-	}
+	private final Grid grid;
+	private final int id;
 
-	// Registers a given Tile as a neighbor in a given direction
-	public void setNeighborTile(Tile neighbor, int directionConstant) {
-		neighbors.put(directionConstant, neighbor);
+	Tile(Grid grid, int id) {
+		this.grid = grid;
+		this.id = id;
 	}
 
 	// Returns all neighbor tiles
 	public ArrayList<Tile> getAllNeighbors() {
-		return new ArrayList<Tile>(neighbors.values());
+		ArrayList<Tile> allNeighbors = new ArrayList<Tile>(4);
+		for (int direction = 0; direction < 4; direction++) {
+			int neighbor = grid.getNeighbor(id, direction);
+			if (neighbor != Grid.NONE)
+				allNeighbors.add(grid.getTile(neighbor));
+		}
+		return allNeighbors;
 	}
 
 	// Returns a neighbor tile from a given direction
 	public Tile getNeighborTile(int directionConstant) {
-		return neighbors.get(directionConstant);
+		int neighbor = grid.getNeighbor(id, directionConstant);
+		return neighbor == Grid.NONE ? null : grid.getTile(neighbor);
 	}
 
 	public boolean equals(Tile anotherTile) {
-		return x == anotherTile.getX() && y == anotherTile.getY();
+		return getX() == anotherTile.getX() && getY() == anotherTile.getY();
 	}
 
-	// Getter and setter methods
-	public Map<String, Object> getWumpusProps() {
-		return wumpusProps;
+	// Getter methods
+	public int getId() {
+		return id;
 	}
 
-	public void setWumpusProps(Map<String, Object> wumpusProps) {
-		this.wumpusProps = wumpusProps;
+	// Snapshot of the cell state under the property keys below
+	public Map<String, Object> getWumpusProps() {
+		Map<String, Object> wumpusProps = new HashMap<String, Object>();
+		wumpusProps.put(BREEZE, isBreezy());
+		wumpusProps.put(LAIR, isLair());
+		wumpusProps.put(VISITED, isVisited());
+		wumpusProps.put(COST, getCost());
+		wumpusProps.put(BREEZE_COUNTER, getBreezeCounter());
+		wumpusProps.put(LAIR_COUNTER, getLairCounter());
+		if (getWumpusProbability() != Grid.NONE)
+			wumpusProps.put(WUMPUS_PROBABILITY, getWumpusProbability());
+		return wumpusProps;
 	}
 
 	public String getName() {
-		return name;
-	}
-
-	public void setName(String name) {
-		this.name = name;
+		return TYPE_NAMES[grid.getCellType(id)] + "-" + getX() + "," + getY();
 	}
 
 	public int getX() {
-		return x;
-	}
-
-	public void setX(int x) {
-		this.x = x;
+		return grid.getRow(id);
 	}
 
 	public int getY() {
-		return y;
-	}
-
-	public void setY(int y) {
-		this.y = y;
+		return grid.getColumn(id);
 	}
 
 	public Map<Integer, Tile> getNeighbors() {
+		Map<Integer, Tile> neighbors = new HashMap<Integer, Tile>();
+		for (int direction = 0; direction < 4; direction++) {
+			Tile neighbor = getNeighborTile(direction);
+			if (neighbor != null)
+				neighbors.put(direction, neighbor);
+		}
 		return neighbors;
 	}
 
-	public void setNeighbors(Map<Integer, Tile> neighbors) {
-		this.neighbors = neighbors;
-	}
-
 	// Helper methods
 	public static final String NE_SW_TUNNEL = "ne_sw_tunnel";
 	public static final String NW_SE_TUNNEL = "nw_se_tunnel";
@@ -103,67 +104,70 @@ public class Tile {
 	public static final String BREEZE_COUNTER = "breeze_counter";
 	public static final String LAIR_COUNTER = "lair_counter";
 
-	public boolean isTunnelNE() {
+	public static final String WUMPUS_PROBABILITY = "WumpusProbability";
 
-		return name.split("-")[0].equals(NE_SW_TUNNEL);
+	public boolean isTunnelNE() {
+		return grid.getCellType(id) == Grid.NE_SW_TUNNEL;
 	}
 
 	public boolean isTunnelNW() {
-
-		return name.split("-")[0].equals(NW_SE_TUNNEL);
+		return grid.getCellType(id) == Grid.NW_SE_TUNNEL;
 	}
 
 	public boolean isPit() {
-
-		return name.split("-")[0].equals(PIT);
+		return grid.isPit(id);
 	}
 
 	public boolean isBreezy() {
-		return wumpusProps.get(BREEZE) == (Boolean) true;
+		return grid.isBreezy(id);
 	}
 
 	public boolean isWumpus() {
-		return name.split("-")[0].equals(WUMPUS);
+		return grid.isWumpus(id);
 	}
 
 	public boolean isLair() {
-		return wumpusProps.get(LAIR) == (Boolean) true;
+		return grid.isLair(id);
 	}
 
 	public boolean isVisited() {
-		return wumpusProps.get(VISITED) == (Boolean) true;
+		return grid.isVisited(id);
 	}
 
 	public int getCost() {
-		return Integer.parseInt(wumpusProps.get(COST).toString());
+		return grid.getCost(id);
 	}
 
 	public void setCost(int cost) {
-		wumpusProps.put(COST, cost);
+		grid.setCost(id, cost);
 	}
 
 	public void setVisited(boolean visited) {
-		wumpusProps.put(VISITED, visited);
+		grid.setVisited(id, visited);
 	}
 
 	public boolean isSafe() {
-		return getCost() == 1;
+		return grid.isSafe(id);
 	}
 
 	public int getBreezeCounter() {
-		return (int) wumpusProps.get(BREEZE_COUNTER);
+		return grid.getBreezeCounter(id);
 	}
 
 	public void setBreezeCounter(int value) {
-		wumpusProps.put(BREEZE_COUNTER, value);
+		grid.setBreezeCounter(id, value);
 	}
 
 	public int getLairCounter() {
-		return (int) wumpusProps.get(LAIR_COUNTER);
+		return grid.getLairCounter(id);
 	}
 
 	public void setLairCounter(int value) {
-		wumpusProps.put(LAIR_COUNTER, value);
+		grid.setLairCounter(id, value);
+	}
+
+	public int getWumpusProbability() {
+		return grid.getWumpusProbability(id);
 	}
 
 	public static ArrayList<Tile> where(ArrayList<Tile> tileList,
@@ -188,4 +192,4 @@ public class Tile {
 		return minimalCost;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package ai.wumpus;
+
+import java.util.Arrays;
+
+// Set of cell ids known to be safe but not visited yet.
+//
+// Cells are handed out in the order a HashMap<String, Tile> keyed by "x,y"
+// iterates them, which is what the agent used to pick its next destination
+// from, so the agent keeps making the same moves. The order is bucket index
+// of the key's hash for the current table capacity, then insertion order.
+class UnvisitedSafeCells {
+
+	// HashMap defaults
+	private static final int INITIAL_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final int[] keyHashes;
+	private final boolean[] present;
+	private final int[] insertionOrder;
+
+	private int size;
+	private int capacity;
+	private int insertionCounter;
+
+	public UnvisitedSafeCells(int width, int height) {
+		keyHashes = new int[width * height];
+		present = new boolean[width * height];
+		insertionOrder = new int[width * height];
+
+		for (int row = 0; row < height; row++) {
+			for (int column = 0; column < width; column++) {
+				keyHashes[row * width + column] = keyHash(row, column);
+			}
+		}
+		clear();
+	}
+
+	public void add(int cell) {
+		if (present[cell])
+			return;
+
+		present[cell] = true;
+		insertionOrder[cell] = insertionCounter++;
+		if (++size > (int) (capacity * LOAD_FACTOR))
+			capacity <<= 1;
+	}
+
+	public void remove(int cell) {
+		if (present[cell]) {
+			present[cell] = false;
+			size--;
+		}
+	}
+
+	public boolean contains(int cell) {
+		return present[cell];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Returns the first cell in iteration order, or Grid.NONE if empty
+	public int first() {
+		int firstCell = Grid.NONE;
+		int firstBucket = Integer.MAX_VALUE;
+
+		for (int cell = 0; cell < present.length; cell++) {
+			if (present[cell]) {
+				int bucket = keyHashes[cell] & (capacity - 1);
+				if (bucket < firstBucket
+						|| (bucket == firstBucket && insertionOrder[cell] < insertionOrder[firstCell])) {
+					firstCell = cell;
+					firstBucket = bucket;
+				}
+			}
+		}
+		return firstCell;
+	}
+
+	// Removes and returns the first cell in iteration order
+	public int poll() {
+		int cell = first();
+		if (cell != Grid.NONE)
+			remove(cell);
+		return cell;
+	}
+
+	// Returns all cells in iteration order
+	public int[] toArray() {
+		int[] cells = new int[size];
+		boolean[] taken = new boolean[present.length];
+		for (int ii = 0; ii < size; ii++) {
+			int next = Grid.NONE;
+			for (int cell = 0; cell < present.length; cell++) {
+				if (present[cell] && !taken[cell]
+						&& (next == Grid.NONE || comesBefore(cell, next)))
+					next = cell;
+			}
+			taken[next] = true;
+			cells[ii] = next;
+		}
+		return cells;
+	}
+
+	public void clear() {
+		Arrays.fill(present, false);
+		size = 0;
+		capacity = INITIAL_CAPACITY;
+		insertionCounter = 0;
+	}
+
+	private boolean comesBefore(int cell, int otherCell) {
+		int bucket = keyHashes[cell] & (capacity - 1);
+		int otherBucket = keyHashes[otherCell] & (capacity - 1);
+		if (bucket != otherBucket)
+			return bucket < otherBucket;
+		return insertionOrder[cell] < insertionOrder[otherCell];
+	}
+
+	// Spread hash of the String "row,column", computed without building it
+	private static int keyHash(int row, int column) {
+		int hash = appendDigits(0, row);
+		hash = 31 * hash + ',';
+		hash = appendDigits(hash, column);
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int appendDigits(int hash, int value) {
+		if (value >= 10)
+			hash = appendDigits(hash, value / 10);
+		return 31 * hash + ('0' + value % 10);
+	}
+
+}
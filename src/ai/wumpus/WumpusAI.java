@@ -1,9 +1,5 @@
 package ai.wumpus;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-
 public class WumpusAI {
 
 	private Grid wumpusGrid;
@@ -12,96 +8,63 @@ public class WumpusAI {
 	private int startX;
 	private int startY;
 
-	// Simulations statistics
-	private static double outcome;
-	private static double steps;
-	private static double unique;
-	private static double moveratio;
-	private static double runtime;
-
-	private static String causeOfDeath;
+	// Result of the last simulation run on each thread, for the deprecated
+	// static getters. Zeros and no cause of death before the first run, as
+	// the static fields they replace.
+	private static final ThreadLocal<SimulationResult> lastResult = ThreadLocal
+			.withInitial(() -> new SimulationResult(0, 0, 0, 0, 0, null));
 
-	public WumpusAI(int[][] rawMap, int rows, int columns) {
-		wumpusGrid = new Grid(rows, columns);
+	// The map is indexed by row and column, width is its number of columns
+	// and height its number of rows
+	public WumpusAI(int[][] rawMap, int width, int height) {
+		wumpusGrid = new Grid(width, height);
 		setUpWumpusWorld(rawMap);
 		wumpusAI = new Agent(wumpusGrid, startX, startY);
 		addHazards();
 	}
 
-	public static void runSimulation(int[][] rawMap, int rows, int columns) {
-		WumpusAI ai = new WumpusAI(rawMap, rows, columns);
+	// Simulates a game on the given map and returns its statistics. Every call
+	// works on its own grid and agent, so calls may run concurrently.
+	public static SimulationResult runSimulation(int[][] rawMap, int width,
+			int height) {
+		SimulationResult result = new WumpusAI(rawMap, width, height).run();
+		lastResult.set(result);
+		return result;
+	}
 
+	// Simulates a game on a map of any size, taken from the map itself
+	public static SimulationResult runSimulation(int[][] rawMap) {
+		return runSimulation(rawMap, rawMap[0].length, rawMap.length);
+	}
+
+	// Lets the agent play until the game is over
+	public SimulationResult run() {
 		long startTime = System.currentTimeMillis();
 
-		while (Agent.IS_GAME_OVER == false) {
-			if (!ai.wumpusAI.tryToKillWumpus()) {
-				ai.wumpusAI.chooseNextTile();
-				ai.wumpusAI.moveToBestTile();
+		while (wumpusAI.isGameOver() == false) {
+			if (!wumpusAI.tryToKillWumpus()) {
+				wumpusAI.chooseNextTile();
+				wumpusAI.moveToBestTile();
 			}
 		}
 
 		long endTime = System.currentTimeMillis();
 		double duration = (endTime - startTime) / 1000.00;
-		WumpusAI.setRuntime(duration);
+		return wumpusAI.getResult(duration);
 	}
 
 	private void setUpWumpusWorld(int[][] rawMap) {
 
-		// Set Tile properties based on rawMap
+		// Set cell types based on rawMap
 		for (int ii = 0; ii < rawMap.length; ii++) {
 			for (int jj = 0; jj < rawMap[0].length; jj++) {
-				// Initialize properties of a tile
-				Map<String, Object> wumpusProps = new HashMap<String, Object>();
-				wumpusProps.put(Tile.BREEZE, false);
-				wumpusProps.put(Tile.LAIR, false);
-				wumpusProps.put(Tile.VISITED, false);
-				wumpusProps.put(Tile.COST, 1);
-				wumpusProps.put(Tile.BREEZE_COUNTER, 0);
-				wumpusProps.put(Tile.LAIR_COUNTER, 0);
+				wumpusGrid.setCellType(ii, jj, rawMap[ii][jj]);
 
 				// Start Room
-				if (rawMap[ii][jj] == 0) {
-					String tileName = "start-" + ii + "," + jj;
-					Tile startTile = new Tile(wumpusProps, tileName, ii, jj);
-					wumpusGrid.setTile(startTile, ii, jj);
+				if (rawMap[ii][jj] == Grid.START) {
 					this.startX = ii;
 					this.startY = jj;
 				}
-
-				// Empty Room
-				if (rawMap[ii][jj] == 1) {
-					String tileName = "empty-" + ii + "," + jj;
-					Tile emptyTile = new Tile(wumpusProps, tileName, ii, jj);
-					wumpusGrid.setTile(emptyTile, ii, jj);
-				}
-
-				// NE_SW Tunnel
-				if (rawMap[ii][jj] == 2) {
-					String tileName = Tile.NE_SW_TUNNEL + "-" + ii + "," + jj;
-					Tile neTunnel = new Tile(wumpusProps, tileName, ii, jj);
-					wumpusGrid.setTile(neTunnel, ii, jj);
-				}
-
-				// NW_SE Tunnel
-				if (rawMap[ii][jj] == 3) {
-					String tileName = Tile.NW_SE_TUNNEL + "-" + ii + "," + jj;
-					Tile nwTunnel = new Tile(wumpusProps, tileName, ii, jj);
-					wumpusGrid.setTile(nwTunnel, ii, jj);
-				}
-
-				// Pit Room
-				if (rawMap[ii][jj] == 4) {
-					String tileName = Tile.PIT + "-" + ii + "," + jj;
-					Tile pitTile = new Tile(wumpusProps, tileName, ii, jj);
-					wumpusGrid.setTile(pitTile, ii, jj);
-				}
-
-				// Wumpus Room
-				if (rawMap[ii][jj] == 5) {
-					String tileName = Tile.WUMPUS + "-" + ii + "," + jj;
-					Tile wumpusTile = new Tile(wumpusProps, tileName, ii, jj);
-					wumpusGrid.setTile(wumpusTile, ii, jj);
-				}
 			}
 		}
 	}
@@ -109,77 +72,61 @@ public class WumpusAI {
 	private void addHazards() {
 
 		// Set all of the cardinal neighbors to the wumpus as smelly
-		ArrayList<Tile> wumpusTiles = wumpusGrid.getAllMatchingTiles(o -> o
-				.isWumpus());
-		for (Tile wumpusTile : wumpusTiles) {
-			ArrayList<Tile> neighbors = wumpusTile.getAllNeighbors();
-			for (Tile neighborTile : neighbors) {
-				if (!neighborTile.isPit()) {
-					neighborTile.getWumpusProps().put(Tile.LAIR, true);
+		for (int cell = 0; cell < wumpusGrid.getCellCount(); cell++) {
+			if (wumpusGrid.isWumpus(cell)) {
+				for (int direction = 0; direction < 4; direction++) {
+					int neighbor = wumpusGrid.getNeighbor(cell, direction);
+					if (!wumpusGrid.isPit(neighbor)) {
+						wumpusGrid.setLair(neighbor);
+					}
 				}
 			}
 		}
 
 		// Set all of the cardinal neighbors to the pit as breezy
-		ArrayList<Tile> pitTiles = wumpusGrid.getAllMatchingTiles(o -> o
-				.isPit());
-		for (Tile pitTile : pitTiles) {
-			ArrayList<Tile> neighbors = pitTile.getAllNeighbors();
-			for (Tile neighborTile : neighbors) {
-				if (!neighborTile.isWumpus()) {
-					neighborTile.getWumpusProps().put(Tile.BREEZE, true);
+		for (int cell = 0; cell < wumpusGrid.getCellCount(); cell++) {
+			if (wumpusGrid.isPit(cell)) {
+				for (int direction = 0; direction < 4; direction++) {
+					int neighbor = wumpusGrid.getNeighbor(cell, direction);
+					if (!wumpusGrid.isWumpus(neighbor)) {
+						wumpusGrid.setBreezy(neighbor);
+					}
 				}
 			}
 		}
 	}
 
-	// Getter and setter methods for logging purpose
-	public static double getOutcome() {
-		return outcome;
-	}
+	// Getter methods for logging purpose. They return the statistics of the
+	// last runSimulation call made on the current thread.
 
-	public static void setOutcome(double outcome) {
-		WumpusAI.outcome = outcome;
+	@Deprecated
+	public static double getOutcome() {
+		return lastResult.get().getOutcome();
 	}
 
+	@Deprecated
 	public static double getSteps() {
-		return steps;
-	}
-
-	public static void setSteps(double steps) {
-		WumpusAI.steps = steps;
+		return lastResult.get().getSteps();
 	}
 
+	@Deprecated
 	public static double getUnique() {
-		return unique;
-	}
-
-	public static void setUnique(double unique) {
-		WumpusAI.unique = unique;
+		return lastResult.get().getUnique();
 	}
 
+	@Deprecated
 	public static double getMoveratio() {
-		return moveratio;
-	}
-
-	public static void setMoveratio(double moveratio) {
-		WumpusAI.moveratio = moveratio;
+		return lastResult.get().getMoveratio();
 	}
 
+	@Deprecated
 	public static double getRuntime() {
-		return runtime;
-	}
-
-	public static void setRuntime(double runtime) {
-		WumpusAI.runtime = runtime;
+		return lastResult.get().getRuntime();
 	}
 
+	@Deprecated
 	public static String getCauseOfDeath() {
-		return causeOfDeath;
-	}
-
-	public static void setCauseOfDeath(String causeOfDeath) {
-		WumpusAI.causeOfDeath = causeOfDeath;
+		return lastResult.get().getCauseOfDeath();
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package ai.wumpus;
+
+import java.util.Arrays;
+
+// Indexed max-heap of the cells suspected to hold the Wumpus, keyed by their
+// Wumpus probability. Ties go to the higher cell id, i.e. the last suspect in
+// row-major order, as the sort-based lookup this replaced did.
+class WumpusSuspects {
+
+	// Wumpus probability of each cell, Grid.NONE if it is not a suspect
+	private final int[] probabilities;
+
+	// Heap of suspect cells, and each cell's index in it
+	private final int[] heap;
+	private final int[] heapIndex;
+	private int size;
+
+	public WumpusSuspects(int cellCount) {
+		probabilities = new int[cellCount];
+		heap = new int[cellCount];
+		heapIndex = new int[cellCount];
+
+		Arrays.fill(probabilities, Grid.NONE);
+		Arrays.fill(heapIndex, Grid.NONE);
+	}
+
+	public int getProbability(int cell) {
+		return probabilities[cell];
+	}
+
+	// Adds the cell as a suspect or updates its probability
+	public void setProbability(int cell, int probability) {
+		int oldProbability = probabilities[cell];
+		probabilities[cell] = probability;
+
+		if (heapIndex[cell] == Grid.NONE) {
+			heap[size] = cell;
+			heapIndex[cell] = size++;
+			siftUp(heapIndex[cell]);
+		} else if (probability > oldProbability) {
+			siftUp(heapIndex[cell]);
+		} else if (probability < oldProbability) {
+			siftDown(heapIndex[cell]);
+		}
+	}
+
+	// Clears the cell of suspicion
+	public void remove(int cell) {
+		int index = heapIndex[cell];
+		if (index == Grid.NONE)
+			return;
+
+		probabilities[cell] = Grid.NONE;
+		heapIndex[cell] = Grid.NONE;
+		size--;
+		if (index < size) {
+			heap[index] = heap[size];
+			heapIndex[heap[index]] = index;
+			siftDown(index);
+			siftUp(index);
+		}
+	}
+
+	// Returns the most likely Wumpus cell, or Grid.NONE if there are no
+	// suspects
+	public int peek() {
+		return size == 0 ? Grid.NONE : heap[0];
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!isMoreLikely(heap[index], heap[parent]))
+				return;
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+		while (true) {
+			int largest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < size && isMoreLikely(heap[left], heap[largest]))
+				largest = left;
+			if (right < size && isMoreLikely(heap[right], heap[largest]))
+				largest = right;
+			if (largest == index)
+				return;
+			swap(index, largest);
+			index = largest;
+		}
+	}
+
+	private boolean isMoreLikely(int cell, int otherCell) {
+		if (probabilities[cell] != probabilities[otherCell])
+			return probabilities[cell] > probabilities[otherCell];
+		return cell > otherCell;
+	}
+
+	private void swap(int index, int otherIndex) {
+		int cell = heap[index];
+		heap[index] = heap[otherIndex];
+		heap[otherIndex] = cell;
+		heapIndex[heap[index]] = index;
+		heapIndex[heap[otherIndex]] = otherIndex;
+	}
+
+}
@@ -0,0 +1,79 @@
+package jgap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.jgap.Configuration;
+import org.jgap.IChromosome;
+import org.jgap.Population;
+import org.jgap.impl.GABreeder;
+
+/**
+ * Breeder that evaluates all unevaluated chromosomes of a generation with
+ * one call to WumpusFitnessFunction.evaluateLevels, before natural
+ * selection runs. With evaluation workers, the whole generation goes out
+ * as one set of batches instead of one level at a time.
+ *
+ */
+@SuppressWarnings("serial")
+public class BatchBreeder extends GABreeder {
+
+	public BatchBreeder() {
+		super();
+	}
+
+	@Override
+	protected void updateChromosomes(Population a_pop, Configuration a_conf) {
+		evaluate(a_pop, a_conf);
+		super.updateChromosomes(a_pop, a_conf);
+	}
+
+	/**
+	 * Computes the fitness of every chromosome in the population that does
+	 * not have one yet.
+	 *
+	 * @param population The chromosomes to evaluate
+	 * @param conf The configuration holding the WumpusFitnessFunction
+	 */
+	public void evaluate(Population population, Configuration conf) {
+		if (!(conf.getFitnessFunction() instanceof WumpusFitnessFunction)) {
+			return;
+		}
+		WumpusFitnessFunction fitnessFunction = (WumpusFitnessFunction) conf
+				.getFitnessFunction();
+
+		// The same chromosome can appear more than once
+		Set<IChromosome> pending = Collections
+				.newSetFromMap(new IdentityHashMap<IChromosome, Boolean>());
+		List<IChromosome> chromosomes = new ArrayList<IChromosome>();
+		List<int[][]> levels = new ArrayList<int[][]>();
+
+		for (int ii = 0; ii < population.size(); ii++) {
+			IChromosome chromosome = population.getChromosome(ii);
+			if (chromosome.getFitnessValueDirectly() < 0
+					&& pending.add(chromosome)) {
+				chromosomes.add(chromosome);
+				levels.add(GenerateWumpusLevels.convertChromosomeToLevel(
+						chromosome, fitnessFunction.getRows(),
+						fitnessFunction.getColumns()));
+			}
+		}
+		if (chromosomes.isEmpty()) {
+			return;
+		}
+
+		double[] fitness = fitnessFunction.evaluateLevels(levels);
+		for (int ii = 0; ii < chromosomes.size(); ii++) {
+			chromosomes.get(ii).setFitnessValue(fitness[ii]);
+		}
+	}
+
+	@Override
+	public Object clone() {
+		return new BatchBreeder();
+	}
+
+}
@@ -0,0 +1,257 @@
+package jgap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of a run after one of its generations, from which
+ * GenerateWumpusLevels.resume continues it. An island run has one
+ * PopulationState per island.
+ *
+ * The file starts with:
+ * - the magic number "WCKP" and the format version, a byte
+ * - the difficulty and the engine name, in modified UTF-8
+ * - flags, a byte: PLAYABLE_ONLY if the run keeps levels playable
+ * - rows and columns, as shorts
+ * - the seed of the run and the number of simulations it has run, as longs
+ * - the number of populations, an int
+ * Then, per population:
+ * - the generation, an int, and the seed of its random generator, a long
+ * - the best fitness so far and the best genome
+ * - the number of individuals, an int, then the fitness and genome of each
+ * Genomes are the cells at 3 bits each, packed into longs as
+ * FitnessCache.pack does. All values are big-endian, as DataOutputStream
+ * writes them.
+ *
+ */
+public final class Checkpoint {
+
+	static final int MAGIC = 0x57434B50;
+	static final byte VERSION = 1;
+
+	// Flags
+	static final byte PLAYABLE_ONLY = 1;
+
+	// Suffix of checkpoint files
+	public static final String EXTENSION = ".ckpt";
+
+	private final String difficulty;
+	private final GenerationOptions.Engine engine;
+	private final boolean playableOnly;
+	private final int rows;
+	private final int columns;
+	private final long seed;
+	private final long simulations;
+	private final List<PopulationState> populations;
+
+	/**
+	 * @param difficulty The difficulty of the run
+	 * @param options The settings of the run
+	 * @param simulations Number of simulations the run has run so far
+	 * @param populations The population, or the islands in island order
+	 */
+	Checkpoint(String difficulty, GenerationOptions options, long simulations,
+			List<PopulationState> populations) {
+		this(difficulty, options.getEngine(), options.isPlayableOnly(),
+				options.getRows(), options.getColumns(), options.getSeed(),
+				simulations, populations);
+	}
+
+	private Checkpoint(String difficulty, GenerationOptions.Engine engine,
+			boolean playableOnly, int rows, int columns, long seed,
+			long simulations, List<PopulationState> populations) {
+		this.difficulty = difficulty;
+		this.engine = engine;
+		this.playableOnly = playableOnly;
+		this.rows = rows;
+		this.columns = columns;
+		this.seed = seed;
+		this.simulations = simulations;
+		this.populations = Collections.unmodifiableList(populations);
+	}
+
+	/**
+	 * @param difficulty The difficulty of a run
+	 * @param seed The seed of the run
+	 * @return The name of the run's checkpoint file
+	 */
+	public static String fileName(String difficulty, long seed) {
+		return difficulty + "-" + Long.toHexString(seed) + EXTENSION;
+	}
+
+	/**
+	 * Writes the checkpoint to a temporary file next to the given one and
+	 * then moves it there, so that the file always holds a whole
+	 * checkpoint.
+	 *
+	 * @param file Where the checkpoint goes
+	 * @throws IOException If it cannot be written
+	 */
+	public void write(Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		int words = wordsPerGenome(rows, columns);
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeUTF(difficulty);
+			out.writeUTF(engine.name());
+			out.writeByte(playableOnly ? PLAYABLE_ONLY : 0);
+			out.writeShort(rows);
+			out.writeShort(columns);
+			out.writeLong(seed);
+			out.writeLong(simulations);
+			out.writeInt(populations.size());
+
+			for (PopulationState population : populations) {
+				out.writeInt(population.getGeneration());
+				out.writeLong(population.getRandomSeed());
+				out.writeDouble(population.getBestFitness());
+				writeGenome(out, population.getBestGenome(), words);
+				out.writeInt(population.getSize());
+				for (int ii = 0; ii < population.getSize(); ii++) {
+					out.writeDouble(population.getFitness(ii));
+					writeGenome(out, population.getGenome(ii), words);
+				}
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param file A file written by {@link #write(Path)}
+	 * @return The checkpoint
+	 * @throws IOException If the file cannot be read or is not a checkpoint
+	 */
+	public static Checkpoint read(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a checkpoint: " + file);
+			}
+			byte version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version "
+						+ version);
+			}
+			String difficulty = in.readUTF();
+			GenerationOptions.Engine engine;
+			try {
+				engine = GenerationOptions.Engine.valueOf(in.readUTF());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown engine in " + file, e);
+			}
+			boolean playableOnly = (in.readByte() & PLAYABLE_ONLY) != 0;
+			int rows = in.readShort();
+			int columns = in.readShort();
+			long seed = in.readLong();
+			long simulations = in.readLong();
+			int count = in.readInt();
+			if (rows < 1 || columns < 1 || count < 1) {
+				throw new IOException("Malformed checkpoint: " + file);
+			}
+
+			int words = wordsPerGenome(rows, columns);
+			List<PopulationState> populations = new ArrayList<PopulationState>(
+					count);
+			for (int ii = 0; ii < count; ii++) {
+				int generation = in.readInt();
+				long randomSeed = in.readLong();
+				double bestFitness = in.readDouble();
+				long[] bestGenome = readGenome(in, words);
+				int size = in.readInt();
+				if (size < 1) {
+					throw new IOException("Empty population in " + file);
+				}
+
+				long[][] genomes = new long[size][];
+				double[] fitness = new double[size];
+				for (int jj = 0; jj < size; jj++) {
+					fitness[jj] = in.readDouble();
+					genomes[jj] = readGenome(in, words);
+				}
+				populations.add(new PopulationState(generation, genomes,
+						fitness, randomSeed, bestGenome, bestFitness));
+			}
+			return new Checkpoint(difficulty, engine, playableOnly, rows,
+					columns, seed, simulations, populations);
+		}
+	}
+
+	private static int wordsPerGenome(int rows, int columns) {
+		return (rows * columns * FitnessCache.BITS_PER_GENE + 63) / 64;
+	}
+
+	private static void writeGenome(DataOutputStream out, long[] genome,
+			int words) throws IOException {
+		if (genome.length != words) {
+			throw new IllegalArgumentException("Expected a genome of "
+					+ words + " words, got " + genome.length);
+		}
+		for (long word : genome) {
+			out.writeLong(word);
+		}
+	}
+
+	private static long[] readGenome(DataInputStream in, int words)
+			throws IOException {
+		long[] genome = new long[words];
+		for (int ii = 0; ii < words; ii++) {
+			genome[ii] = in.readLong();
+		}
+		return genome;
+	}
+
+	public String getDifficulty() {
+		return difficulty;
+	}
+
+	public GenerationOptions.Engine getEngine() {
+		return engine;
+	}
+
+	public boolean isPlayableOnly() {
+		return playableOnly;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	// Number of simulations the run had run when the checkpoint was taken
+	public long getSimulations() {
+		return simulations;
+	}
+
+	// Generations the run had evolved when the checkpoint was taken
+	public int getGeneration() {
+		return populations.get(0).getGeneration();
+	}
+
+	/**
+	 * @return The population, or the islands in island order
+	 */
+	public List<PopulationState> getPopulations() {
+		return populations;
+	}
+
+}
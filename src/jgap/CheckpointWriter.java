@@ -0,0 +1,85 @@
+package jgap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the checkpoints of a run on a thread of its own, so that the run
+ * only waits for the snapshot of its population and not for the disk.
+ * When the run checkpoints faster than the disk keeps up, checkpoints that
+ * are still waiting are replaced by newer ones.
+ *
+ * A checkpoint that cannot be written is reported and skipped. The run
+ * goes on, and the file keeps the previous checkpoint.
+ *
+ */
+class CheckpointWriter implements Closeable {
+
+	private final Path file;
+	private final String difficulty;
+	private final GenerationOptions options;
+	private final ExecutorService writer;
+
+	// The newest checkpoint that has not been written yet
+	private final AtomicReference<Checkpoint> pending = new AtomicReference<Checkpoint>();
+
+	/**
+	 * @param file Where the checkpoints go
+	 * @param difficulty The difficulty of the run
+	 * @param options The settings of the run
+	 */
+	CheckpointWriter(Path file, String difficulty, GenerationOptions options) {
+		this.file = file;
+		this.difficulty = difficulty;
+		this.options = options;
+
+		// A daemon, so that a run that fails does not keep the JVM alive
+		writer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "checkpoint-writer-"
+					+ file.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Takes a snapshot of the population on the calling thread and queues
+	 * it for writing.
+	 *
+	 * @param population The population of the run
+	 * @param simulations Number of simulations the run has run so far
+	 */
+	void write(EvolvingPopulation population, long simulations) {
+		Checkpoint checkpoint = new Checkpoint(difficulty, options,
+				simulations, population.checkpoint());
+		if (pending.getAndSet(checkpoint) == null) {
+			writer.execute(this::writePending);
+		}
+	}
+
+	private void writePending() {
+		Checkpoint checkpoint = pending.getAndSet(null);
+		try {
+			checkpoint.write(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// Waits until the queued checkpoint is written
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package jgap;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every GenerationRecord as a row of a CSV file with a header row.
+ * Values that are not numbers, such as the cache hit rate of a run without
+ * a cache, are left empty. Every row is flushed, so a run can be followed
+ * while it goes on.
+ *
+ */
+public class CsvTelemetrySink implements TelemetrySink {
+
+	private static final String HEADER = "difficulty,seed,generation,bestFitness,meanFitness,fitnessStdev,"
+			+ "evaluations,simulations,evaluationsPerSecond,durationMillis,"
+			+ "evaluationMillis,breedingMillis,cacheHitRate";
+
+	private final BufferedWriter writer;
+
+	/**
+	 * @param file The file to write, replaced if it exists
+	 * @throws IOException If the file cannot be created
+	 */
+	public CsvTelemetrySink(Path file) throws IOException {
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		writer.write(HEADER);
+		writer.newLine();
+		writer.flush();
+	}
+
+	/**
+	 * @throws UncheckedIOException If the record cannot be written
+	 */
+	@Override
+	public synchronized void record(GenerationRecord record) {
+		StringBuilder row = new StringBuilder(200);
+		appendText(row, record.getDifficulty());
+		row.append(',').append(record.getSeed());
+		row.append(',').append(record.getGeneration());
+		appendNumber(row, record.getBestFitness());
+		appendNumber(row, record.getMeanFitness());
+		appendNumber(row, record.getFitnessStdev());
+		row.append(',').append(record.getEvaluations());
+		row.append(',').append(record.getSimulations());
+		appendNumber(row, record.getEvaluationsPerSecond());
+		appendNumber(row, record.getDurationMillis());
+		appendNumber(row, record.getEvaluationMillis());
+		appendNumber(row, record.getBreedingMillis());
+		appendNumber(row, record.getCacheHitRate());
+
+		try {
+			writer.write(row.toString());
+			writer.newLine();
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void appendNumber(StringBuilder row, double value) {
+		row.append(',');
+		if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+			row.append(value);
+		}
+	}
+
+	// Quotes a value that holds a separator, a quote or a line break
+	private static void appendText(StringBuilder row, String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			row.append(value);
+		} else {
+			row.append('"').append(value.replace("\"", "\"\"")).append('"');
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,97 @@
+package jgap;
+
+/**
+ * What a level of one difficulty is scored against. Every feature of a
+ * level is normalized from its range to [0, 1] and compared with a target,
+ * and the fitness is 100 minus the weighted Euclidean distance of the
+ * normalized features from their targets.
+ *
+ * The ranges, targets and weights are compiled into flat coefficient
+ * arrays, so that the distance is one multiply, subtract and square per
+ * feature, without branches or allocation.
+ *
+ */
+public final class DifficultyProfile {
+
+	// Features, in the order of the arrays passed to distance. Counts of
+	// cells and moves are scaled to a level of the reference size first.
+	public static final int STEPS = 0;
+	public static final int UNIQUE = 1;
+	public static final int MOVE_RATIO = 2;
+	public static final int RUNTIME = 3;
+	public static final int TUNNELS = 4;
+	public static final int ROOMS_TO_TUNNELS_RATIO = 5;
+	public static final int PITS = 6;
+	public static final int WUMPUS = 7;
+	public static final int START = 8;
+	public static final int FEATURES = 9;
+
+	// Names of the features in a profile file, see DifficultyProfiles
+	static final String[] FEATURE_NAMES = { "steps", "unique", "moveratio",
+			"runtime", "tunnels", "roomsToTunnelsRatio", "pits", "wumpus",
+			"start" };
+
+	private final String name;
+
+	// Per feature a scale and a shift, one after the other, such that
+	// (value * scale - shift)^2 = weight * (normalized value - target)^2
+	private final double[] coefficients = new double[2 * FEATURES];
+
+	/**
+	 * @param name The difficulty
+	 * @param low Per feature, the value normalized to 0
+	 * @param high Per feature, the value normalized to 1
+	 * @param target Per feature, the normalized value aimed at
+	 * @param weight Per feature, the weight of its squared distance from
+	 *               the target
+	 */
+	public DifficultyProfile(String name, double[] low, double[] high,
+			double[] target, double[] weight) {
+		if (low.length != FEATURES || high.length != FEATURES
+				|| target.length != FEATURES || weight.length != FEATURES) {
+			throw new IllegalArgumentException("Expected " + FEATURES
+					+ " values per feature array of difficulty " + name);
+		}
+		this.name = name;
+
+		for (int ii = 0; ii < FEATURES; ii++) {
+			double range = high[ii] - low[ii];
+			if (!Double.isFinite(range) || range == 0
+					|| !Double.isFinite(target[ii])
+					|| !Double.isFinite(weight[ii]) || weight[ii] < 0) {
+				throw new IllegalArgumentException("Invalid "
+						+ FEATURE_NAMES[ii] + " of difficulty " + name);
+			}
+			double root = Math.sqrt(weight[ii]);
+			double scale = 1 / range;
+			coefficients[2 * ii] = scale * root;
+			coefficients[2 * ii + 1] = (low[ii] * scale + target[ii]) * root;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param features The features of a level, indexed by the constants of
+	 *                 this class
+	 * @return The weighted Euclidean distance of the normalized features
+	 *         from the targets. NaN if a feature is NaN.
+	 */
+	public double distance(double[] features) {
+		double sum = 0;
+		for (int ii = 0; ii < FEATURES; ii++) {
+			double difference = features[ii] * coefficients[2 * ii]
+					- coefficients[2 * ii + 1];
+			sum += difference * difference;
+		}
+		return Math.sqrt(sum);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
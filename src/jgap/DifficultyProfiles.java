@@ -0,0 +1,208 @@
+package jgap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The difficulty profiles levels are scored against, by name. The easy,
+ * medium and hard profiles measured for the thesis are built in. Others,
+ * or changed ones, are read from a properties file with a line per
+ * difficulty and feature:
+ *
+ *   difficulty.feature = low high target [weight]
+ *
+ * e.g. "expert.steps = 2 200 0.1". The features are named as in
+ * DifficultyProfile, and the weight defaults to 1. A difficulty in the
+ * file lists every feature and replaces the built-in profile of that name.
+ * Names are not case sensitive.
+ *
+ * The default profiles include the file named by the system property
+ * jgap.difficulties, if it is set. Evaluation workers score by difficulty
+ * name, so give them the same file.
+ *
+ */
+public final class DifficultyProfiles {
+
+	// System property naming the profile file of the default profiles
+	public static final String FILE_PROPERTY = "jgap.difficulties";
+
+	// Per feature: low, high and target of the thesis's profiles
+	private static final double[][] EASY = { { 2, 1052, 0.234 },
+			{ 2, 66, 0.703 }, { 0.059, 1, 0.271 }, { 0, 0.074, 0.071 },
+			{ 2, 28, 0.461 }, { 1.321, 32.5, 0.086 }, { 1, 3, 0.727 },
+			{ 0, 1, 1 }, { 0, 1, 1 } };
+	private static final double[][] MEDIUM = { { 2, 480, 0.245 },
+			{ 1, 47, 0.562 }, { 0.09, 1, 0.234 }, { 0, 0.062, 0.036 },
+			{ 18, 53, 0.485 }, { 0.226, 2.667, 0.277 }, { 1, 3, 0.711 },
+			{ 0, 1, 1 }, { 0, 1, 1 } };
+	private static final double[][] HARD = { { 2, 244, 0.147 },
+			{ 1, 33, 0.356 }, { 0.126, 1, 0.371 }, { 0, 0.032, 0.026 },
+			{ 31, 63, 0.556 }, { 0.048, 1.129, 0.282 }, { 1, 3, 0.684 },
+			{ 0, 1, 1 }, { 0, 1, 1 } };
+
+	private static volatile DifficultyProfiles defaultProfiles;
+
+	private final Map<String, DifficultyProfile> profiles;
+
+	private DifficultyProfiles(Map<String, DifficultyProfile> profiles) {
+		this.profiles = Collections.unmodifiableMap(profiles);
+	}
+
+	/**
+	 * @return The easy, medium and hard profiles
+	 */
+	public static DifficultyProfiles builtIn() {
+		return new DifficultyProfiles(builtInProfiles());
+	}
+
+	private static Map<String, DifficultyProfile> builtInProfiles() {
+		Map<String, DifficultyProfile> profiles = new TreeMap<String, DifficultyProfile>();
+		profiles.put("easy", compile("easy", EASY));
+		profiles.put("medium", compile("medium", MEDIUM));
+		profiles.put("hard", compile("hard", HARD));
+		return profiles;
+	}
+
+	// Builds a profile from per feature low, high, target and optionally
+	// weight
+	private static DifficultyProfile compile(String name, double[][] features) {
+		double[] low = new double[DifficultyProfile.FEATURES];
+		double[] high = new double[DifficultyProfile.FEATURES];
+		double[] target = new double[DifficultyProfile.FEATURES];
+		double[] weight = new double[DifficultyProfile.FEATURES];
+		for (int ii = 0; ii < DifficultyProfile.FEATURES; ii++) {
+			low[ii] = features[ii][0];
+			high[ii] = features[ii][1];
+			target[ii] = features[ii][2];
+			weight[ii] = features[ii].length > 3 ? features[ii][3] : 1;
+		}
+		return new DifficultyProfile(name, low, high, target, weight);
+	}
+
+	/**
+	 * Reads a profile file, see the class comment.
+	 *
+	 * @param file The profile file
+	 * @return The built-in profiles and those of the file
+	 * @throws IOException If the file cannot be read
+	 * @throws IllegalArgumentException If a profile is incomplete or
+	 *                                  malformed
+	 */
+	public static DifficultyProfiles load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file,
+				StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+
+		// Features of every difficulty in the file
+		Map<String, double[][]> features = new TreeMap<String, double[][]>();
+		for (String key : properties.stringPropertyNames()) {
+			int dot = key.lastIndexOf('.');
+			int feature = dot < 0 ? -1 : featureIndex(key.substring(dot + 1));
+			if (feature < 0) {
+				throw new IllegalArgumentException(
+						"Expected difficulty.feature, got " + key + " in "
+								+ file);
+			}
+			String[] values = properties.getProperty(key).trim().split("\\s+");
+			if (values.length != 3 && values.length != 4) {
+				throw new IllegalArgumentException(
+						"Expected low high target [weight] for " + key
+								+ " in " + file);
+			}
+
+			double[] parsed = new double[values.length];
+			for (int ii = 0; ii < values.length; ii++) {
+				parsed[ii] = Double.parseDouble(values[ii]);
+			}
+			features.computeIfAbsent(key.substring(0, dot).toLowerCase(),
+					name -> new double[DifficultyProfile.FEATURES][])[feature] = parsed;
+		}
+
+		Map<String, DifficultyProfile> profiles = builtInProfiles();
+		for (Map.Entry<String, double[][]> difficulty : features.entrySet()) {
+			for (int ii = 0; ii < DifficultyProfile.FEATURES; ii++) {
+				if (difficulty.getValue()[ii] == null) {
+					throw new IllegalArgumentException("Difficulty "
+							+ difficulty.getKey() + " in " + file + " lacks "
+							+ DifficultyProfile.FEATURE_NAMES[ii]);
+				}
+			}
+			profiles.put(difficulty.getKey(), compile(difficulty.getKey(),
+					difficulty.getValue()));
+		}
+		return new DifficultyProfiles(profiles);
+	}
+
+	private static int featureIndex(String name) {
+		for (int ii = 0; ii < DifficultyProfile.FEATURES; ii++) {
+			if (DifficultyProfile.FEATURE_NAMES[ii].equalsIgnoreCase(name)) {
+				return ii;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The profiles fitness functions use, read on first use
+	 * @throws IllegalStateException If the file named by jgap.difficulties
+	 *                               cannot be read
+	 */
+	public static DifficultyProfiles getDefault() {
+		DifficultyProfiles profiles = defaultProfiles;
+		if (profiles != null) {
+			return profiles;
+		}
+
+		synchronized (DifficultyProfiles.class) {
+			if (defaultProfiles == null) {
+				String file = System.getProperty(FILE_PROPERTY);
+				try {
+					defaultProfiles = file == null ? builtIn() : load(Paths
+							.get(file));
+				} catch (IOException e) {
+					throw new IllegalStateException(
+							"Cannot read difficulty profiles from " + file, e);
+				}
+			}
+			return defaultProfiles;
+		}
+	}
+
+	/**
+	 * @param profiles The profiles fitness functions created from now on
+	 *                 use
+	 */
+	public static void setDefault(DifficultyProfiles profiles) {
+		defaultProfiles = profiles;
+	}
+
+	/**
+	 * @param difficulty The name of a difficulty
+	 * @return Its profile
+	 * @throws IllegalArgumentException If there is no such difficulty
+	 */
+	public DifficultyProfile get(String difficulty) {
+		DifficultyProfile profile = profiles.get(difficulty.toLowerCase());
+		if (profile == null) {
+			throw new IllegalArgumentException("Unknown difficulty "
+					+ difficulty + ", expected one of " + profiles.keySet());
+		}
+		return profile;
+	}
+
+	public Set<String> getDifficulties() {
+		return profiles.keySet();
+	}
+
+}
@@ -0,0 +1,363 @@
+package jgap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads fitness evaluations over EvaluationWorkers in other JVMs, e.g.
+ * for overnight level pack builds. A WumpusFitnessFunction created with a
+ * coordinator sends the levels it has to simulate here.
+ *
+ * The levels of a call are split into batches, and every connected worker
+ * takes batches until none are left. When a worker fails or times out, its
+ * batch goes back to the others and the worker is dropped, to be
+ * reconnected on a later call. A batch that fails on MAX_ATTEMPTS workers,
+ * or that no worker is left for, fails the call. So does an error a worker
+ * reports for a batch, e.g. an unknown difficulty: every worker would
+ * report it, so it is neither retried nor taken for a lost worker.
+ *
+ * Safe to share between threads, e.g. between the islands of a run. Each
+ * worker evaluates one batch at a time.
+ *
+ */
+public class EvaluationCoordinator implements Closeable {
+
+	// Default number of levels sent to a worker at once
+	public static final int DEFAULT_BATCH_SIZE = 8;
+
+	// Workers a batch is tried on before the call fails
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+	// A worker that takes longer to answer is considered lost
+	private static final int READ_TIMEOUT_MILLIS = 60000;
+
+	// Time between attempts to reconnect a lost worker
+	private static final long RECONNECT_INTERVAL_NANOS = 10000000000L;
+
+	private final List<Worker> workers = new ArrayList<Worker>();
+	private final int batchSize;
+	private final ExecutorService connectionExecutor;
+
+	private volatile boolean closed;
+
+	// The latest failure to reach or talk to a worker, the cause when no
+	// worker is left
+	private volatile IOException lastError;
+
+	// A connection to one worker and its statistics
+	private static final class Worker {
+		final InetSocketAddress address;
+		Socket socket;
+		DataInputStream in;
+		DataOutputStream out;
+		long lastFailure;
+
+		final AtomicLong batches = new AtomicLong();
+		final AtomicLong levels = new AtomicLong();
+		final AtomicLong busyNanos = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+
+		Worker(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		boolean isConnected() {
+			return socket != null;
+		}
+
+		void connect() throws IOException {
+			Socket connection = new Socket();
+			try {
+				connection.setTcpNoDelay(true);
+				connection.connect(address, CONNECT_TIMEOUT_MILLIS);
+				connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+				in = new DataInputStream(new BufferedInputStream(
+						connection.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(
+						connection.getOutputStream()));
+			} catch (IOException e) {
+				connection.close();
+				throw e;
+			}
+			socket = connection;
+		}
+
+		void disconnect() {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Lost anyway
+				}
+			}
+			socket = null;
+			in = null;
+			out = null;
+			lastFailure = System.nanoTime();
+		}
+	}
+
+	// Levels sent to a worker together, with their place in the call
+	private static final class Batch {
+		final int first;
+		final List<int[][]> levels;
+		int attempts;
+
+		Batch(int first, List<int[][]> levels) {
+			this.first = first;
+			this.levels = levels;
+		}
+	}
+
+	/**
+	 * Connects to the workers. Workers that cannot be reached now are
+	 * tried again on later calls.
+	 *
+	 * @param addresses The workers
+	 * @param batchSize Number of levels sent to a worker at once, at most
+	 *                  EvaluationProtocol.MAX_LEVELS
+	 * @throws IOException If no worker can be reached
+	 */
+	public EvaluationCoordinator(List<InetSocketAddress> addresses,
+			int batchSize) throws IOException {
+		if (addresses.isEmpty() || batchSize < 1
+				|| batchSize > EvaluationProtocol.MAX_LEVELS) {
+			throw new IllegalArgumentException(
+					"A coordinator needs workers and a batch size of 1 to "
+							+ EvaluationProtocol.MAX_LEVELS);
+		}
+		this.batchSize = batchSize;
+
+		for (InetSocketAddress address : addresses) {
+			Worker worker = new Worker(address);
+			try {
+				worker.connect();
+			} catch (IOException e) {
+				lastError = e;
+				worker.lastFailure = System.nanoTime();
+			}
+			workers.add(worker);
+		}
+		if (getConnectedCount() == 0) {
+			throw new IOException("No evaluation worker reachable", lastError);
+		}
+
+		// Threads that talk to the workers. Daemons, so that a coordinator
+		// that is not closed does not keep the JVM alive.
+		connectionExecutor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "evaluation-coordinator");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Evaluates levels on the workers.
+	 *
+	 * @param difficulty The difficulty the levels are scored against
+	 * @param fixedRuntime Whether the runtime feature is scored as 0
+	 * @param levels The levels, each indexed by row and column
+	 * @return One evaluation per level, in the same order
+	 * @throws IllegalStateException If a batch cannot be evaluated on any
+	 *                               worker
+	 */
+	public List<EvaluationProtocol.Evaluation> evaluate(String difficulty,
+			boolean fixedRuntime, List<int[][]> levels) {
+		if (closed) {
+			throw new IllegalStateException("Coordinator is closed");
+		}
+		EvaluationProtocol.Evaluation[] evaluations = new EvaluationProtocol.Evaluation[levels
+				.size()];
+		Queue<Batch> batches = new ConcurrentLinkedQueue<Batch>();
+		for (int first = 0; first < levels.size(); first += batchSize) {
+			batches.add(new Batch(first, levels.subList(first,
+					Math.min(first + batchSize, levels.size()))));
+		}
+
+		// Batches of failed workers go back into the queue, so run rounds
+		// until it stays empty
+		while (!batches.isEmpty()) {
+			List<Callable<Void>> rounds = new ArrayList<Callable<Void>>();
+			for (Worker worker : workers) {
+				if (isAvailable(worker)) {
+					rounds.add(() -> {
+						drain(worker, difficulty, fixedRuntime, batches,
+								evaluations);
+						return null;
+					});
+				}
+			}
+			if (rounds.isEmpty()) {
+				throw new IllegalStateException("No evaluation worker left",
+						lastError);
+			}
+
+			try {
+				for (Future<Void> round : connectionExecutor.invokeAll(rounds)) {
+					round.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Remote evaluation interrupted", e);
+			} catch (ExecutionException e) {
+				// Keep the drainer's message, e.g. the worker's error
+				throw new IllegalStateException(e.getCause().getMessage(),
+						e.getCause());
+			}
+		}
+		return Collections.unmodifiableList(Arrays.asList(evaluations));
+	}
+
+	// Whether a worker is connected, reconnecting it if it has been lost
+	// for long enough
+	private boolean isAvailable(Worker worker) {
+		synchronized (worker) {
+			if (worker.isConnected()) {
+				return true;
+			}
+			if (System.nanoTime() - worker.lastFailure < RECONNECT_INTERVAL_NANOS) {
+				return false;
+			}
+			try {
+				worker.connect();
+				return true;
+			} catch (IOException e) {
+				lastError = e;
+				worker.lastFailure = System.nanoTime();
+				return false;
+			}
+		}
+	}
+
+	// Evaluates batches on one worker until the queue is empty or the
+	// worker fails
+	private void drain(Worker worker, String difficulty, boolean fixedRuntime,
+			Queue<Batch> batches, EvaluationProtocol.Evaluation[] evaluations) {
+		Batch batch;
+		while ((batch = batches.poll()) != null) {
+			List<EvaluationProtocol.Evaluation> results;
+			synchronized (worker) {
+				long start = System.nanoTime();
+				try {
+					if (!worker.isConnected()) {
+						throw new IOException("Not connected");
+					}
+					EvaluationProtocol.writeRequest(worker.out,
+							new EvaluationProtocol.Request(difficulty,
+									fixedRuntime, batch.levels));
+					results = EvaluationProtocol.readResponse(worker.in);
+					if (results.size() != batch.levels.size()) {
+						throw new IOException("Expected "
+								+ batch.levels.size() + " evaluations, got "
+								+ results.size());
+					}
+				} catch (EvaluationProtocol.WorkerException e) {
+					// The call fails anyway, so the other workers need not
+					// go on with it
+					batches.clear();
+					throw new IllegalStateException("Evaluation worker "
+							+ worker.address + " failed: " + e.getMessage(), e);
+				} catch (IOException e) {
+					lastError = e;
+					worker.failures.incrementAndGet();
+					worker.disconnect();
+					if (++batch.attempts >= MAX_ATTEMPTS) {
+						throw new IllegalStateException("Batch failed on "
+								+ MAX_ATTEMPTS + " workers", e);
+					}
+					batches.add(batch);
+					return;
+				}
+				worker.busyNanos.addAndGet(System.nanoTime() - start);
+			}
+
+			worker.batches.incrementAndGet();
+			worker.levels.addAndGet(results.size());
+			for (int ii = 0; ii < results.size(); ii++) {
+				evaluations[batch.first + ii] = results.get(ii);
+			}
+		}
+	}
+
+	public int getWorkerCount() {
+		return workers.size();
+	}
+
+	public int getConnectedCount() {
+		int connected = 0;
+		for (Worker worker : workers) {
+			synchronized (worker) {
+				if (worker.isConnected()) {
+					connected++;
+				}
+			}
+		}
+		return connected;
+	}
+
+	public InetSocketAddress getAddress(int worker) {
+		return workers.get(worker).address;
+	}
+
+	// Number of levels a worker has evaluated
+	public long getEvaluatedCount(int worker) {
+		return workers.get(worker).levels.get();
+	}
+
+	// Number of times a worker failed or timed out
+	public long getFailureCount(int worker) {
+		return workers.get(worker).failures.get();
+	}
+
+	// Levels per second a worker evaluates while it has a batch
+	public double getThroughput(int worker) {
+		double seconds = workers.get(worker).busyNanos.get() / 1e9;
+		return seconds == 0 ? 0 : workers.get(worker).levels.get() / seconds;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stats = new StringBuilder();
+		for (int ii = 0; ii < workers.size(); ii++) {
+			Worker worker = workers.get(ii);
+			stats.append(String.format(
+					"%s: batches=%d, levels=%d, failures=%d, throughput=%.1f/s%n",
+					worker.address, worker.batches.get(), worker.levels.get(),
+					worker.failures.get(), getThroughput(ii)));
+		}
+		return stats.toString();
+	}
+
+	// Disconnects from the workers, which keep running
+	@Override
+	public void close() {
+		closed = true;
+		connectionExecutor.shutdown();
+		for (Worker worker : workers) {
+			synchronized (worker) {
+				worker.disconnect();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package jgap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import ai.wumpus.SimulationResult;
+
+/**
+ * Flight recorder event spanning the evaluation of one level, in the JVM
+ * that evaluates it: the generating JVM, or the EvaluationWorker for
+ * remote simulations. Create, begin and finish it unconditionally. Without
+ * a recording it costs next to nothing.
+ *
+ */
+@Name("jgap.Evaluation")
+@Label("Level Evaluation")
+@Category({ "Wumpus", "Generation" })
+@Description("Screening, cache lookup or simulation and scoring of a level")
+class EvaluationEvent extends Event {
+
+	// How the fitness was found
+	static final String SCREENED = "screened";
+	static final String CACHED = "cached";
+	static final String SIMULATED = "simulated";
+	static final String WORKER = "worker";
+
+	@Label("Difficulty")
+	String difficulty;
+
+	@Label("Source")
+	@Description("screened, cached, simulated, or simulated on a worker")
+	String source;
+
+	@Label("Fitness")
+	double fitness;
+
+	@Label("Outcome")
+	@Description("1 if the agent killed the Wumpus, 0 if not, -1 without a simulation")
+	int outcome;
+
+	@Label("Steps")
+	@Description("Moves of the agent, -1 without a simulation")
+	int steps;
+
+	@Label("Cause of Death")
+	String causeOfDeath;
+
+	@Label("Level")
+	@Description("Cell type codes row by row, rows separated by '/'")
+	String level;
+
+	// Commits the event if it is recorded
+	void finish(String difficulty, String source, double fitness,
+			SimulationResult result, int[][] map) {
+		end();
+		if (!shouldCommit()) {
+			return;
+		}
+		this.difficulty = difficulty;
+		this.source = source;
+		this.fitness = fitness;
+		this.outcome = result == null ? -1 : (int) result.getOutcome();
+		this.steps = result == null ? -1 : (int) result.getSteps();
+		this.causeOfDeath = result == null ? null : result.getCauseOfDeath();
+
+		StringBuilder cells = new StringBuilder(map.length
+				* (map[0].length + 1));
+		for (int row = 0; row < map.length; row++) {
+			if (row > 0) {
+				cells.append('/');
+			}
+			for (int cell : map[row]) {
+				cells.append(cell);
+			}
+		}
+		this.level = cells.toString();
+		commit();
+	}
+
+}
@@ -0,0 +1,263 @@
+package jgap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ai.wumpus.SimulationResult;
+
+/**
+ * Binary messages between an EvaluationCoordinator and its
+ * EvaluationWorkers. A connection carries one request and its response at a
+ * time.
+ *
+ * A request holds a batch of levels of one difficulty:
+ * - the magic number "WEVQ" and the protocol version, a byte
+ * - flags, a byte: FIXED_RUNTIME scores the runtime feature as 0, as a
+ *   fitness function with a cache does
+ * - the difficulty, in modified UTF-8
+ * - rows and columns, as shorts, and the number of levels, an int, at
+ *   most MAX_CELLS cells and MAX_LEVELS levels
+ * - the cells of every level at 3 bits each, packed into longs as
+ *   FitnessCache.pack does
+ *
+ * A response holds one evaluation per level, in request order:
+ * - the magic number "WEVR" and the number of evaluations, an int
+ * - per level the fitness, then the outcome, steps, unique tiles, move
+ *   ratio and runtime of the simulation as doubles, then the cause of
+ *   death in modified UTF-8
+ * A worker that cannot evaluate the batch answers with -1 evaluations and
+ * an error message instead.
+ *
+ * All values are big-endian, as DataOutputStream writes them.
+ *
+ */
+public class EvaluationProtocol {
+
+	static final int REQUEST_MAGIC = 0x57455651;
+	static final int RESPONSE_MAGIC = 0x57455652;
+	static final byte VERSION = 1;
+
+	// Request flags
+	static final byte FIXED_RUNTIME = 1;
+
+	// Evaluation count of an error response
+	private static final int ERROR = -1;
+
+	// Largest level, in cells, and largest batch a request may hold. Workers
+	// may listen on other hosts' connections, so a request is checked
+	// against them before anything is allocated for it.
+	public static final int MAX_CELLS = 1 << 20;
+	public static final int MAX_LEVELS = 1 << 16;
+
+	/**
+	 * The error response of a worker that could not evaluate a batch, e.g.
+	 * of a difficulty it does not know. The connection is still good, and
+	 * the batch would fail on any worker set up the same way.
+	 */
+	@SuppressWarnings("serial")
+	public static final class WorkerException extends IOException {
+		public WorkerException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * A batch of levels to evaluate.
+	 */
+	public static final class Request {
+		private final String difficulty;
+		private final boolean fixedRuntime;
+		private final List<int[][]> levels;
+
+		public Request(String difficulty, boolean fixedRuntime,
+				List<int[][]> levels) {
+			this.difficulty = difficulty;
+			this.fixedRuntime = fixedRuntime;
+			this.levels = levels;
+		}
+
+		public String getDifficulty() {
+			return difficulty;
+		}
+
+		public boolean isFixedRuntime() {
+			return fixedRuntime;
+		}
+
+		/**
+		 * @return The levels, each indexed by row and column
+		 */
+		public List<int[][]> getLevels() {
+			return levels;
+		}
+	}
+
+	/**
+	 * The fitness of a level and the simulation it was scored by.
+	 */
+	public static final class Evaluation {
+		private final double fitness;
+		private final SimulationResult result;
+
+		public Evaluation(double fitness, SimulationResult result) {
+			this.fitness = fitness;
+			this.result = result;
+		}
+
+		public double getFitness() {
+			return fitness;
+		}
+
+		public SimulationResult getResult() {
+			return result;
+		}
+	}
+
+	/**
+	 * @param out The connection to the worker
+	 * @param request The batch, of levels of equal size
+	 * @throws IOException If the request cannot be sent
+	 * @throws IllegalArgumentException If the batch is empty or exceeds the
+	 *                                  limits of the protocol
+	 */
+	public static void writeRequest(DataOutputStream out, Request request)
+			throws IOException {
+		List<int[][]> levels = request.getLevels();
+		if (levels.isEmpty() || levels.size() > MAX_LEVELS) {
+			throw new IllegalArgumentException("Expected 1 to " + MAX_LEVELS
+					+ " levels, got " + levels.size());
+		}
+		int rows = levels.get(0).length;
+		int columns = levels.get(0)[0].length;
+		if (!isLevelSize(rows, columns)) {
+			throw new IllegalArgumentException("Cannot send " + rows + "x"
+					+ columns + " levels");
+		}
+
+		out.writeInt(REQUEST_MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(request.isFixedRuntime() ? FIXED_RUNTIME : 0);
+		out.writeUTF(request.getDifficulty());
+		out.writeShort(rows);
+		out.writeShort(columns);
+		out.writeInt(levels.size());
+		for (int[][] level : levels) {
+			for (long word : FitnessCache.pack(level)) {
+				out.writeLong(word);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * @param in The connection to the coordinator
+	 * @return The batch
+	 * @throws IOException If the request cannot be read or is malformed
+	 */
+	public static Request readRequest(DataInputStream in) throws IOException {
+		if (in.readInt() != REQUEST_MAGIC) {
+			throw new IOException("Not an evaluation request");
+		}
+		byte version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported protocol version " + version);
+		}
+		boolean fixedRuntime = (in.readByte() & FIXED_RUNTIME) != 0;
+		String difficulty = in.readUTF();
+		int rows = in.readShort();
+		int columns = in.readShort();
+		int count = in.readInt();
+		if (!isLevelSize(rows, columns)) {
+			throw new IOException("Invalid level size " + rows + "x"
+					+ columns);
+		}
+		if (count < 1 || count > MAX_LEVELS) {
+			throw new IOException("Invalid level count " + count);
+		}
+
+		int words = (rows * columns * FitnessCache.BITS_PER_GENE + 63) / 64;
+		List<int[][]> levels = new ArrayList<int[][]>(count);
+		for (int ii = 0; ii < count; ii++) {
+			long[] genome = new long[words];
+			for (int jj = 0; jj < words; jj++) {
+				genome[jj] = in.readLong();
+			}
+			levels.add(FitnessCache.unpack(genome, rows, columns));
+		}
+		return new Request(difficulty, fixedRuntime, levels);
+	}
+
+	private static boolean isLevelSize(int rows, int columns) {
+		return rows >= 1 && columns >= 1 && rows * columns <= MAX_CELLS;
+	}
+
+	/**
+	 * @param out The connection to the coordinator
+	 * @param evaluations One evaluation per level of the request
+	 * @throws IOException If the response cannot be sent
+	 */
+	public static void writeResponse(DataOutputStream out,
+			List<Evaluation> evaluations) throws IOException {
+		out.writeInt(RESPONSE_MAGIC);
+		out.writeInt(evaluations.size());
+		for (Evaluation evaluation : evaluations) {
+			SimulationResult result = evaluation.getResult();
+			out.writeDouble(evaluation.getFitness());
+			out.writeDouble(result.getOutcome());
+			out.writeDouble(result.getSteps());
+			out.writeDouble(result.getUnique());
+			out.writeDouble(result.getMoveratio());
+			out.writeDouble(result.getRuntime());
+			out.writeUTF(result.getCauseOfDeath());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Tells the coordinator that the batch failed.
+	 *
+	 * @param out The connection to the coordinator
+	 * @param message What went wrong
+	 * @throws IOException If the response cannot be sent
+	 */
+	public static void writeError(DataOutputStream out, String message)
+			throws IOException {
+		out.writeInt(RESPONSE_MAGIC);
+		out.writeInt(ERROR);
+		out.writeUTF(message == null ? "" : message);
+		out.flush();
+	}
+
+	/**
+	 * @param in The connection to the worker
+	 * @return One evaluation per level of the request
+	 * @throws WorkerException If the worker reports an error
+	 * @throws IOException If the response cannot be read or is malformed
+	 */
+	public static List<Evaluation> readResponse(DataInputStream in)
+			throws IOException {
+		if (in.readInt() != RESPONSE_MAGIC) {
+			throw new IOException("Not an evaluation response");
+		}
+		int count = in.readInt();
+		if (count == ERROR) {
+			throw new WorkerException(in.readUTF());
+		}
+		if (count < 0) {
+			throw new IOException("Negative evaluation count " + count);
+		}
+
+		List<Evaluation> evaluations = new ArrayList<Evaluation>(count);
+		for (int ii = 0; ii < count; ii++) {
+			double fitness = in.readDouble();
+			evaluations.add(new Evaluation(fitness, new SimulationResult(
+					in.readDouble(), in.readDouble(), in.readDouble(),
+					in.readDouble(), in.readDouble(), in.readUTF())));
+		}
+		return evaluations;
+	}
+
+}
@@ -0,0 +1,166 @@
+package jgap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ai.wumpus.SimulationResult;
+import ai.wumpus.WumpusAI;
+
+/**
+ * Simulates and scores levels for an EvaluationCoordinator, see
+ * EvaluationProtocol. Every connection is served on its own thread, one
+ * batch after another.
+ *
+ * Run as "java jgap.EvaluationWorker [port [bind address]]". Without a bind
+ * address the worker only listens on loopback.
+ *
+ */
+public class EvaluationWorker implements Closeable {
+
+	public static final int DEFAULT_PORT = 7171;
+
+	private final ServerSocket serverSocket;
+
+	// Scoring per difficulty. Fitness functions keep no state between
+	// scores, so one per difficulty is shared by all connections.
+	private final Map<String, WumpusFitnessFunction> fitnessFunctions = new ConcurrentHashMap<String, WumpusFitnessFunction>();
+
+	private final AtomicLong evaluatedCount = new AtomicLong();
+
+	/**
+	 * Starts listening and accepting connections on a background thread.
+	 *
+	 * @param address Where to listen, port 0 for any free port
+	 * @throws IOException If the address cannot be bound
+	 */
+	public EvaluationWorker(InetSocketAddress address) throws IOException {
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address);
+
+		Thread acceptor = new Thread(this::accept, "evaluation-worker-"
+				+ getPort());
+		acceptor.start();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		InetAddress bindAddress = args.length > 1 ? InetAddress
+				.getByName(args[1]) : InetAddress.getLoopbackAddress();
+
+		EvaluationWorker worker = new EvaluationWorker(new InetSocketAddress(
+				bindAddress, port));
+		System.out.println("Evaluation worker listening on "
+				+ worker.serverSocket.getLocalSocketAddress());
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			Socket connection;
+			try {
+				connection = serverSocket.accept();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					e.printStackTrace();
+				}
+				return;
+			}
+
+			Thread handler = new Thread(() -> serve(connection),
+					"evaluation-worker-" + connection.getRemoteSocketAddress());
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	// Answers the requests of one coordinator until it disconnects
+	private void serve(Socket connection) {
+		try (Socket socket = connection) {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+
+			while (true) {
+				EvaluationProtocol.Request request;
+				try {
+					request = EvaluationProtocol.readRequest(in);
+				} catch (EOFException e) {
+					return;
+				}
+
+				List<EvaluationProtocol.Evaluation> evaluations;
+				try {
+					evaluations = evaluate(request);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					EvaluationProtocol.writeError(out, e.toString());
+					continue;
+				}
+				EvaluationProtocol.writeResponse(out, evaluations);
+			}
+		} catch (SocketException e) {
+			// The coordinator went away
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private List<EvaluationProtocol.Evaluation> evaluate(
+			EvaluationProtocol.Request request) {
+		WumpusFitnessFunction fitnessFunction = fitnessFunctions
+				.computeIfAbsent(request.getDifficulty(),
+						WumpusFitnessFunction::new);
+
+		List<EvaluationProtocol.Evaluation> evaluations = new ArrayList<EvaluationProtocol.Evaluation>(
+				request.getLevels().size());
+		for (int[][] level : request.getLevels()) {
+			EvaluationEvent event = new EvaluationEvent();
+			event.begin();
+
+			SimulationResult result = WumpusAI.runSimulation(level);
+			double runtime = request.isFixedRuntime() ? 0 : result.getRuntime();
+			double fitness = fitnessFunction.score(result,
+					WumpusFitnessFunction.extractFeatures(level)
+							.getCellCounts(), runtime);
+			evaluations.add(new EvaluationProtocol.Evaluation(fitness, result));
+
+			event.finish(request.getDifficulty(), EvaluationEvent.WORKER,
+					fitness, result, level);
+		}
+		evaluatedCount.addAndGet(evaluations.size());
+		return evaluations;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	// Number of levels simulated since the worker started
+	public long getEvaluatedCount() {
+		return evaluatedCount.get();
+	}
+
+	// Stops accepting connections. Open connections end when their
+	// coordinator disconnects.
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+}
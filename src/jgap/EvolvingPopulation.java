@@ -0,0 +1,87 @@
+package jgap;
+
+import java.util.List;
+
+/**
+ * A population of levels that a GA engine evolves one generation at a
+ * time. Island runs exchange their fittest individuals through it.
+ *
+ */
+public interface EvolvingPopulation extends AutoCloseable {
+
+	/**
+	 * A level that moves between populations, with its fitness so that the
+	 * receiving population does not simulate it again.
+	 */
+	final class Migrant {
+		private final int[][] level;
+		private final double fitness;
+
+		public Migrant(int[][] level, double fitness) {
+			this.level = level;
+			this.fitness = fitness;
+		}
+
+		/**
+		 * @return The level, indexed by row and column
+		 */
+		public int[][] getLevel() {
+			return level;
+		}
+
+		public double getFitness() {
+			return fitness;
+		}
+	}
+
+	// Breeds the next generation
+	void evolve();
+
+	// Number of generations evolved so far
+	int getGeneration();
+
+	// Best fitness so far
+	double getFittestValue();
+
+	/**
+	 * @return The best level so far, indexed by row and column
+	 */
+	int[][] getFittestLevel();
+
+	/**
+	 * @return The fitness of every evaluated individual of the current
+	 *         generation, in no particular order
+	 */
+	double[] getFitnessValues();
+
+	/**
+	 * @param count Number of individuals
+	 * @return Copies of the fittest individuals of the current generation
+	 */
+	List<Migrant> emigrants(int count);
+
+	/**
+	 * Replaces the least fit individuals of the current generation with the
+	 * migrants. The fittest individual is never replaced, so at most
+	 * population size - 1 migrants are taken in.
+	 *
+	 * @param migrants The individuals to take in
+	 */
+	void immigrate(List<Migrant> migrants);
+
+	/**
+	 * Takes a snapshot from which the population can be restored. The
+	 * random generator is restarted from the seed stored in the snapshot,
+	 * see PopulationState.
+	 *
+	 * @return The state of the population, or of every island in island
+	 *         order
+	 */
+	List<PopulationState> checkpoint();
+
+	// Releases what the engine holds on to after the run
+	@Override
+	default void close() {
+	}
+
+}
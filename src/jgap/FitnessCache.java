@@ -0,0 +1,167 @@
+package jgap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgap.FitnessFunction;
+
+/**
+ * Least recently used cache of fitness values, keyed by the genome packed
+ * at 3 bits per gene. Identical genomes recur often within and across
+ * generations, since the selector allows doublettes and mutation rates are
+ * low.
+ *
+ * Safe to share between threads evaluating the same run.
+ *
+ */
+public class FitnessCache {
+
+	// Gene values 0 to 5 fit in 3 bits
+	public static final int BITS_PER_GENE = 3;
+
+	private final int capacity;
+	private final Map<GenomeKey, Double> fitnessValues;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param capacity The number of genomes kept before the least recently
+	 *                 used one is evicted
+	 */
+	@SuppressWarnings("serial")
+	public FitnessCache(int capacity) {
+		this.capacity = capacity;
+		this.fitnessValues = new LinkedHashMap<GenomeKey, Double>(16, 0.75f,
+				true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<GenomeKey, Double> eldest) {
+				return size() > FitnessCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Packs the cells of a level at 3 bits each, in the order of the genes
+	 * they came from.
+	 *
+	 * @param level The level, indexed by row and column
+	 * @return The packed genome, least significant bits first
+	 */
+	public static long[] pack(int[][] level) {
+		int columns = level[0].length;
+		int genes = level.length * columns;
+		long[] words = new long[(genes * BITS_PER_GENE + 63) / 64];
+
+		for (int ii = 0; ii < genes; ii++) {
+			long value = level[ii / columns][ii % columns];
+			int bit = ii * BITS_PER_GENE;
+			int offset = bit & 63;
+			words[bit >>> 6] |= value << offset;
+			// The gene straddles two words
+			if (offset > 64 - BITS_PER_GENE) {
+				words[(bit >>> 6) + 1] |= value >>> (64 - offset);
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Reverses {@link #pack(int[][])}.
+	 *
+	 * @param genome The packed genome
+	 * @param rows Rows in the level
+	 * @param columns Columns in the level
+	 * @return The level, indexed by row and column
+	 */
+	public static int[][] unpack(long[] genome, int rows, int columns) {
+		int[][] level = new int[rows][columns];
+
+		for (int ii = 0; ii < rows * columns; ii++) {
+			int bit = ii * BITS_PER_GENE;
+			int offset = bit & 63;
+			long value = genome[bit >>> 6] >>> offset;
+			// The gene straddles two words
+			if (offset > 64 - BITS_PER_GENE) {
+				value |= genome[(bit >>> 6) + 1] << (64 - offset);
+			}
+			level[ii / columns][ii % columns] = (int) (value & 7);
+		}
+		return level;
+	}
+
+	/**
+	 * @param genome A genome packed with {@link #pack(int[][])}
+	 * @return The cached fitness value, or FitnessFunction.NO_FITNESS_VALUE
+	 *         if the genome has not been evaluated
+	 */
+	public double get(long[] genome) {
+		Double fitness;
+		synchronized (fitnessValues) {
+			fitness = fitnessValues.get(new GenomeKey(genome));
+		}
+
+		if (fitness == null) {
+			misses.incrementAndGet();
+			return FitnessFunction.NO_FITNESS_VALUE;
+		}
+		hits.incrementAndGet();
+		return fitness;
+	}
+
+	public void put(long[] genome, double fitness) {
+		synchronized (fitnessValues) {
+			fitnessValues.put(new GenomeKey(genome), fitness);
+		}
+	}
+
+	public int size() {
+		synchronized (fitnessValues) {
+			return fitnessValues.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long lookups = hits.get() + misses.get();
+		return lookups == 0 ? 0 : (double) hits.get() / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + getHits() + ", misses=" + getMisses() + ", size="
+				+ size() + "/" + capacity;
+	}
+
+	// Packed genome with value equality
+	private static final class GenomeKey {
+		private final long[] words;
+		private final int hash;
+
+		GenomeKey(long[] words) {
+			this.words = words;
+			this.hash = Arrays.hashCode(words);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof GenomeKey
+					&& Arrays.equals(words, ((GenomeKey) other).words);
+		}
+	}
+
+}
@@ -1,6 +1,13 @@
 package jgap;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jgap.Chromosome;
 import org.jgap.Configuration;
@@ -13,6 +20,7 @@ import org.jgap.impl.CrossoverOperator;
 import org.jgap.impl.DefaultConfiguration;
 import org.jgap.impl.IntegerGene;
 import org.jgap.impl.MutationOperator;
+import org.jgap.impl.StockRandomGenerator;
 
 /**
  * Main class where generation of Wumpus levels by Genetic Algorithm occurs
@@ -22,17 +30,11 @@ import org.jgap.impl.MutationOperator;
  */
 
 public class GenerateWumpusLevels {
-	// Constant for number of rows
-	private static int ROWS = WumpusSimulation.ROWS;
-	
-	// Constant for number of columns
-	private static int COLUMNS = WumpusSimulation.COLUMNS;
-	
 	// Constant for population size
 	private static final int POPULATION_SIZE = 50;
 	
 	// Constant for number of generation
-	private static final int NO_OF_GENERATION = 50;
+	static final int NO_OF_GENERATION = 50;
 	
 	// Constant for selection rate
 	private static final double SELECTION_RATE = 0.35d;
@@ -42,33 +44,334 @@ public class GenerateWumpusLevels {
 	
 	// Constant for mutation rate
 	private static final int MUTATION_RATE_DENOMINATOR = 12;
+
+	// Source of unique configuration ids, so that runs can share a JVM
+	private static final AtomicLong configurationCounter = new AtomicLong();
 	
 	public static int[][] generate(PrintWriter logWriter, String difficulty) {
+		return generate(logWriter, difficulty, new GenerationOptions())
+				.getLevel();
+	}
+
+	/**
+	 * Generates a level, evaluating the fitness of each generation on the
+	 * given executor.
+	 * 
+	 * @param logWriter Where the level and its generation runtime are logged
+	 * @param difficulty "easy", "medium", or "hard"
+	 * @param fitnessExecutor Executor for fitness evaluations, or null to
+	 *                        evaluate them one after another
+	 * @return The fittest level found
+	 */
+	public static int[][] generate(PrintWriter logWriter, String difficulty,
+			ExecutorService fitnessExecutor) {
+		GenerationOptions options = new GenerationOptions();
+		options.setFitnessExecutor(fitnessExecutor);
+		return generate(logWriter, difficulty, options).getLevel();
+	}
+
+	/**
+	 * Generates a level with its own configuration and random seed. Runs
+	 * with different configurations can execute on different threads at
+	 * the same time.
+	 * 
+	 * @param logWriter Where the level and its generation runtime are logged
+	 * @param difficulty "easy", "medium", or "hard"
+	 * @param fitnessExecutor Executor for fitness evaluations, or null to
+	 *                        evaluate them one after another
+	 * @param seed Seed of the GA's random generator
+	 * @return The fittest level found
+	 */
+	public static int[][] generate(PrintWriter logWriter, String difficulty,
+			ExecutorService fitnessExecutor, long seed) {
+		GenerationOptions options = new GenerationOptions();
+		options.setFitnessExecutor(fitnessExecutor);
+		options.setSeed(seed);
+		return generate(logWriter, difficulty, options).getLevel();
+	}
+
+	/**
+	 * Generates a level with the given engine and settings.
+	 * 
+	 * @param logWriter Where the level and its generation runtime are logged
+	 * @param difficulty "easy", "medium", or "hard"
+	 * @param options Engine, seed, executor and cache settings of the run
+	 * @return The fittest level found and its fitness
+	 */
+	public static GeneratedLevel generate(PrintWriter logWriter,
+			String difficulty, GenerationOptions options) {
+		return run(logWriter, difficulty, options, null);
+	}
+
+	/**
+	 * Continues a run from its last checkpoint. Given the same settings, a
+	 * resumed run evolves exactly as the run would have gone on after
+	 * taking the checkpoint.
+	 *
+	 * @param logWriter Where the level and its generation runtime are logged
+	 * @param checkpointFile A file the run wrote, see
+	 *                       GenerationOptions.setCheckpoints
+	 * @param options Settings of the resumed run. The engine, seed, level
+	 *                size, islands and playableOnly are taken from the
+	 *                checkpoint. The rest, e.g. the migration settings,
+	 *                should match the original run for it to go on as it
+	 *                would have. The generation and simulation limits count
+	 *                from the start of the original run, the time budget
+	 *                from now.
+	 * @return The fittest level found and its fitness
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	public static GeneratedLevel resume(PrintWriter logWriter,
+			Path checkpointFile, GenerationOptions options) throws IOException {
+		Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+
+		GenerationOptions resumed = new GenerationOptions(options);
+		resumed.setEngine(checkpoint.getEngine());
+		resumed.setSeed(checkpoint.getSeed());
+		resumed.setGridSize(checkpoint.getRows(), checkpoint.getColumns());
+		resumed.setIslands(checkpoint.getPopulations().size());
+		resumed.setPlayableOnly(checkpoint.isPlayableOnly());
+
+		System.out.println("Resuming " + checkpoint.getDifficulty()
+				+ " run at generation " + checkpoint.getGeneration() + " from "
+				+ checkpointFile);
+		return run(logWriter, checkpoint.getDifficulty(), resumed, checkpoint);
+	}
+
+	/**
+	 * @param difficulty The difficulty of a run
+	 * @param options The settings of the run
+	 * @return The file the run checkpoints to, or null if it does not
+	 */
+	static Path checkpointFile(String difficulty, GenerationOptions options) {
+		if (options.getCheckpointDirectory() == null) {
+			return null;
+		}
+		return options.getCheckpointDirectory().resolve(
+				Checkpoint.fileName(difficulty, options.getSeed()));
+	}
+
+	// Runs the GA from scratch, or from the checkpoint if there is one
+	private static GeneratedLevel run(PrintWriter logWriter,
+			String difficulty, GenerationOptions options, Checkpoint checkpoint) {
 		long startTime = System.currentTimeMillis();
+		GenerationEvent event = new GenerationEvent();
+		event.begin();
+
+		// Identical genomes recur, only simulate them once. A resumed run
+		// starts out knowing the fitness of its population.
+		FitnessCache fitnessCache = options.getFitnessCacheSize() > 0 ? new FitnessCache(
+				options.getFitnessCacheSize()) : null;
+		if (fitnessCache != null && checkpoint != null) {
+			for (PopulationState state : checkpoint.getPopulations()) {
+				for (int ii = 0; ii < state.getSize(); ii++) {
+					if (state.getFitness(ii) != FitnessFunction.NO_FITNESS_VALUE) {
+						fitnessCache.put(state.getGenome(ii), state.getFitness(ii));
+					}
+				}
+			}
+		}
+		WumpusFitnessFunction fitnessFunction = new WumpusFitnessFunction(
+				difficulty, options.getRows(), options.getColumns(),
+				fitnessCache, options.getCoordinator());
+		StoppingPolicy stoppingPolicy = new StoppingPolicy(options);
+		long previousSimulations = checkpoint == null ? 0 : checkpoint
+				.getSimulations();
+
+		// Created first, so that the initial population is timed as well
+		TelemetryRecorder telemetry = options.getTelemetrySink() == null ? null
+				: new TelemetryRecorder(options.getTelemetrySink(), difficulty,
+						options.getSeed(), fitnessFunction, fitnessCache);
+
+		Path checkpointFile = checkpointFile(difficulty, options);
+		CheckpointWriter checkpoints = checkpointFile == null ? null
+				: new CheckpointWriter(checkpointFile, difficulty, options);
 
-		// The result array to be returned
-		int[][] rawMap = new int[ROWS][COLUMNS];
+		GeneratedLevel result = null;
+		try {
+			EvolvingPopulation population = createPopulation(difficulty,
+					fitnessFunction, options, checkpoint);
+			if (population != null) {
+				try {
+					result = evolve(difficulty, population, fitnessFunction,
+							stoppingPolicy, telemetry, checkpoints, options,
+							previousSimulations, checkpoint != null);
+				} finally {
+					population.close();
+				}
+			}
+		} finally {
+			if (checkpoints != null) {
+				checkpoints.close();
+			}
+		}
+		if (result == null) {
+			result = new GeneratedLevel(difficulty,
+					new int[options.getRows()][options.getColumns()],
+					FitnessFunction.NO_FITNESS_VALUE, 0, null);
+			commit(event, options, result);
+			return result;
+		}
+
+		System.out.println("Final fitness is: " + result.getFitness()
+				+ " after " + result.getGenerations() + " generations ("
+				+ result.getStopReason() + ")");
+		if (fitnessCache != null) {
+			System.out.println("Fitness cache: " + fitnessCache);
+		}
+
+		int[][] rawMap = result.getLevel();
+
+		long endTime = System.currentTimeMillis();
+		double duration = (endTime - startTime) / 1000.0;
+		WumpusSimulation.recordGeneration(result.getFitness(), duration);
+		result = new GeneratedLevel(difficulty, rawMap, result.getFitness(),
+				result.getGenerations(), result.getStopReason(),
+				previousSimulations + fitnessFunction.getSimulationCount(),
+				duration);
+		commit(event, options, result);
+
+		// Print raw map, in one piece when runs share the writer
+		synchronized (logWriter) {
+			for (int ii = 0; ii < rawMap.length; ii++) {
+				logWriter.print("{");
+				for (int jj = 0; jj < rawMap[ii].length; jj++) {
+					if (jj == rawMap[ii].length - 1) {
+						logWriter.print(rawMap[ii][jj]);
+					} else
+					logWriter.print(rawMap[ii][jj] + ",");
+				}
+				logWriter.println("},");
+			}
 
+			logWriter.println("Level generation runtime is " + duration
+					+ " seconds");
+		}
+		return result;
+	}
+
+	// Records the run for the flight recorder, if it is recording
+	private static void commit(GenerationEvent event,
+			GenerationOptions options, GeneratedLevel result) {
+		event.end();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.difficulty = result.getDifficulty();
+		event.engine = options.getEngine().name();
+		event.seed = options.getSeed();
+		event.rows = options.getRows();
+		event.columns = options.getColumns();
+		event.islands = options.getIslands();
+		event.generations = result.getGenerations();
+		event.finalFitness = result.getFitness();
+		event.simulations = result.getSimulations();
+		event.stopReason = result.getStopReason() == null ? null : result
+				.getStopReason().name();
+		event.commit();
+	}
+
+	// Creates the population of a run, or the islands of an island run,
+	// restoring them from the checkpoint if there is one. Returns null if
+	// JGAP rejects the configuration.
+	private static EvolvingPopulation createPopulation(String difficulty,
+			WumpusFitnessFunction fitnessFunction, GenerationOptions options,
+			Checkpoint checkpoint) {
+		if (options.getIslands() <= 1) {
+			return createPopulation(difficulty, fitnessFunction, options,
+					options.getSeed(), checkpoint == null ? null : checkpoint
+							.getPopulations().get(0));
+		}
+
+		// Every island gets its own seed, drawn in island order
+		SplittableRandom seeds = new SplittableRandom(options.getSeed());
+		List<EvolvingPopulation> islands = new ArrayList<EvolvingPopulation>();
+		for (int ii = 0; ii < options.getIslands(); ii++) {
+			EvolvingPopulation island = createPopulation(difficulty,
+					fitnessFunction, options, seeds.nextLong(),
+					checkpoint == null ? null : checkpoint.getPopulations()
+							.get(ii));
+			if (island == null) {
+				for (EvolvingPopulation created : islands) {
+					created.close();
+				}
+				return null;
+			}
+			islands.add(island);
+		}
+		return new IslandModel(islands, options.getTopology(),
+				options.getMigrationInterval(), options.getMigrantCount(),
+				options.getIslandExecutor());
+	}
+
+	private static EvolvingPopulation createPopulation(String difficulty,
+			WumpusFitnessFunction fitnessFunction, GenerationOptions options,
+			long seed, PopulationState state) {
+		if (options.getEngine() == GenerationOptions.Engine.NATIVE) {
+			// Same rates as JGAP
+			if (state != null) {
+				return new NativeGeneticAlgorithm(fitnessFunction,
+						options.getRows(), options.getColumns(),
+						SELECTION_RATE, CROSSOVER_RATE,
+						MUTATION_RATE_DENOMINATOR,
+						options.getFitnessExecutor(), options.isPlayableOnly(),
+						state);
+			}
+			return new NativeGeneticAlgorithm(fitnessFunction,
+					options.getRows(), options.getColumns(), POPULATION_SIZE, SELECTION_RATE, CROSSOVER_RATE,
+					MUTATION_RATE_DENOMINATOR, seed,
+					options.getFitnessExecutor(), options.isPlayableOnly());
+		}
+		return createJgapPopulation(difficulty, fitnessFunction, options, seed,
+				state);
+	}
+
+	// Sets up a JGAP population, restored from the state if there is one.
+	// Returns null if JGAP rejects the configuration.
+	private static JgapPopulation createJgapPopulation(String difficulty,
+			WumpusFitnessFunction fitnessFunction, GenerationOptions options,
+			long seed, PopulationState state) {
 		// Start with a DefaultConfiguration for the most common settings.
-		Configuration conf = new DefaultConfiguration();
+		// JGAP keeps some settings per configuration id, so every run gets
+		// its own.
+		String configurationId = "wumpus-"
+				+ configurationCounter.incrementAndGet();
+		Configuration conf = new DefaultConfiguration(configurationId,
+				difficulty + " level");
 		
 		try {
+			// Seed the random generator
+			StockRandomGenerator randomGenerator = new StockRandomGenerator();
+			randomGenerator.setSeed(seed);
+			conf.setRandomGenerator(randomGenerator);
+
 			// Set selection rate
 			BestChromosomesSelector bestChromsSelector = new BestChromosomesSelector(
 					conf, SELECTION_RATE);
 			bestChromsSelector.setDoubletteChromosomesAllowed(true);
 			conf.addNaturalSelector(bestChromsSelector, false);
 			
-			// Set crossover rate
-			conf.addGeneticOperator(new CrossoverOperator(conf, CROSSOVER_RATE));
-			
-			// Set mutation rate
-			conf.addGeneticOperator(new MutationOperator(conf, MUTATION_RATE_DENOMINATOR));
+			// Set crossover and mutation rate, with operators that keep
+			// the levels playable unless told otherwise
+			if (options.isPlayableOnly()) {
+				conf.addGeneticOperator(new PlayableCrossoverOperator(conf,
+						CROSSOVER_RATE));
+				conf.addGeneticOperator(new PlayableMutationOperator(conf,
+						MUTATION_RATE_DENOMINATOR));
+			} else {
+				conf.addGeneticOperator(new CrossoverOperator(conf, CROSSOVER_RATE));
+				conf.addGeneticOperator(new MutationOperator(conf, MUTATION_RATE_DENOMINATOR));
+			}
 
 			// Set the fitness function
-			FitnessFunction myFunc = new WumpusFitnessFunction(difficulty);
-			
-			conf.setFitnessFunction(myFunc);
+			conf.setFitnessFunction(fitnessFunction);
+
+			// Evaluate fitness in batches on the workers, or in parallel
+			if (options.getCoordinator() != null) {
+				conf.setBreeder(new BatchBreeder());
+			} else if (options.getFitnessExecutor() != null) {
+				conf.setBreeder(new ParallelBreeder(options.getFitnessExecutor()));
+			}
 		} catch (InvalidConfigurationException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -78,7 +381,8 @@ public class GenerateWumpusLevels {
 		Chromosome sampleChromosome;
 
 		try {
-			IntegerGene[] sampleGene = new IntegerGene[ROWS * COLUMNS];
+			int geneCount = options.getRows() * options.getColumns();
+			IntegerGene[] sampleGene = new IntegerGene[geneCount];
 
 			// ID for a gene:
 			// 0 = Start room
@@ -87,7 +391,7 @@ public class GenerateWumpusLevels {
 			// 3 = NW_SE tunnel
 			// 4 = Pit room
 			// 5 = Wumpus room
-			for (int ii = 0; ii < ROWS * COLUMNS; ii++) {
+			for (int ii = 0; ii < geneCount; ii++) {
 				sampleGene[ii] = new IntegerGene(conf, 0, 5);
 			}
 
@@ -95,60 +399,104 @@ public class GenerateWumpusLevels {
 			conf.setSampleChromosome(sampleChromosome);
 			conf.setPopulationSize(POPULATION_SIZE);
 
+			if (state != null) {
+				return new JgapPopulation(conf, options.getRows(),
+						options.getColumns(), state);
+			}
 			Genotype population = Genotype.randomInitialGenotype(conf);
-			IChromosome bestSolutionSoFar = population.getFittestChromosome();
-			System.out.printf("Fitness at 0: %3.3f\n", bestSolutionSoFar.getFitnessValue());
-
-			for (int i = 1; i <= NO_OF_GENERATION; i++) {
-				population.evolve();
-				
-				bestSolutionSoFar = population.getFittestChromosome();
-//				if (i % 10 == 0) {
-//					System.out.printf("Fitness at %d: %3.3f\n", i, bestSolutionSoFar.getFitnessValue());
-//				}
+			if (options.isPlayableOnly()) {
+				for (int ii = 0; ii < population.getPopulation().size(); ii++) {
+					LevelConstraints.repair(population.getPopulation()
+							.getChromosome(ii), conf.getRandomGenerator());
+				}
 			}
-			System.out.println("Final fitness is: "
-					+ bestSolutionSoFar.getFitnessValue());
-			WumpusSimulation.fitnessLogger.addValue(bestSolutionSoFar.getFitnessValue());
+			return new JgapPopulation(population, options.getRows(),
+					options.getColumns());
+		} catch (InvalidConfigurationException e) {
+			e.printStackTrace();
+		}
+		Configuration.reset(configurationId);
+		return null;
+	}
 
-			rawMap = convertChromosomeToLevel(bestSolutionSoFar);
+	// Evolves the population until a stopping limit is hit. A resumed
+	// population was reported and checkpointed at its generation before.
+	private static GeneratedLevel evolve(String difficulty,
+			EvolvingPopulation population,
+			WumpusFitnessFunction fitnessFunction,
+			StoppingPolicy stoppingPolicy, TelemetryRecorder telemetry,
+			CheckpointWriter checkpoints, GenerationOptions options,
+			long previousSimulations, boolean resumed) {
+		System.out.printf("Fitness at %d: %3.3f\n", population.getGeneration(),
+				population.getFittestValue());
 
-			// Print raw map
-			for (int ii = 0; ii < ROWS; ii++) {
-				logWriter.print("{");
-				for (int jj = 0; jj < COLUMNS; jj++) {
-					if (jj == COLUMNS - 1) {
-						logWriter.print(rawMap[ii][jj]);
-					} else
-					logWriter.print(rawMap[ii][jj] + ",");
-				}
-				logWriter.println("},");
-			}
+		StoppingPolicy.StopReason stopReason = resumed ? stoppingPolicy.check(
+				population.getGeneration(), population.getFittestValue(),
+				previousSimulations) : afterGeneration(stoppingPolicy,
+				telemetry, checkpoints, options, population, fitnessFunction,
+				previousSimulations);
 
-			long endTime = System.currentTimeMillis();
-			double duration = (endTime - startTime) / 1000.0;
-			WumpusSimulation.levelGenDurationLogger.addValue(duration);
-			logWriter.println("Level generation runtime is " + duration
-					+ " seconds");
+		while (stopReason == null) {
+			population.evolve();
+			stopReason = afterGeneration(stoppingPolicy, telemetry,
+					checkpoints, options, population, fitnessFunction,
+					previousSimulations);
+		}
 
-		} catch (InvalidConfigurationException e) {
-			e.printStackTrace();
+		return new GeneratedLevel(difficulty, population.getFittestLevel(),
+				population.getFittestValue(), population.getGeneration(),
+				stopReason);
+	}
+
+	// Reports the progress of a run, decides whether it goes on and
+	// checkpoints it every few generations and when it stops
+	private static StoppingPolicy.StopReason afterGeneration(
+			StoppingPolicy stoppingPolicy, TelemetryRecorder telemetry,
+			CheckpointWriter checkpoints, GenerationOptions options,
+			EvolvingPopulation population,
+			WumpusFitnessFunction fitnessFunction, long previousSimulations) {
+		if (telemetry != null) {
+			telemetry.record(population);
+		}
+		if (options.getProgressListener() != null) {
+			options.getProgressListener().generationEvolved(
+					population.getGeneration(), population.getFittestValue());
 		}
-		Configuration.reset();
-		return rawMap;
+		long simulations = previousSimulations
+				+ fitnessFunction.getSimulationCount();
+		StoppingPolicy.StopReason stopReason = stoppingPolicy.check(
+				population.getGeneration(), population.getFittestValue(),
+				simulations);
+
+		if (checkpoints != null
+				&& (stopReason != null || population.getGeneration()
+						% options.getCheckpointInterval() == 0)) {
+			checkpoints.write(population, simulations);
+		}
+		return stopReason;
 	}
 
 	public static int[][] convertChromosomeToLevel(IChromosome currentSolution) {
-		int[][] map = new int[ROWS][COLUMNS];
+		return convertChromosomeToLevel(currentSolution,
+				WumpusSimulation.ROWS, WumpusSimulation.COLUMNS);
+	}
+
+	/**
+	 * Converts a chromosome to the level it encodes, one row after another.
+	 *
+	 * @param currentSolution The chromosome, with rows * columns genes
+	 * @param rows Number of rows of the level
+	 * @param columns Number of columns of the level
+	 * @return The level, indexed by row and column
+	 */
+	public static int[][] convertChromosomeToLevel(IChromosome currentSolution,
+			int rows, int columns) {
+		int[][] map = new int[rows][columns];
 
 		// Convert to two dimensional array
-		for (int ii = 0; ii < ROWS * COLUMNS; ii++) {
-			int cellValue = (int) currentSolution.getGene(ii).getAllele();
-			if (ROWS * COLUMNS >= 100) {
-				map[ii / ROWS][ii % COLUMNS] = cellValue;
-			} else {
-				map[ii / 10][ii % 10] = cellValue;
-			}
+		for (int ii = 0; ii < rows * columns; ii++) {
+			map[ii / columns][ii % columns] = (int) currentSolution.getGene(ii)
+					.getAllele();
 		}
 		return map;
 	}
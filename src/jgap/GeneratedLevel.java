@@ -0,0 +1,78 @@
+package jgap;
+
+/**
+ * A level produced by a generation run, with the fitness it reached, the
+ * reason the run stopped and what the run cost.
+ *
+ */
+public class GeneratedLevel {
+
+	private final String difficulty;
+	private final int[][] level;
+	private final double fitness;
+	private final int generations;
+	private final StoppingPolicy.StopReason stopReason;
+	private final long simulations;
+	private final double runtime;
+
+	public GeneratedLevel(String difficulty, int[][] level, double fitness,
+			int generations, StoppingPolicy.StopReason stopReason) {
+		this(difficulty, level, fitness, generations, stopReason, 0, 0);
+	}
+
+	public GeneratedLevel(String difficulty, int[][] level, double fitness,
+			int generations, StoppingPolicy.StopReason stopReason,
+			long simulations, double runtime) {
+		this.difficulty = difficulty;
+		this.level = level;
+		this.fitness = fitness;
+		this.generations = generations;
+		this.stopReason = stopReason;
+		this.simulations = simulations;
+		this.runtime = runtime;
+	}
+
+	public String getDifficulty() {
+		return difficulty;
+	}
+
+	/**
+	 * @return The level, indexed by row and column
+	 */
+	public int[][] getLevel() {
+		return level;
+	}
+
+	public double getFitness() {
+		return fitness;
+	}
+
+	/**
+	 * @return The number of generations evolved after the initial one
+	 */
+	public int getGenerations() {
+		return generations;
+	}
+
+	/**
+	 * @return Why the run stopped, or null if it failed to start
+	 */
+	public StoppingPolicy.StopReason getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * @return The number of simulations the run needed, cache hits excluded
+	 */
+	public long getSimulations() {
+		return simulations;
+	}
+
+	/**
+	 * @return The wall-clock duration of the run, in seconds
+	 */
+	public double getRuntime() {
+		return runtime;
+	}
+
+}
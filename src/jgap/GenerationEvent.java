@@ -0,0 +1,49 @@
+package jgap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning one GenerateWumpusLevels.generate run.
+ *
+ */
+@Name("jgap.Generation")
+@Label("Level Generation")
+@Category({ "Wumpus", "Generation" })
+@Description("A GA run that generates one level")
+class GenerationEvent extends Event {
+
+	@Label("Difficulty")
+	String difficulty;
+
+	@Label("Engine")
+	String engine;
+
+	@Label("Seed")
+	long seed;
+
+	@Label("Rows")
+	int rows;
+
+	@Label("Columns")
+	int columns;
+
+	@Label("Islands")
+	int islands;
+
+	@Label("Generations")
+	int generations;
+
+	@Label("Final Fitness")
+	double finalFitness;
+
+	@Label("Simulations")
+	long simulations;
+
+	@Label("Stop Reason")
+	String stopReason;
+
+}
@@ -0,0 +1,16 @@
+package jgap;
+
+/**
+ * Receives the progress of a generation run. Called on the thread running
+ * the GA, after the initial population and after every generation.
+ *
+ */
+public interface GenerationListener {
+
+	/**
+	 * @param generation The number of generations evolved so far
+	 * @param bestFitness The best fitness so far
+	 */
+	void generationEvolved(int generation, double bestFitness);
+
+}
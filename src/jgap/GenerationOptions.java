@@ -0,0 +1,381 @@
+package jgap;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Settings of a single level generation run. The defaults give a JGAP run
+ * with a random seed, serial fitness evaluation, a fitness cache and
+ * operators that only produce playable levels.
+ *
+ */
+public class GenerationOptions {
+
+	/**
+	 * The genetic algorithm implementation that evolves the levels.
+	 */
+	public enum Engine {
+		// JGAP's Genotype with IntegerGene chromosomes
+		JGAP,
+		// NativeGeneticAlgorithm over a flat byte population
+		NATIVE
+	}
+
+	// Default number of genomes whose fitness is remembered during a run
+	public static final int DEFAULT_FITNESS_CACHE_SIZE = 4096;
+
+	// Default generations between migrations and migrants per neighbour of
+	// an island run
+	public static final int DEFAULT_MIGRATION_INTERVAL = 10;
+	public static final int DEFAULT_MIGRANT_COUNT = 2;
+
+	// Default number of generations between checkpoints
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
+
+	private Engine engine = Engine.JGAP;
+	private ExecutorService fitnessExecutor;
+	private EvaluationCoordinator coordinator;
+	private long seed = ThreadLocalRandom.current().nextLong();
+	private int fitnessCacheSize = DEFAULT_FITNESS_CACHE_SIZE;
+	private boolean playableOnly = true;
+
+	// Level size, see setGridSize
+	private int rows = WumpusSimulation.ROWS;
+	private int columns = WumpusSimulation.COLUMNS;
+
+	// Island model, see IslandModel. A single population by default.
+	private int islands = 1;
+	private ExecutorService islandExecutor;
+	private IslandModel.Topology topology = IslandModel.Topology.RING;
+	private int migrationInterval = DEFAULT_MIGRATION_INTERVAL;
+	private int migrantCount = DEFAULT_MIGRANT_COUNT;
+
+	// Stopping limits, see StoppingPolicy. Only the generation limit is set
+	// by default.
+	private int generations = GenerateWumpusLevels.NO_OF_GENERATION;
+	private int stagnationWindow;
+	private double fitnessThreshold = Double.POSITIVE_INFINITY;
+	private long timeBudgetMillis;
+	private long maxEvaluations;
+
+	private GenerationListener progressListener;
+	private TelemetrySink telemetrySink;
+	private BooleanSupplier cancellation;
+
+	// Checkpoints, see setCheckpoints. None by default.
+	private Path checkpointDirectory;
+	private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	public GenerationOptions() {
+	}
+
+	/**
+	 * Copies every setting of other, e.g. to give runs that share most of
+	 * their settings their own seeds.
+	 *
+	 * @param other The settings to copy
+	 */
+	public GenerationOptions(GenerationOptions other) {
+		engine = other.engine;
+		fitnessExecutor = other.fitnessExecutor;
+		coordinator = other.coordinator;
+		seed = other.seed;
+		fitnessCacheSize = other.fitnessCacheSize;
+		playableOnly = other.playableOnly;
+		rows = other.rows;
+		columns = other.columns;
+		islands = other.islands;
+		islandExecutor = other.islandExecutor;
+		topology = other.topology;
+		migrationInterval = other.migrationInterval;
+		migrantCount = other.migrantCount;
+		generations = other.generations;
+		stagnationWindow = other.stagnationWindow;
+		fitnessThreshold = other.fitnessThreshold;
+		timeBudgetMillis = other.timeBudgetMillis;
+		maxEvaluations = other.maxEvaluations;
+		progressListener = other.progressListener;
+		telemetrySink = other.telemetrySink;
+		cancellation = other.cancellation;
+		checkpointDirectory = other.checkpointDirectory;
+		checkpointInterval = other.checkpointInterval;
+	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	public ExecutorService getFitnessExecutor() {
+		return fitnessExecutor;
+	}
+
+	/**
+	 * @param fitnessExecutor Executor for fitness evaluations, or null to
+	 *                        evaluate them one after another
+	 */
+	public void setFitnessExecutor(ExecutorService fitnessExecutor) {
+		this.fitnessExecutor = fitnessExecutor;
+	}
+
+	public EvaluationCoordinator getCoordinator() {
+		return coordinator;
+	}
+
+	/**
+	 * @param coordinator Evaluation workers that run the simulations, or
+	 *                    null to simulate in this JVM. Takes precedence
+	 *                    over the fitness executor.
+	 */
+	public void setCoordinator(EvaluationCoordinator coordinator) {
+		this.coordinator = coordinator;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getFitnessCacheSize() {
+		return fitnessCacheSize;
+	}
+
+	/**
+	 * @param fitnessCacheSize Number of genomes whose fitness is remembered,
+	 *                         0 to disable caching
+	 */
+	public void setFitnessCacheSize(int fitnessCacheSize) {
+		this.fitnessCacheSize = fitnessCacheSize;
+	}
+
+	public boolean isPlayableOnly() {
+		return playableOnly;
+	}
+
+	/**
+	 * @param playableOnly Whether crossover and mutation keep exactly one
+	 *                     start and one Wumpus room in every level, see
+	 *                     LevelConstraints. Otherwise genes change freely
+	 *                     and unplayable levels get LevelScreen's penalty.
+	 */
+	public void setPlayableOnly(boolean playableOnly) {
+		this.playableOnly = playableOnly;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @param rows Number of rows of the generated level
+	 * @param columns Number of columns of the generated level. The level
+	 *                features of the fitness are scaled by cell count, so
+	 *                a larger level aims at the same densities of tunnels
+	 *                and pits as one of the default size.
+	 */
+	public void setGridSize(int rows, int columns) {
+		if (rows < 1 || columns < 1 || rows * columns < 2) {
+			throw new IllegalArgumentException(
+					"A level needs room for a start and a Wumpus, got "
+							+ rows + "x" + columns);
+		}
+		this.rows = rows;
+		this.columns = columns;
+	}
+
+	public int getIslands() {
+		return islands;
+	}
+
+	/**
+	 * @param islands Number of populations evolved side by side, each of
+	 *                the usual size and with its own seed. 1 for a single
+	 *                population without migration.
+	 */
+	public void setIslands(int islands) {
+		this.islands = islands;
+	}
+
+	public ExecutorService getIslandExecutor() {
+		return islandExecutor;
+	}
+
+	/**
+	 * @param islandExecutor Executor the islands evolve on, or null to
+	 *                       evolve them one after another. Should differ
+	 *                       from the fitness executor.
+	 */
+	public void setIslandExecutor(ExecutorService islandExecutor) {
+		this.islandExecutor = islandExecutor;
+	}
+
+	public IslandModel.Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @param topology Which islands receive the emigrants of an island
+	 */
+	public void setTopology(IslandModel.Topology topology) {
+		this.topology = topology;
+	}
+
+	public int getMigrationInterval() {
+		return migrationInterval;
+	}
+
+	/**
+	 * @param migrationInterval Number of generations between migrations
+	 */
+	public void setMigrationInterval(int migrationInterval) {
+		this.migrationInterval = migrationInterval;
+	}
+
+	public int getMigrantCount() {
+		return migrantCount;
+	}
+
+	/**
+	 * @param migrantCount Number of fittest individuals an island sends to
+	 *                     each neighbour when migrating
+	 */
+	public void setMigrantCount(int migrantCount) {
+		this.migrantCount = migrantCount;
+	}
+
+	public int getGenerations() {
+		return generations;
+	}
+
+	/**
+	 * @param generations Number of generations evolved after the initial
+	 *                    one, unless the run stops earlier
+	 */
+	public void setGenerations(int generations) {
+		this.generations = generations;
+	}
+
+	public int getStagnationWindow() {
+		return stagnationWindow;
+	}
+
+	/**
+	 * @param stagnationWindow Number of generations without improvement of
+	 *                         the best fitness after which the run stops, 0
+	 *                         for no limit
+	 */
+	public void setStagnationWindow(int stagnationWindow) {
+		this.stagnationWindow = stagnationWindow;
+	}
+
+	public double getFitnessThreshold() {
+		return fitnessThreshold;
+	}
+
+	/**
+	 * @param fitnessThreshold Best fitness at which the run stops,
+	 *                         Double.POSITIVE_INFINITY for no limit
+	 */
+	public void setFitnessThreshold(double fitnessThreshold) {
+		this.fitnessThreshold = fitnessThreshold;
+	}
+
+	public long getTimeBudgetMillis() {
+		return timeBudgetMillis;
+	}
+
+	/**
+	 * @param timeBudgetMillis Wall-clock time after which the run stops, 0
+	 *                         for no limit
+	 */
+	public void setTimeBudgetMillis(long timeBudgetMillis) {
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	public long getMaxEvaluations() {
+		return maxEvaluations;
+	}
+
+	/**
+	 * @param maxEvaluations Number of simulations after which the run
+	 *                       stops, 0 for no limit. Cache hits do not count.
+	 */
+	public void setMaxEvaluations(long maxEvaluations) {
+		this.maxEvaluations = maxEvaluations;
+	}
+
+	public GenerationListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * @param progressListener Called after every generation, or null
+	 */
+	public void setProgressListener(GenerationListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	public TelemetrySink getTelemetrySink() {
+		return telemetrySink;
+	}
+
+	/**
+	 * @param telemetrySink Receives a GenerationRecord after the initial
+	 *                      population and every generation, or null. It is
+	 *                      not closed by the run.
+	 */
+	public void setTelemetrySink(TelemetrySink telemetrySink) {
+		this.telemetrySink = telemetrySink;
+	}
+
+	public BooleanSupplier getCancellation() {
+		return cancellation;
+	}
+
+	/**
+	 * @param cancellation Checked after every generation. The run stops with
+	 *                     the best level so far once it returns true. Null
+	 *                     if the run cannot be cancelled.
+	 */
+	public void setCancellation(BooleanSupplier cancellation) {
+		this.cancellation = cancellation;
+	}
+
+	public Path getCheckpointDirectory() {
+		return checkpointDirectory;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * @param directory Where the run writes its Checkpoint, named by
+	 *                  Checkpoint.fileName, or null for no checkpoints. It
+	 *                  must exist.
+	 * @param interval Number of generations between checkpoints. The
+	 *                 initial generation and the last one are always
+	 *                 checkpointed.
+	 */
+	public void setCheckpoints(Path directory, int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException(
+					"Checkpoint interval must be positive, got " + interval);
+		}
+		this.checkpointDirectory = directory;
+		this.checkpointInterval = interval;
+	}
+
+}
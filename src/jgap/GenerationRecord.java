@@ -0,0 +1,112 @@
+package jgap;
+
+/**
+ * Telemetry of one generation of a run, see TelemetrySink. Generation 0 is
+ * the initial population, and its breeding time is the time taken to set
+ * up the population. Counts and times cover this generation only.
+ *
+ */
+public final class GenerationRecord {
+
+	private final String difficulty;
+	private final long seed;
+	private final int generation;
+	private final double bestFitness;
+	private final double meanFitness;
+	private final double fitnessStdev;
+	private final long evaluations;
+	private final long simulations;
+	private final double durationMillis;
+	private final double evaluationMillis;
+	private final double cacheHitRate;
+
+	/**
+	 * @param difficulty The difficulty of the run
+	 * @param seed The seed of the run
+	 * @param generation Number of generations evolved so far
+	 * @param bestFitness Best fitness so far
+	 * @param meanFitness Mean fitness of the current generation
+	 * @param fitnessStdev Standard deviation of the fitness of the current
+	 *                     generation
+	 * @param evaluations Number of levels evaluated, cache hits included
+	 * @param simulations Number of simulations run
+	 * @param durationMillis Wall time of the generation
+	 * @param evaluationMillis Part of the wall time spent evaluating
+	 * @param cacheHitRate Share of cache lookups that hit, NaN without a
+	 *                     cache
+	 */
+	public GenerationRecord(String difficulty, long seed, int generation,
+			double bestFitness, double meanFitness, double fitnessStdev,
+			long evaluations, long simulations, double durationMillis,
+			double evaluationMillis, double cacheHitRate) {
+		this.difficulty = difficulty;
+		this.seed = seed;
+		this.generation = generation;
+		this.bestFitness = bestFitness;
+		this.meanFitness = meanFitness;
+		this.fitnessStdev = fitnessStdev;
+		this.evaluations = evaluations;
+		this.simulations = simulations;
+		this.durationMillis = durationMillis;
+		this.evaluationMillis = evaluationMillis;
+		this.cacheHitRate = cacheHitRate;
+	}
+
+	public String getDifficulty() {
+		return difficulty;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+	public double getMeanFitness() {
+		return meanFitness;
+	}
+
+	public double getFitnessStdev() {
+		return fitnessStdev;
+	}
+
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	public long getSimulations() {
+		return simulations;
+	}
+
+	// Levels evaluated per second of the generation's wall time
+	public double getEvaluationsPerSecond() {
+		return durationMillis == 0 ? 0 : evaluations * 1000 / durationMillis;
+	}
+
+	public double getDurationMillis() {
+		return durationMillis;
+	}
+
+	// Wall time during which at least one level was being evaluated:
+	// screened, looked up in the cache or simulated
+	public double getEvaluationMillis() {
+		return evaluationMillis;
+	}
+
+	// The rest of the wall time: selection, crossover, mutation and the
+	// engine's own bookkeeping
+	public double getBreedingMillis() {
+		return Math.max(0, durationMillis - evaluationMillis);
+	}
+
+	public double getCacheHitRate() {
+		return cacheHitRate;
+	}
+
+}
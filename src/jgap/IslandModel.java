@@ -0,0 +1,222 @@
+package jgap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Several populations, the islands, that evolve side by side and exchange
+ * their fittest individuals every few generations. Small populations that
+ * only occasionally mix keep more diversity than one large population, and
+ * each island can evolve on its own thread.
+ *
+ * Islands evolve in lockstep: every generation of the model is one
+ * generation of each island, and migration happens between generations.
+ * Emigrants are chosen from all islands before any island takes in
+ * migrants, so a run is reproducible however the islands are scheduled.
+ *
+ */
+public class IslandModel implements EvolvingPopulation {
+
+	/**
+	 * Which islands the emigrants of an island go to.
+	 */
+	public enum Topology {
+		// Island i sends to island i + 1, the last one to the first
+		RING,
+		// Every island sends to every other island
+		FULLY_CONNECTED
+	}
+
+	private final List<EvolvingPopulation> islands;
+	private final Topology topology;
+	private final int migrationInterval;
+	private final int migrantCount;
+	private final ExecutorService executor;
+
+	private int generation;
+
+	/**
+	 * @param islands The populations, each with its own configuration and
+	 *                seed. Restored islands must all be at the same
+	 *                generation, which the model continues from.
+	 * @param topology Where emigrants go
+	 * @param migrationInterval Number of generations between migrations
+	 * @param migrantCount Number of fittest individuals an island sends to
+	 *                     each of its neighbours
+	 * @param executor Executor the islands evolve on, or null to evolve
+	 *                 them one after another. It should not be the fitness
+	 *                 executor of the islands, whose tasks would otherwise
+	 *                 wait behind the islands waiting for them.
+	 */
+	public IslandModel(List<EvolvingPopulation> islands, Topology topology,
+			int migrationInterval, int migrantCount, ExecutorService executor) {
+		if (islands.isEmpty() || migrationInterval < 1 || migrantCount < 0) {
+			throw new IllegalArgumentException(
+					"An island model needs islands, a positive migration interval and a migrant count of at least 0");
+		}
+		this.islands = new ArrayList<EvolvingPopulation>(islands);
+		this.topology = topology;
+		this.migrationInterval = migrationInterval;
+		this.migrantCount = migrantCount;
+		this.executor = executor;
+		this.generation = islands.get(0).getGeneration();
+	}
+
+	@Override
+	public void evolve() {
+		if (executor == null) {
+			for (EvolvingPopulation island : islands) {
+				island.evolve();
+			}
+		} else {
+			List<Callable<Void>> generations = new ArrayList<Callable<Void>>();
+			for (EvolvingPopulation island : islands) {
+				generations.add(() -> {
+					island.evolve();
+					return null;
+				});
+			}
+			try {
+				for (Future<Void> evolved : executor.invokeAll(generations)) {
+					evolved.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Island evolution interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Island evolution failed",
+						e.getCause());
+			}
+		}
+
+		generation++;
+		if (generation % migrationInterval == 0) {
+			migrate();
+		}
+	}
+
+	// Sends the fittest individuals of every island to its neighbours
+	private void migrate() {
+		int count = islands.size();
+		if (count < 2 || migrantCount == 0) {
+			return;
+		}
+
+		List<List<Migrant>> arrivals = new ArrayList<List<Migrant>>(count);
+		for (int ii = 0; ii < count; ii++) {
+			arrivals.add(new ArrayList<Migrant>());
+		}
+		for (int ii = 0; ii < count; ii++) {
+			List<Migrant> emigrants = islands.get(ii).emigrants(migrantCount);
+			if (topology == Topology.RING) {
+				arrivals.get((ii + 1) % count).addAll(emigrants);
+			} else {
+				for (int jj = 0; jj < count; jj++) {
+					if (jj != ii) {
+						arrivals.get(jj).addAll(emigrants);
+					}
+				}
+			}
+		}
+
+		for (int ii = 0; ii < count; ii++) {
+			islands.get(ii).immigrate(arrivals.get(ii));
+		}
+	}
+
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public double getFittestValue() {
+		return fittestIsland().getFittestValue();
+	}
+
+	@Override
+	public int[][] getFittestLevel() {
+		return fittestIsland().getFittestLevel();
+	}
+
+	// The individuals of all islands
+	@Override
+	public double[] getFitnessValues() {
+		double[][] values = new double[islands.size()][];
+		int count = 0;
+		for (int ii = 0; ii < islands.size(); ii++) {
+			values[ii] = islands.get(ii).getFitnessValues();
+			count += values[ii].length;
+		}
+
+		double[] all = new double[count];
+		int offset = 0;
+		for (double[] island : values) {
+			System.arraycopy(island, 0, all, offset, island.length);
+			offset += island.length;
+		}
+		return all;
+	}
+
+	// The island with the best level so far, the first one on ties
+	private EvolvingPopulation fittestIsland() {
+		EvolvingPopulation fittest = islands.get(0);
+		for (EvolvingPopulation island : islands) {
+			if (island.getFittestValue() > fittest.getFittestValue()) {
+				fittest = island;
+			}
+		}
+		return fittest;
+	}
+
+	// The fittest individuals across all islands
+	@Override
+	public List<Migrant> emigrants(int count) {
+		List<Migrant> candidates = new ArrayList<Migrant>();
+		for (EvolvingPopulation island : islands) {
+			candidates.addAll(island.emigrants(count));
+		}
+		Collections.sort(candidates, Comparator.comparingDouble(
+				Migrant::getFitness).reversed());
+		return new ArrayList<Migrant>(candidates.subList(0,
+				Math.min(count, candidates.size())));
+	}
+
+	@Override
+	public List<PopulationState> checkpoint() {
+		List<PopulationState> states = new ArrayList<PopulationState>();
+		for (EvolvingPopulation island : islands) {
+			states.addAll(island.checkpoint());
+		}
+		return states;
+	}
+
+	// Deals the migrants out over the islands in turn
+	@Override
+	public void immigrate(List<Migrant> migrants) {
+		List<List<Migrant>> arrivals = new ArrayList<List<Migrant>>();
+		for (int ii = 0; ii < islands.size(); ii++) {
+			arrivals.add(new ArrayList<Migrant>());
+		}
+		for (int ii = 0; ii < migrants.size(); ii++) {
+			arrivals.get(ii % islands.size()).add(migrants.get(ii));
+		}
+		for (int ii = 0; ii < islands.size(); ii++) {
+			islands.get(ii).immigrate(arrivals.get(ii));
+		}
+	}
+
+	@Override
+	public void close() {
+		for (EvolvingPopulation island : islands) {
+			island.close();
+		}
+	}
+
+}
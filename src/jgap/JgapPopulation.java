@@ -0,0 +1,218 @@
+package jgap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jgap.Chromosome;
+import org.jgap.Configuration;
+import org.jgap.FitnessFunction;
+import org.jgap.Gene;
+import org.jgap.Genotype;
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+import org.jgap.impl.StockRandomGenerator;
+
+/**
+ * A JGAP Genotype evolved one generation at a time. JGAP's fittest
+ * chromosome can be lost between generations, so the best level so far is
+ * kept separately.
+ *
+ */
+public class JgapPopulation implements EvolvingPopulation {
+
+	private final Configuration conf;
+	private Genotype genotype;
+	private final int rows;
+	private final int columns;
+
+	private int[][] bestLevel;
+	private double bestFitness;
+	private int generation;
+
+	/**
+	 * Evaluates the initial population of the genotype.
+	 *
+	 * @param genotype The initial population. Its configuration belongs to
+	 *                 this population and is reset on close.
+	 * @param rows Number of rows of a level
+	 * @param columns Number of columns of a level
+	 */
+	public JgapPopulation(Genotype genotype, int rows, int columns) {
+		this.genotype = genotype;
+		this.conf = genotype.getConfiguration();
+		this.rows = rows;
+		this.columns = columns;
+
+		if (conf.getBreeder() instanceof ParallelBreeder) {
+			((ParallelBreeder) conf.getBreeder()).evaluate(
+					genotype.getPopulation(), conf);
+		} else if (conf.getBreeder() instanceof BatchBreeder) {
+			((BatchBreeder) conf.getBreeder()).evaluate(
+					genotype.getPopulation(), conf);
+		}
+		IChromosome fittest = genotype.getFittestChromosome();
+		bestLevel = toLevel(fittest);
+		bestFitness = fittest.getFitnessValue();
+	}
+
+	/**
+	 * Restores a population from a checkpoint. Chromosomes that had not
+	 * been evaluated are evaluated by the next generation.
+	 *
+	 * @param conf The configuration of the restored run, with its sample
+	 *             chromosome and a StockRandomGenerator. It belongs to this
+	 *             population and is reset on close.
+	 * @param rows Number of rows of a level
+	 * @param columns Number of columns of a level
+	 * @param state The population, as taken by {@link #checkpoint()}
+	 * @throws InvalidConfigurationException If JGAP rejects the population
+	 */
+	public JgapPopulation(Configuration conf, int rows, int columns,
+			PopulationState state) throws InvalidConfigurationException {
+		this.conf = conf;
+		this.rows = rows;
+		this.columns = columns;
+
+		IChromosome[] chromosomes = new IChromosome[state.getSize()];
+		for (int ii = 0; ii < chromosomes.length; ii++) {
+			chromosomes[ii] = toChromosome(FitnessCache.unpack(
+					state.getGenome(ii), rows, columns), state.getFitness(ii));
+		}
+		((StockRandomGenerator) conf.getRandomGenerator()).setSeed(state
+				.getRandomSeed());
+		genotype = new Genotype(conf, new Population(conf, chromosomes));
+
+		bestLevel = FitnessCache.unpack(state.getBestGenome(), rows, columns);
+		bestFitness = state.getBestFitness();
+		generation = state.getGeneration();
+	}
+
+	@Override
+	public void evolve() {
+		genotype.evolve();
+		generation++;
+		keepIfBest(genotype.getFittestChromosome());
+	}
+
+	private void keepIfBest(IChromosome chromosome) {
+		if (chromosome.getFitnessValue() > bestFitness) {
+			bestLevel = toLevel(chromosome);
+			bestFitness = chromosome.getFitnessValue();
+		}
+	}
+
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public double getFittestValue() {
+		return bestFitness;
+	}
+
+	@Override
+	public int[][] getFittestLevel() {
+		return bestLevel;
+	}
+
+	// Chromosomes JGAP has not evaluated yet are left out, so that this
+	// never runs a simulation
+	@Override
+	public double[] getFitnessValues() {
+		Population population = genotype.getPopulation();
+		double[] values = new double[population.size()];
+		int count = 0;
+		for (int ii = 0; ii < population.size(); ii++) {
+			double value = population.getChromosome(ii)
+					.getFitnessValueDirectly();
+			if (value != FitnessFunction.NO_FITNESS_VALUE) {
+				values[count++] = value;
+			}
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	@Override
+	public List<Migrant> emigrants(int count) {
+		List<Migrant> migrants = new ArrayList<Migrant>(count);
+		for (Object fittest : genotype.getPopulation()
+				.determineFittestChromosomes(count)) {
+			IChromosome chromosome = (IChromosome) fittest;
+			migrants.add(new Migrant(toLevel(chromosome), chromosome
+					.getFitnessValue()));
+		}
+		return migrants;
+	}
+
+	@Override
+	public void immigrate(List<Migrant> migrants) {
+		Population population = genotype.getPopulation();
+		int count = Math.min(migrants.size(), population.size() - 1);
+		if (count <= 0) {
+			return;
+		}
+
+		// Fittest first, so the least fit are at the end
+		population.sortByFitness();
+		for (int ii = 0; ii < count; ii++) {
+			IChromosome immigrant = toChromosome(migrants.get(ii).getLevel(),
+					migrants.get(ii).getFitness());
+			population.setChromosome(population.size() - 1 - ii, immigrant);
+			keepIfBest(immigrant);
+		}
+	}
+
+	private int[][] toLevel(IChromosome chromosome) {
+		return GenerateWumpusLevels.convertChromosomeToLevel(chromosome, rows,
+				columns);
+	}
+
+	// Builds a chromosome of this configuration holding the level
+	private IChromosome toChromosome(int[][] level, double fitness) {
+		IChromosome sample = conf.getSampleChromosome();
+
+		Gene[] genes = new Gene[sample.size()];
+		for (int ii = 0; ii < genes.length; ii++) {
+			genes[ii] = sample.getGene(ii).newGene();
+			genes[ii].setAllele(Integer.valueOf(level[ii / columns][ii % columns]));
+		}
+
+		try {
+			IChromosome chromosome = new Chromosome(conf, genes);
+			chromosome.setFitnessValueDirectly(fitness);
+			return chromosome;
+		} catch (InvalidConfigurationException e) {
+			throw new IllegalStateException("Cannot build a chromosome", e);
+		}
+	}
+
+	@Override
+	public List<PopulationState> checkpoint() {
+		Population population = genotype.getPopulation();
+		long[][] genomes = new long[population.size()][];
+		double[] fitness = new double[population.size()];
+		for (int ii = 0; ii < population.size(); ii++) {
+			IChromosome chromosome = population.getChromosome(ii);
+			genomes[ii] = FitnessCache.pack(toLevel(chromosome));
+			fitness[ii] = chromosome.getFitnessValueDirectly();
+		}
+
+		StockRandomGenerator random = (StockRandomGenerator) conf
+				.getRandomGenerator();
+		long randomSeed = random.nextLong();
+		random.setSeed(randomSeed);
+		return Collections.singletonList(new PopulationState(generation,
+				genomes, fitness, randomSeed, FitnessCache.pack(bestLevel),
+				bestFitness));
+	}
+
+	@Override
+	public void close() {
+		Configuration.reset(conf.getId());
+	}
+
+}
@@ -0,0 +1,91 @@
+package jgap;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every GenerationRecord as one JSON object per line. Values that
+ * are not numbers, such as the cache hit rate of a run without a cache,
+ * are written as null. Every line is flushed, so a run can be followed
+ * while it goes on.
+ *
+ */
+public class JsonLinesTelemetrySink implements TelemetrySink {
+
+	private final BufferedWriter writer;
+
+	/**
+	 * @param file The file to write, replaced if it exists
+	 * @throws IOException If the file cannot be created
+	 */
+	public JsonLinesTelemetrySink(Path file) throws IOException {
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @throws UncheckedIOException If the record cannot be written
+	 */
+	@Override
+	public synchronized void record(GenerationRecord record) {
+		StringBuilder line = new StringBuilder(320);
+		line.append("{\"difficulty\":");
+		appendString(line, record.getDifficulty());
+		line.append(",\"seed\":").append(record.getSeed());
+		line.append(",\"generation\":").append(record.getGeneration());
+		appendNumber(line, "bestFitness", record.getBestFitness());
+		appendNumber(line, "meanFitness", record.getMeanFitness());
+		appendNumber(line, "fitnessStdev", record.getFitnessStdev());
+		line.append(",\"evaluations\":").append(record.getEvaluations());
+		line.append(",\"simulations\":").append(record.getSimulations());
+		appendNumber(line, "evaluationsPerSecond",
+				record.getEvaluationsPerSecond());
+		appendNumber(line, "durationMillis", record.getDurationMillis());
+		appendNumber(line, "evaluationMillis", record.getEvaluationMillis());
+		appendNumber(line, "breedingMillis", record.getBreedingMillis());
+		appendNumber(line, "cacheHitRate", record.getCacheHitRate());
+		line.append('}');
+
+		try {
+			writer.write(line.toString());
+			writer.newLine();
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void appendNumber(StringBuilder line, String name,
+			double value) {
+		line.append(",\"").append(name).append("\":");
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			line.append("null");
+		} else {
+			line.append(value);
+		}
+	}
+
+	private static void appendString(StringBuilder line, String value) {
+		line.append('"');
+		for (int ii = 0; ii < value.length(); ii++) {
+			char c = value.charAt(ii);
+			if (c == '"' || c == '\\') {
+				line.append('\\').append(c);
+			} else if (c < 0x20) {
+				line.append(String.format("\\u%04x", (int) c));
+			} else {
+				line.append(c);
+			}
+		}
+		line.append('"');
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,299 @@
+package jgap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only view of a level archive, memory-mapped so that levels are read
+ * without parsing. Opening the archive indexes the levels by difficulty and
+ * fitness, reading only the record headers.
+ *
+ * The file starts with a 12 byte header: the magic number "WLVA", the
+ * format version, rows, columns and the record size, the last four as
+ * shorts. Fixed-size records follow, one per level:
+ * - difficulty, US-ASCII padded with zeros to 16 bytes
+ * - fitness, a double
+ * - numbers of tunnels, empty rooms, pits, Wumpus rooms and start rooms,
+ *   as shorts, as LevelFeatures counts them. Levels therefore have at
+ *   most MAX_CELLS cells.
+ * - the cells at 3 bits each in row-major order, packed into longs as
+ *   FitnessCache.pack does
+ * All values are big-endian. Records are only ever appended. A partly
+ * written last record is ignored here and dropped by the next writer.
+ *
+ */
+public class LevelArchive implements Closeable {
+
+	static final int MAGIC = 0x574C5641;
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 12;
+
+	// Record layout
+	static final int DIFFICULTY_LENGTH = 16;
+	static final int FITNESS_OFFSET = DIFFICULTY_LENGTH;
+	static final int COUNTS_OFFSET = FITNESS_OFFSET + 8;
+	static final int COUNTS = 5;
+	static final int CELLS_OFFSET = 40;
+
+	// Largest level, in cells, whose counts fit the record's shorts
+	static final int MAX_CELLS = Short.MAX_VALUE;
+
+	// Indices of the cell type counts
+	static final int TUNNELS = 0;
+	static final int ROOMS = 1;
+	static final int PITS = 2;
+	static final int WUMPUS = 3;
+	static final int START = 4;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int rows;
+	private final int columns;
+	private final int recordSize;
+	private final int size;
+
+	// Records of each difficulty sorted by fitness, and their fitness
+	private final Map<String, int[]> recordsByDifficulty = new HashMap<String, int[]>();
+	private final Map<String, double[]> fitnessByDifficulty = new HashMap<String, double[]>();
+
+	/**
+	 * Maps an archive and indexes its levels.
+	 *
+	 * @param file The archive file
+	 * @throws IOException If the file cannot be read or is not an archive
+	 */
+	public LevelArchive(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = readHeader(channel, -1, -1);
+			this.rows = header.getShort(6);
+			this.columns = header.getShort(8);
+			this.recordSize = header.getShort(10);
+
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Archive too large to map: " + file);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			// A partly written last record is ignored
+			this.size = (int) ((length - HEADER_SIZE) / recordSize);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		buildIndex();
+	}
+
+	private void buildIndex() {
+		Map<String, List<Integer>> records = new HashMap<String, List<Integer>>();
+		for (int record = 0; record < size; record++) {
+			String difficulty = getDifficulty(record);
+			List<Integer> ofDifficulty = records.get(difficulty);
+			if (ofDifficulty == null) {
+				ofDifficulty = new ArrayList<Integer>();
+				records.put(difficulty, ofDifficulty);
+			}
+			ofDifficulty.add(record);
+		}
+
+		for (Map.Entry<String, List<Integer>> entry : records.entrySet()) {
+			List<Integer> ofDifficulty = entry.getValue();
+			Collections.sort(ofDifficulty,
+					(first, second) -> Double.compare(getFitness(first),
+							getFitness(second)));
+
+			int[] sorted = new int[ofDifficulty.size()];
+			double[] fitness = new double[sorted.length];
+			for (int ii = 0; ii < sorted.length; ii++) {
+				sorted[ii] = ofDifficulty.get(ii);
+				fitness[ii] = getFitness(sorted[ii]);
+			}
+			recordsByDifficulty.put(entry.getKey(), sorted);
+			fitnessByDifficulty.put(entry.getKey(), fitness);
+		}
+	}
+
+	// Reads and checks the header, including that the record size is the
+	// one of the level size. Rows and columns of -1 match any size.
+	static ByteBuffer readHeader(FileChannel channel, int rows, int columns)
+			throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Truncated level archive header");
+			}
+		}
+
+		if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+			throw new IOException("Not a level archive of version " + VERSION);
+		}
+		int headerRows = header.getShort(6);
+		int headerColumns = header.getShort(8);
+		if (headerRows < 1 || headerColumns < 1
+				|| headerRows * headerColumns > MAX_CELLS
+				|| header.getShort(10) != recordSize(headerRows * headerColumns)) {
+			throw new IOException("Malformed level archive header: "
+					+ headerRows + "x" + headerColumns + " levels, records of "
+					+ header.getShort(10) + " bytes");
+		}
+		if (rows != -1 && (headerRows != rows || headerColumns != columns)) {
+			throw new IOException("Archive holds " + header.getShort(6) + "x"
+					+ header.getShort(8) + " levels, not " + rows + "x"
+					+ columns);
+		}
+		return header;
+	}
+
+	static long recordSize(long cells) {
+		long words = (cells * FitnessCache.BITS_PER_GENE + 63) / 64;
+		return CELLS_OFFSET + words * 8;
+	}
+
+	private int offset(int record) {
+		return HEADER_SIZE + record * recordSize;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public Set<String> getDifficulties() {
+		return Collections.unmodifiableSet(recordsByDifficulty.keySet());
+	}
+
+	public String getDifficulty(int record) {
+		int offset = offset(record);
+		int length = 0;
+		while (length < DIFFICULTY_LENGTH && buffer.get(offset + length) != 0) {
+			length++;
+		}
+
+		byte[] difficulty = new byte[length];
+		for (int ii = 0; ii < length; ii++) {
+			difficulty[ii] = buffer.get(offset + ii);
+		}
+		return new String(difficulty, StandardCharsets.US_ASCII);
+	}
+
+	public double getFitness(int record) {
+		return buffer.getDouble(offset(record) + FITNESS_OFFSET);
+	}
+
+	/**
+	 * @param record The record number
+	 * @return The map elements of the level: number of tunnels, room to
+	 *         tunnel ratio, number of pits, Wumpus rooms and start rooms
+	 */
+	public double[] getMapElements(int record) {
+		int offset = offset(record) + COUNTS_OFFSET;
+		double tunnels = buffer.getShort(offset + TUNNELS * 2);
+		double rooms = buffer.getShort(offset + ROOMS * 2);
+
+		return new double[] { tunnels, rooms / tunnels,
+				buffer.getShort(offset + PITS * 2),
+				buffer.getShort(offset + WUMPUS * 2),
+				buffer.getShort(offset + START * 2) };
+	}
+
+	/**
+	 * @param record The record number
+	 * @return The level, indexed by row and column
+	 */
+	public int[][] getLevel(int record) {
+		int offset = offset(record) + CELLS_OFFSET;
+		int[][] level = new int[rows][columns];
+
+		for (int ii = 0; ii < rows * columns; ii++) {
+			int bit = ii * FitnessCache.BITS_PER_GENE;
+			int shift = bit & 63;
+			long value = buffer.getLong(offset + (bit >>> 6) * 8) >>> shift;
+			// The cell straddles two words
+			if (shift > 64 - FitnessCache.BITS_PER_GENE) {
+				value |= buffer.getLong(offset + ((bit >>> 6) + 1) * 8) << (64 - shift);
+			}
+			level[ii / columns][ii % columns] = (int) (value & 7);
+		}
+		return level;
+	}
+
+	public GeneratedLevel getGeneratedLevel(int record) {
+		return new GeneratedLevel(getDifficulty(record), getLevel(record),
+				getFitness(record), 0, null);
+	}
+
+	/**
+	 * Looks up the levels of a difficulty within a fitness range.
+	 *
+	 * @param difficulty The difficulty of the levels
+	 * @param minFitness The lowest fitness, inclusive
+	 * @param maxFitness The highest fitness, inclusive
+	 * @return The record numbers of the matching levels, from the lowest to
+	 *         the highest fitness
+	 */
+	public int[] find(String difficulty, double minFitness, double maxFitness) {
+		int[] records = recordsByDifficulty.get(difficulty);
+		if (records == null) {
+			return new int[0];
+		}
+
+		double[] fitness = fitnessByDifficulty.get(difficulty);
+		int from = lowerBound(fitness, minFitness, false);
+		int to = lowerBound(fitness, maxFitness, true);
+		int[] found = new int[Math.max(0, to - from)];
+		System.arraycopy(records, from, found, 0, found.length);
+		return found;
+	}
+
+	/**
+	 * @param difficulty The difficulty of the levels
+	 * @return The number of levels of that difficulty
+	 */
+	public int count(String difficulty) {
+		int[] records = recordsByDifficulty.get(difficulty);
+		return records == null ? 0 : records.length;
+	}
+
+	// First index whose fitness is not below the value, or is above it when
+	// inclusive
+	private static int lowerBound(double[] fitness, double value,
+			boolean inclusive) {
+		int low = 0;
+		int high = fitness.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (fitness[middle] < value || inclusive && fitness[middle] == value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
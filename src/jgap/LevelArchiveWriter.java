@@ -0,0 +1,143 @@
+package jgap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends generated levels to a level archive. See LevelArchive for the
+ * file format. Safe to share between threads.
+ *
+ */
+public class LevelArchiveWriter implements Closeable {
+
+	private final FileChannel channel;
+	private final int rows;
+	private final int columns;
+	private final ByteBuffer record;
+
+	// Counts the cells of the level being appended
+	private final LevelFeatures features = new LevelFeatures();
+
+	/**
+	 * Opens an archive for appending, creating it if it does not exist.
+	 *
+	 * @param file The archive file
+	 * @param rows Rows in a level
+	 * @param columns Columns in a level
+	 * @throws IOException If the file cannot be opened, or holds levels of
+	 *                     another size
+	 * @throws IllegalArgumentException If the levels have more cells than
+	 *                                  the counts of a record can hold
+	 */
+	public LevelArchiveWriter(Path file, int rows, int columns)
+			throws IOException {
+		// The record stores the cell counts as shorts, which also bounds
+		// the sizes in the header
+		if (rows < 1 || columns < 1
+				|| (long) rows * columns > LevelArchive.MAX_CELLS) {
+			throw new IllegalArgumentException("Cannot archive " + rows + "x"
+					+ columns + " levels, at most " + LevelArchive.MAX_CELLS
+					+ " cells fit");
+		}
+		long recordSize = LevelArchive.recordSize(rows * columns);
+
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.rows = rows;
+		this.columns = columns;
+		this.record = ByteBuffer.allocate((int) recordSize);
+
+		try {
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(LevelArchive.HEADER_SIZE);
+				header.putInt(LevelArchive.MAGIC);
+				header.putShort(LevelArchive.VERSION);
+				header.putShort((short) rows);
+				header.putShort((short) columns);
+				header.putShort((short) record.capacity());
+				header.flip();
+				channel.write(header, 0);
+			} else {
+				LevelArchive.readHeader(channel, rows, columns);
+			}
+
+			// Drop a partly written last record, left by a run that died
+			// while appending, so that new records stay aligned
+			long records = (channel.size() - LevelArchive.HEADER_SIZE)
+					/ recordSize;
+			long end = LevelArchive.HEADER_SIZE + records * recordSize;
+			if (channel.size() > end) {
+				channel.truncate(end);
+			}
+			channel.position(end);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends a level with its difficulty, fitness and map elements.
+	 *
+	 * @param level The level to store
+	 * @throws IOException If the record cannot be written
+	 */
+	public synchronized void append(GeneratedLevel level) throws IOException {
+		byte[] difficulty = level.getDifficulty().getBytes(
+				StandardCharsets.US_ASCII);
+		if (difficulty.length > LevelArchive.DIFFICULTY_LENGTH) {
+			throw new IllegalArgumentException("Difficulty name too long: "
+					+ level.getDifficulty());
+		}
+
+		int[][] map = level.getLevel();
+		if (map.length != rows || map[0].length != columns) {
+			throw new IllegalArgumentException("Expected a " + rows + "x"
+					+ columns + " level, got " + map.length + "x"
+					+ map[0].length);
+		}
+		features.extract(map);
+		short[] counts = new short[LevelArchive.COUNTS];
+		counts[LevelArchive.TUNNELS] = (short) features.getTunnels();
+		counts[LevelArchive.ROOMS] = (short) features.getRooms();
+		counts[LevelArchive.PITS] = (short) features.getPits();
+		counts[LevelArchive.WUMPUS] = (short) features.getWumpus();
+		counts[LevelArchive.START] = (short) features.getStarts();
+
+		// Zero the padding left over from the previous record
+		Arrays.fill(record.array(), (byte) 0);
+		record.clear();
+		record.put(difficulty);
+		record.position(LevelArchive.FITNESS_OFFSET);
+		record.putDouble(level.getFitness());
+		for (short count : counts) {
+			record.putShort(count);
+		}
+		record.position(LevelArchive.CELLS_OFFSET);
+		for (long word : FitnessCache.pack(map)) {
+			record.putLong(word);
+		}
+		record.flip();
+
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+	}
+
+	// Forces the appended levels to disk
+	public synchronized void flush() throws IOException {
+		channel.force(false);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+}
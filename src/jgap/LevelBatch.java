@@ -0,0 +1,145 @@
+package jgap;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Generates a pack of levels by running many independent GAs at once, each
+ * with its own configuration and random seed.
+ *
+ */
+public class LevelBatch {
+
+	/**
+	 * Generates the levels of a difficulty mix on the given executor.
+	 *
+	 * @param logWriter Where the levels and their generation runtimes are
+	 *                  logged
+	 * @param difficultyMix Number of levels to generate per difficulty
+	 * @param seed Seed from which the seed of every run is derived
+	 * @param executor Executor the GA runs are spread over
+	 * @return The levels with their fitness, grouped by difficulty in the
+	 *         iteration order of difficultyMix
+	 */
+	public static List<GeneratedLevel> generate(PrintWriter logWriter,
+			Map<String, Integer> difficultyMix, long seed,
+			ExecutorService executor) {
+		return generate(logWriter, difficultyMix, seed, executor,
+				new GenerationOptions());
+	}
+
+	/**
+	 * Generates the levels of a difficulty mix on the given executor,
+	 * running their simulations on evaluation workers.
+	 *
+	 * @param logWriter Where the levels and their generation runtimes are
+	 *                  logged
+	 * @param difficultyMix Number of levels to generate per difficulty
+	 * @param seed Seed from which the seed of every run is derived
+	 * @param executor Executor the GA runs are spread over
+	 * @param coordinator Evaluation workers shared by all runs, or null to
+	 *                    simulate on the executor's threads
+	 * @return The levels with their fitness, grouped by difficulty in the
+	 *         iteration order of difficultyMix
+	 */
+	public static List<GeneratedLevel> generate(PrintWriter logWriter,
+			Map<String, Integer> difficultyMix, long seed,
+			ExecutorService executor, EvaluationCoordinator coordinator) {
+		return generate(logWriter, difficultyMix, seed, executor, coordinator,
+				WumpusSimulation.ROWS, WumpusSimulation.COLUMNS);
+	}
+
+	/**
+	 * Generates the levels of a difficulty mix with the given size.
+	 *
+	 * @param logWriter Where the levels and their generation runtimes are
+	 *                  logged
+	 * @param difficultyMix Number of levels to generate per difficulty
+	 * @param seed Seed from which the seed of every run is derived
+	 * @param executor Executor the GA runs are spread over
+	 * @param coordinator Evaluation workers shared by all runs, or null to
+	 *                    simulate on the executor's threads
+	 * @param rows Number of rows of every level
+	 * @param columns Number of columns of every level
+	 * @return The levels with their fitness, grouped by difficulty in the
+	 *         iteration order of difficultyMix
+	 */
+	public static List<GeneratedLevel> generate(PrintWriter logWriter,
+			Map<String, Integer> difficultyMix, long seed,
+			ExecutorService executor, EvaluationCoordinator coordinator,
+			int rows, int columns) {
+		GenerationOptions settings = new GenerationOptions();
+		settings.setCoordinator(coordinator);
+		settings.setGridSize(rows, columns);
+		return generate(logWriter, difficultyMix, seed, executor, settings);
+	}
+
+	/**
+	 * Generates the levels of a difficulty mix, every run with a copy of
+	 * the given settings and a seed of its own. With checkpoints, a run
+	 * whose checkpoint is already in the directory is resumed from it, so
+	 * a batch that was cut short picks up where it left off when it is
+	 * started again with the same seed.
+	 *
+	 * @param logWriter Where the levels and their generation runtimes are
+	 *                  logged
+	 * @param difficultyMix Number of levels to generate per difficulty
+	 * @param seed Seed from which the seed of every run is derived
+	 * @param executor Executor the GA runs are spread over
+	 * @param settings Settings shared by all runs. Their seed is ignored,
+	 *                 and their executors, coordinator and telemetry sink
+	 *                 are shared.
+	 * @return The levels with their fitness, grouped by difficulty in the
+	 *         iteration order of difficultyMix
+	 */
+	public static List<GeneratedLevel> generate(PrintWriter logWriter,
+			Map<String, Integer> difficultyMix, long seed,
+			ExecutorService executor, GenerationOptions settings) {
+		// Seeds are drawn in submission order, so a batch is reproducible
+		// however its runs are scheduled
+		SplittableRandom seeds = new SplittableRandom(seed);
+		List<Callable<GeneratedLevel>> runs = new ArrayList<Callable<GeneratedLevel>>();
+
+		for (Map.Entry<String, Integer> mix : difficultyMix.entrySet()) {
+			String difficulty = mix.getKey();
+			for (int ii = 0; ii < mix.getValue(); ii++) {
+				GenerationOptions options = new GenerationOptions(settings);
+				options.setSeed(seeds.nextLong());
+				runs.add(() -> {
+					Path checkpoint = GenerateWumpusLevels.checkpointFile(
+							difficulty, options);
+					if (checkpoint != null && Files.exists(checkpoint)) {
+						return GenerateWumpusLevels.resume(logWriter,
+								checkpoint, options);
+					}
+					return GenerateWumpusLevels.generate(logWriter,
+							difficulty, options);
+				});
+			}
+		}
+
+		List<GeneratedLevel> levels = new ArrayList<GeneratedLevel>(runs.size());
+		try {
+			for (Future<GeneratedLevel> level : executor.invokeAll(runs)) {
+				levels.add(level.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Level generation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Level generation failed",
+					e.getCause());
+		}
+		return levels;
+	}
+
+}
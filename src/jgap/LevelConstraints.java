@@ -0,0 +1,162 @@
+package jgap;
+
+import java.util.function.IntUnaryOperator;
+
+import org.jgap.FitnessFunction;
+import org.jgap.IChromosome;
+import org.jgap.RandomGenerator;
+
+/**
+ * Keeps genomes playable: exactly one start room and exactly one Wumpus
+ * room, the counts the fitness function targets. Repair fixes a genome
+ * after crossover, and mutation moves the start and the Wumpus instead of
+ * creating or removing them, so no simulation is spent on a level that
+ * LevelScreen would reject.
+ *
+ * Genomes are flat arrays of gene values, one level row after another. The
+ * random source returns a value from 0 up to its argument, as
+ * RandomGenerator.nextInt and SplittableRandom.nextInt do.
+ *
+ */
+public class LevelConstraints {
+
+	private static final int START = 0;
+	private static final int WUMPUS = 5;
+
+	// Empty room, the two tunnels and the pit
+	private static final int FIRST_ORDINARY = 1;
+	private static final int ORDINARY_VALUES = 4;
+
+	/**
+	 * Leaves one start room and one Wumpus room in a genome. Surplus ones,
+	 * all but a random one, become random ordinary cells. A missing one
+	 * replaces a random ordinary cell.
+	 *
+	 * @param genes The genomes
+	 * @param offset Index of the first gene of the genome
+	 * @param length Number of genes of the genome, at least 3
+	 * @param random Random source
+	 * @return Whether the genome was changed
+	 */
+	public static boolean repair(byte[] genes, int offset, int length,
+			IntUnaryOperator random) {
+		int starts = count(genes, offset, length, START);
+		int wumpus = count(genes, offset, length, WUMPUS);
+		if (starts == 1 && wumpus == 1) {
+			return false;
+		}
+
+		// Remove surplus first, so that there are ordinary cells to place
+		// missing ones on
+		keepOne(genes, offset, length, START, starts, random);
+		keepOne(genes, offset, length, WUMPUS, wumpus, random);
+		if (starts == 0) {
+			placeOne(genes, offset, length, START, random);
+		}
+		if (wumpus == 0) {
+			placeOne(genes, offset, length, WUMPUS, random);
+		}
+		return true;
+	}
+
+	/**
+	 * Mutates one gene of a playable genome, keeping it playable. An
+	 * ordinary cell gets a random ordinary value. The start or Wumpus room
+	 * swaps places with a random cell of the genome.
+	 *
+	 * @param genes The genomes
+	 * @param offset Index of the first gene of the genome
+	 * @param length Number of genes of the genome
+	 * @param gene Index of the gene to mutate
+	 * @param random Random source
+	 */
+	public static void mutate(byte[] genes, int offset, int length, int gene,
+			IntUnaryOperator random) {
+		if (genes[gene] == START || genes[gene] == WUMPUS) {
+			int other = offset + random.applyAsInt(length);
+			byte swap = genes[gene];
+			genes[gene] = genes[other];
+			genes[other] = swap;
+		} else {
+			genes[gene] = randomOrdinary(random);
+		}
+	}
+
+	/**
+	 * Repairs a chromosome of IntegerGenes, see repair. A changed
+	 * chromosome loses its fitness value.
+	 *
+	 * @param chromosome The chromosome
+	 * @param random Random source
+	 * @return Whether the chromosome was changed
+	 */
+	public static boolean repair(IChromosome chromosome, RandomGenerator random) {
+		byte[] genes = toGenes(chromosome);
+		if (!repair(genes, 0, genes.length, random::nextInt)) {
+			return false;
+		}
+		setGenes(chromosome, genes);
+		chromosome.setFitnessValueDirectly(FitnessFunction.NO_FITNESS_VALUE);
+		return true;
+	}
+
+	// Copies the alleles of a chromosome of IntegerGenes
+	static byte[] toGenes(IChromosome chromosome) {
+		byte[] genes = new byte[chromosome.size()];
+		for (int ii = 0; ii < genes.length; ii++) {
+			genes[ii] = (byte) (int) (Integer) chromosome.getGene(ii).getAllele();
+		}
+		return genes;
+	}
+
+	// Sets the alleles of a chromosome of IntegerGenes
+	static void setGenes(IChromosome chromosome, byte[] genes) {
+		for (int ii = 0; ii < genes.length; ii++) {
+			chromosome.getGene(ii).setAllele(Integer.valueOf(genes[ii]));
+		}
+	}
+
+	private static int count(byte[] genes, int offset, int length, int value) {
+		int count = 0;
+		for (int ii = offset; ii < offset + length; ii++) {
+			if (genes[ii] == value) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// Turns all but a random one of the cells with the value into ordinary
+	// cells
+	private static void keepOne(byte[] genes, int offset, int length,
+			int value, int count, IntUnaryOperator random) {
+		if (count <= 1) {
+			return;
+		}
+		int kept = random.applyAsInt(count);
+		for (int ii = offset; ii < offset + length; ii++) {
+			if (genes[ii] == value && kept-- != 0) {
+				genes[ii] = randomOrdinary(random);
+			}
+		}
+	}
+
+	// Gives a random ordinary cell the value
+	private static void placeOne(byte[] genes, int offset, int length,
+			int value, IntUnaryOperator random) {
+		int ordinary = length - count(genes, offset, length, START)
+				- count(genes, offset, length, WUMPUS);
+		int chosen = random.applyAsInt(ordinary);
+		for (int ii = offset; ii < offset + length; ii++) {
+			if (genes[ii] != START && genes[ii] != WUMPUS && chosen-- == 0) {
+				genes[ii] = (byte) value;
+				return;
+			}
+		}
+	}
+
+	private static byte randomOrdinary(IntUnaryOperator random) {
+		return (byte) (FIRST_ORDINARY + random.applyAsInt(ORDINARY_VALUES));
+	}
+
+}
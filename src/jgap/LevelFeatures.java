@@ -0,0 +1,220 @@
+package jgap;
+
+import java.util.Arrays;
+
+import ai.wumpus.Grid;
+
+/**
+ * The features of a level that do not need a simulation, extracted in one
+ * pass over its cells. The cell counts and the room to tunnel ratio are
+ * the level features of the fitness. The structural features follow the
+ * rooms the agent can move between, by the movement rules of
+ * Grid.resolveNeighbor. They are worked out from the cells kept by that
+ * pass when first asked for, so that screening a level costs only the
+ * count:
+ * - reachable rooms, the start room and the empty rooms the agent can get
+ *   to from the start without entering a pit or the Wumpus
+ * - components, the number of groups of safe rooms connected that way
+ * - start hazards, how many of the four moves out of the start room lead
+ *   into a pit or the Wumpus
+ *
+ * An instance is reused from level to level, so that extracting allocates
+ * nothing once the level size is settled. Not safe to share between
+ * threads.
+ *
+ */
+public final class LevelFeatures {
+
+	private int rows;
+	private int columns;
+
+	// Number of cells of each type, indexed by type
+	private final int[] cellCounts = new int[6];
+
+	// Whether the structural features below belong to the current level.
+	// start is the first start room, or NONE.
+	private boolean walked;
+	private int start;
+	private int reachableRooms;
+	private int components;
+	private int startHazards;
+
+	// Cell types, component of each safe room and the rooms waiting to be
+	// visited, indexed by cell id (row * columns + column)
+	private byte[] cells = new byte[0];
+	private int[] component = new int[0];
+	private int[] queue = new int[0];
+
+	/**
+	 * Extracts the features of a level, replacing those of the previous
+	 * one.
+	 *
+	 * @param map The level, indexed by row and column
+	 * @return This instance
+	 */
+	public LevelFeatures extract(int[][] map) {
+		rows = map.length;
+		columns = map[0].length;
+		int cellCount = rows * columns;
+		if (cells.length != cellCount) {
+			cells = new byte[cellCount];
+			component = new int[cellCount];
+			queue = new int[cellCount];
+		}
+
+		// Count, and keep the cells in row-major order for walk()
+		Arrays.fill(cellCounts, 0);
+		for (int ii = 0; ii < rows; ii++) {
+			int[] row = map[ii];
+			int offset = ii * columns;
+			for (int jj = 0; jj < columns; jj++) {
+				int type = row[jj];
+				cellCounts[type]++;
+				cells[offset + jj] = (byte) type;
+			}
+		}
+
+		walked = false;
+		return this;
+	}
+
+	// Works out the structural features of the current level
+	private void walk() {
+		walked = true;
+
+		start = Grid.NONE;
+		for (int cell = 0; cell < cells.length && start == Grid.NONE; cell++) {
+			if (cells[cell] == Grid.START) {
+				start = cell;
+			}
+		}
+
+		// Label the groups of safe rooms, the start's first
+		Arrays.fill(component, 0);
+		components = 0;
+		reachableRooms = 0;
+		if (start != Grid.NONE) {
+			reachableRooms = label(start, ++components);
+		}
+		for (int cell = 0; cell < cells.length; cell++) {
+			if (isSafeRoom(cells[cell]) && component[cell] == 0) {
+				label(cell, ++components);
+			}
+		}
+
+		startHazards = 0;
+		if (start != Grid.NONE) {
+			int row = start / columns;
+			int column = start - row * columns;
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = neighbor(row, column, direction);
+				if (neighbor != Grid.NONE && isHazard(cells[neighbor])) {
+					startHazards++;
+				}
+			}
+		}
+	}
+
+	// Visits the safe rooms connected to a room breadth first, and returns
+	// how many there are
+	private int label(int room, int label) {
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = room;
+		component[room] = label;
+
+		while (head < tail) {
+			int cell = queue[head++];
+			int row = cell / columns;
+			int column = cell - row * columns;
+			for (int direction = 0; direction < 4; direction++) {
+				int neighbor = neighbor(row, column, direction);
+				if (neighbor != Grid.NONE && component[neighbor] == 0
+						&& isSafeRoom(cells[neighbor])) {
+					component[neighbor] = label;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+		return tail;
+	}
+
+	// The room reached leaving a cell in a direction, or NONE if the
+	// tunnels go around forever
+	private int neighbor(int row, int column, int direction) {
+		return Grid.resolveNeighbor(cells, rows, columns, row, column,
+				direction);
+	}
+
+	private static boolean isSafeRoom(byte type) {
+		return type == Grid.START || type == Grid.EMPTY;
+	}
+
+	private static boolean isHazard(byte type) {
+		return type == Grid.PIT || type == Grid.WUMPUS;
+	}
+
+	/**
+	 * @return The number of cells of each type, indexed by type, as
+	 *         LevelScreen and the fitness take them. Overwritten by the next
+	 *         extract.
+	 */
+	public int[] getCellCounts() {
+		return cellCounts;
+	}
+
+	public int getCells() {
+		return rows * columns;
+	}
+
+	public int getTunnels() {
+		return cellCounts[Grid.NE_SW_TUNNEL] + cellCounts[Grid.NW_SE_TUNNEL];
+	}
+
+	// Number of empty rooms, not counting the start
+	public int getRooms() {
+		return cellCounts[Grid.EMPTY];
+	}
+
+	// Empty rooms per tunnel, infinite or NaN without tunnels
+	public double getRoomsToTunnelsRatio() {
+		return (double) getRooms() / getTunnels();
+	}
+
+	public int getPits() {
+		return cellCounts[Grid.PIT];
+	}
+
+	public int getWumpus() {
+		return cellCounts[Grid.WUMPUS];
+	}
+
+	public int getStarts() {
+		return cellCounts[Grid.START];
+	}
+
+	// Safe rooms reachable from the first start room, 0 without one
+	public int getReachableRooms() {
+		if (!walked) {
+			walk();
+		}
+		return reachableRooms;
+	}
+
+	// Groups of connected safe rooms
+	public int getComponents() {
+		if (!walked) {
+			walk();
+		}
+		return components;
+	}
+
+	// Moves out of the first start room that lead into a hazard
+	public int getStartHazards() {
+		if (!walked) {
+			walk();
+		}
+		return startHazards;
+	}
+
+}
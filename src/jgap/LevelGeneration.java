@@ -0,0 +1,85 @@
+package jgap;
+
+import java.io.PrintWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A level generation run on an executor, completed with the level when
+ * the run stops.
+ *
+ * The run checks between generations whether it should go on:
+ * - stop(), or the cancellation of the options, ends it early, completing
+ *   it with the best level so far.
+ * - cancel(), or completing it from outside, abandons it. The GA then
+ *   stops without producing a level.
+ * - The time budget of the options acts as a deadline, again completing
+ *   it with the best level so far.
+ *
+ */
+public class LevelGeneration extends CompletableFuture<GeneratedLevel> {
+
+	private volatile boolean stopRequested;
+	private volatile int generation;
+	private volatile double bestFitness = Double.NaN;
+
+	/**
+	 * Starts a run on the executor. The run works on a copy of the options,
+	 * so they can be changed or used for another run afterwards.
+	 *
+	 * @param logWriter Where the level and its generation runtime are logged
+	 * @param difficulty "easy", "medium", or "hard"
+	 * @param options Settings of the run. Their progress listener is called
+	 *                after every generation, and their cancellation stops
+	 *                the run like stop() does.
+	 * @param executor Executor the GA runs on
+	 * @return The run
+	 */
+	public static LevelGeneration start(PrintWriter logWriter,
+			String difficulty, GenerationOptions options, Executor executor) {
+		LevelGeneration run = new LevelGeneration();
+		GenerationOptions runOptions = new GenerationOptions(options);
+
+		GenerationListener progressListener = options.getProgressListener();
+		runOptions.setProgressListener((generation, bestFitness) -> {
+			run.generation = generation;
+			run.bestFitness = bestFitness;
+			if (progressListener != null) {
+				progressListener.generationEvolved(generation, bestFitness);
+			}
+		});
+		BooleanSupplier cancellation = options.getCancellation();
+		runOptions.setCancellation(() -> run.stopRequested || run.isDone()
+				|| (cancellation != null && cancellation.getAsBoolean()));
+
+		executor.execute(() -> {
+			if (run.isDone()) {
+				return;
+			}
+			try {
+				run.complete(GenerateWumpusLevels.generate(logWriter,
+						difficulty, runOptions));
+			} catch (Throwable e) {
+				run.completeExceptionally(e);
+			}
+		});
+		return run;
+	}
+
+	// Ends the run after the current generation, with the best level so far
+	public void stop() {
+		stopRequested = true;
+	}
+
+	// Number of generations evolved so far
+	public int getGeneration() {
+		return generation;
+	}
+
+	// Best fitness so far, NaN before the initial population is evaluated
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+}
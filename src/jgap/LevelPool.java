@@ -0,0 +1,309 @@
+package jgap;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a stock of pre-generated levels for each difficulty, so that a game
+ * can start without waiting for a GA run. When the stock of a difficulty
+ * drops below the low watermark, levels are generated on the refill
+ * executor until it is back at capacity.
+ *
+ * A take that finds the stock empty waits for a level, unless the pool is
+ * closed and no levels are left to come, or every level being generated
+ * has failed. Then it throws IllegalStateException.
+ *
+ */
+public class LevelPool implements Closeable {
+
+	private final PrintWriter logWriter;
+	private final ExecutorService refillExecutor;
+	private final GenerationOptions options;
+	private final int capacity;
+	private final int lowWatermark;
+	private final long startTime = System.nanoTime();
+	private final Map<String, Stock> stocks = new LinkedHashMap<String, Stock>();
+
+	private volatile boolean closed;
+
+	// Ready levels and counters of one difficulty
+	private static final class Stock {
+		final BlockingQueue<GeneratedLevel> levels;
+		// Levels being generated
+		final AtomicInteger pending = new AtomicInteger();
+		final AtomicLong generated = new AtomicLong();
+		final AtomicLong served = new AtomicLong();
+		// Requests that found the stock empty
+		final AtomicLong starved = new AtomicLong();
+		// Why the last refill failed, cleared by the next level generated.
+		// Waiters are woken by notifyAll on the stock.
+		volatile RuntimeException failure;
+
+		Stock(int capacity) {
+			levels = new ArrayBlockingQueue<GeneratedLevel>(capacity);
+		}
+	}
+
+	/**
+	 * Creates the pool with the default generation settings and starts
+	 * filling it.
+	 *
+	 * @param logWriter Where generated levels are logged
+	 * @param refillExecutor Executor the levels are generated on
+	 * @param capacity Number of ready levels kept per difficulty
+	 * @param lowWatermark Stock below which a difficulty is refilled
+	 * @param difficulties The difficulties to keep levels of
+	 */
+	public LevelPool(PrintWriter logWriter, ExecutorService refillExecutor,
+			int capacity, int lowWatermark, String... difficulties) {
+		this(logWriter, refillExecutor, new GenerationOptions(), capacity,
+				lowWatermark, difficulties);
+	}
+
+	/**
+	 * Creates the pool and starts filling it.
+	 *
+	 * @param logWriter Where generated levels are logged
+	 * @param refillExecutor Executor the levels are generated on
+	 * @param options The settings every level is generated with, copied
+	 *                now. Each level gets a seed of its own.
+	 * @param capacity Number of ready levels kept per difficulty
+	 * @param lowWatermark Stock below which a difficulty is refilled
+	 * @param difficulties The difficulties to keep levels of
+	 */
+	public LevelPool(PrintWriter logWriter, ExecutorService refillExecutor,
+			GenerationOptions options, int capacity, int lowWatermark,
+			String... difficulties) {
+		if (lowWatermark < 1 || lowWatermark > capacity) {
+			throw new IllegalArgumentException(
+					"Low watermark must be between 1 and the capacity");
+		}
+		this.logWriter = logWriter;
+		this.refillExecutor = refillExecutor;
+		this.options = new GenerationOptions(options);
+		this.capacity = capacity;
+		this.lowWatermark = lowWatermark;
+
+		for (String difficulty : difficulties) {
+			stocks.put(difficulty, new Stock(capacity));
+		}
+		for (String difficulty : difficulties) {
+			refill(difficulty, stocks.get(difficulty));
+		}
+	}
+
+	/**
+	 * Takes a level, waiting for one to be generated if the stock is empty.
+	 *
+	 * @param difficulty The difficulty of the level
+	 * @return A level not handed out before
+	 * @throws InterruptedException If interrupted while waiting
+	 * @throws IllegalStateException If no level can come, see the class
+	 *                               comment
+	 */
+	public GeneratedLevel take(String difficulty) throws InterruptedException {
+		Stock stock = stockOf(difficulty);
+		GeneratedLevel level = stock.levels.poll();
+		if (level == null) {
+			stock.starved.incrementAndGet();
+			refill(difficulty, stock);
+			level = await(difficulty, stock, false, 0);
+		}
+		return served(difficulty, stock, level);
+	}
+
+	/**
+	 * Takes a level, waiting at most the given time if the stock is empty.
+	 *
+	 * @param difficulty The difficulty of the level
+	 * @param timeout How long to wait
+	 * @param unit The unit of the timeout
+	 * @return A level not handed out before, or null if none was ready in
+	 *         time
+	 * @throws InterruptedException If interrupted while waiting
+	 * @throws IllegalStateException If no level can come, see the class
+	 *                               comment
+	 */
+	public GeneratedLevel take(String difficulty, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		Stock stock = stockOf(difficulty);
+		GeneratedLevel level = stock.levels.poll();
+		if (level == null) {
+			stock.starved.incrementAndGet();
+			refill(difficulty, stock);
+			level = await(difficulty, stock, true, unit.toNanos(timeout));
+			if (level == null) {
+				return null;
+			}
+		}
+		return served(difficulty, stock, level);
+	}
+
+	// Waits for a level of the stock, at most the timeout if timed. Null if
+	// none came in time.
+	private GeneratedLevel await(String difficulty, Stock stock,
+			boolean timed, long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		synchronized (stock) {
+			while (true) {
+				GeneratedLevel level = stock.levels.poll();
+				if (level != null) {
+					return level;
+				}
+
+				// Nothing is being generated that could still arrive
+				if (stock.pending.get() == 0) {
+					if (stock.failure != null) {
+						throw new IllegalStateException(
+								"Cannot generate levels of difficulty "
+										+ difficulty, stock.failure);
+					}
+					if (closed) {
+						throw new IllegalStateException(
+								"Level pool is closed and has no levels of difficulty "
+										+ difficulty);
+					}
+				}
+
+				if (!timed) {
+					stock.wait();
+				} else {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return null;
+					}
+					TimeUnit.NANOSECONDS.timedWait(stock, remaining);
+				}
+			}
+		}
+	}
+
+	private GeneratedLevel served(String difficulty, Stock stock,
+			GeneratedLevel level) {
+		stock.served.incrementAndGet();
+		if (stock.levels.size() < lowWatermark) {
+			refill(difficulty, stock);
+		}
+		return level;
+	}
+
+	// Starts generating levels until stock and pending levels reach capacity
+	private void refill(String difficulty, Stock stock) {
+		while (!closed) {
+			int pending = stock.pending.get();
+			if (stock.levels.size() + pending >= capacity) {
+				return;
+			}
+			if (!stock.pending.compareAndSet(pending, pending + 1)) {
+				continue;
+			}
+
+			try {
+				refillExecutor.execute(() -> generate(difficulty, stock));
+			} catch (RejectedExecutionException e) {
+				stock.failure = e;
+				stock.pending.decrementAndGet();
+				wakeWaiters(stock);
+				return;
+			}
+		}
+	}
+
+	private void generate(String difficulty, Stock stock) {
+		try {
+			if (!closed) {
+				GenerationOptions levelOptions = new GenerationOptions(options);
+				levelOptions.setSeed(ThreadLocalRandom.current().nextLong());
+				GeneratedLevel level = GenerateWumpusLevels.generate(logWriter,
+						difficulty, levelOptions);
+				stock.levels.offer(level);
+				stock.generated.incrementAndGet();
+				stock.failure = null;
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			stock.failure = e;
+		} finally {
+			stock.pending.decrementAndGet();
+			wakeWaiters(stock);
+		}
+	}
+
+	private static void wakeWaiters(Stock stock) {
+		synchronized (stock) {
+			stock.notifyAll();
+		}
+	}
+
+	private Stock stockOf(String difficulty) {
+		Stock stock = stocks.get(difficulty);
+		if (stock == null) {
+			throw new IllegalArgumentException("No levels of difficulty "
+					+ difficulty + " are pooled");
+		}
+		return stock;
+	}
+
+	// Number of ready levels
+	public int getStock(String difficulty) {
+		return stockOf(difficulty).levels.size();
+	}
+
+	// Number of levels being generated
+	public int getPending(String difficulty) {
+		return stockOf(difficulty).pending.get();
+	}
+
+	public long getServedCount(String difficulty) {
+		return stockOf(difficulty).served.get();
+	}
+
+	public long getGeneratedCount(String difficulty) {
+		return stockOf(difficulty).generated.get();
+	}
+
+	// Number of takes that found no level ready
+	public long getStarvationCount(String difficulty) {
+		return stockOf(difficulty).starved.get();
+	}
+
+	// Levels generated per second since the pool was created
+	public double getRefillRate(String difficulty) {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		return stockOf(difficulty).generated.get() / seconds;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stats = new StringBuilder();
+		for (String difficulty : stocks.keySet()) {
+			stats.append(String.format(
+					"%s: stock=%d, pending=%d, served=%d, starved=%d, refill=%.3f/s%n",
+					difficulty, getStock(difficulty), getPending(difficulty),
+					getServedCount(difficulty), getStarvationCount(difficulty),
+					getRefillRate(difficulty)));
+		}
+		return stats.toString();
+	}
+
+	// Stops refilling. Levels already being generated still join the stock.
+	// The refill executor belongs to the caller and is not shut down.
+	@Override
+	public void close() {
+		closed = true;
+		for (Stock stock : stocks.values()) {
+			wakeWaiters(stock);
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package jgap;
+
+/**
+ * Cheap check of a level before it is simulated. A level without exactly
+ * one start room or without a Wumpus cannot be played properly: with no
+ * start room the agent silently starts at 0,0, and with several it starts
+ * in the last one. Such levels get a penalty fitness instead of a
+ * simulation.
+ *
+ */
+public class LevelScreen {
+
+	// Feature distance charged for being unplayable. Simulated playable
+	// levels, even random ones, are rarely further than this from a target.
+	private static final double PENALTY_DISTANCE = 10;
+
+	// Number of cells of the levels the penalty was tuned on. The start and
+	// Wumpus counts of other levels are scaled to this size, as the fitness
+	// scales its counts.
+	private static final double REFERENCE_CELLS = WumpusSimulation.ROWS
+			* WumpusSimulation.COLUMNS;
+
+	/**
+	 * @param counts The cell type counts of a level, see
+	 *               LevelFeatures.getCellCounts
+	 * @return Whether the level has exactly one start room and a Wumpus
+	 */
+	public static boolean isPlayable(int[] counts) {
+		return counts[0] == 1 && counts[5] > 0;
+	}
+
+	/**
+	 * Fitness of an unplayable level. It is below the fitness of almost all
+	 * playable levels, and higher the closer the level is to having one
+	 * start room and one Wumpus, so the GA can still climb towards them.
+	 * Scaled to the reference size, the distance from one of each is at
+	 * most the reference cell count, so the fitness stays positive on
+	 * levels of any size.
+	 *
+	 * @param counts The cell type counts of the level
+	 * @return The penalty fitness
+	 */
+	public static double penaltyFitness(int[] counts) {
+		int cellCount = 0;
+		for (int count : counts) {
+			cellCount += count;
+		}
+		double sizeScale = REFERENCE_CELLS / cellCount;
+
+		double startDifference = counts[0] - 1;
+		double wumpusDifference = counts[5] - 1;
+		return 100.0 - PENALTY_DISTANCE
+				- Math.sqrt(startDifference * startDifference
+						+ wumpusDifference * wumpusDifference) * sizeScale;
+	}
+
+}
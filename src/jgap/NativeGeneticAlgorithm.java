@@ -0,0 +1,346 @@
+package jgap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Genetic algorithm over the level gene space that keeps the whole
+ * population in one flat byte array, one row of rows * columns genes per
+ * individual. Selection, crossover and mutation work on the array directly,
+ * without gene or chromosome objects.
+ *
+ * Every generation keeps the best individuals, as BestChromosomesSelector
+ * does, and refills the population with their offspring: one-point
+ * crossover with the crossover rate, then a new random value for each gene
+ * with probability 1 / mutation rate denominator. Only offspring are
+ * evaluated.
+ *
+ * With playableOnly, the initial population and every crossover are
+ * repaired to one start and one Wumpus room, and mutation moves those
+ * rooms instead of changing them, as in LevelConstraints.
+ *
+ */
+public class NativeGeneticAlgorithm implements EvolvingPopulation {
+
+	// Genes take the values 0 (start) to 5 (Wumpus)
+	private static final int GENE_VALUES = 6;
+
+	private final WumpusFitnessFunction fitnessFunction;
+	private final int rows;
+	private final int columns;
+	private final int genomeLength;
+	private final int populationSize;
+	private final int parentCount;
+	private final double crossoverRate;
+	private final int mutationRateDenominator;
+	private SplittableRandom random;
+	private final ExecutorService fitnessExecutor;
+	private final boolean playableOnly;
+
+	// Current and next population, swapped after every generation
+	private byte[] genomes;
+	private byte[] nextGenomes;
+	private double[] fitness;
+	private double[] nextFitness;
+
+	// Individuals ordered from fittest to least fit
+	private final int[] ranking;
+
+	private int generation;
+
+	/**
+	 * Creates a random initial population and evaluates it.
+	 *
+	 * @param fitnessFunction Scores the levels
+	 * @param rows Rows in a level
+	 * @param columns Columns in a level
+	 * @param populationSize Number of individuals
+	 * @param selectionRate Share of the population kept as parents
+	 * @param crossoverRate Probability that an offspring is a crossover
+	 *                      rather than a copy of one parent
+	 * @param mutationRateDenominator Inverse of the mutation probability of
+	 *                                a gene
+	 * @param seed Seed of the random generator
+	 * @param fitnessExecutor Executor for fitness evaluations, or null to
+	 *                        evaluate them one after another
+	 * @param playableOnly Whether every individual keeps exactly one start
+	 *                     and one Wumpus room
+	 */
+	public NativeGeneticAlgorithm(WumpusFitnessFunction fitnessFunction,
+			int rows, int columns, int populationSize, double selectionRate,
+			double crossoverRate, int mutationRateDenominator, long seed,
+			ExecutorService fitnessExecutor, boolean playableOnly) {
+		this(fitnessFunction, rows, columns, populationSize, selectionRate,
+				crossoverRate, mutationRateDenominator, new SplittableRandom(
+						seed), fitnessExecutor, playableOnly);
+
+		for (int ii = 0; ii < genomes.length; ii++) {
+			genomes[ii] = (byte) random.nextInt(GENE_VALUES);
+		}
+		if (playableOnly) {
+			for (int ii = 0; ii < populationSize; ii++) {
+				LevelConstraints.repair(genomes, ii * genomeLength,
+						genomeLength, random::nextInt);
+			}
+		}
+		evaluate(genomes, fitness, 0);
+		rank();
+	}
+
+	/**
+	 * Restores a population from a checkpoint, without evaluating it
+	 * again.
+	 *
+	 * @param fitnessFunction Scores the levels
+	 * @param rows Rows in a level
+	 * @param columns Columns in a level
+	 * @param selectionRate Share of the population kept as parents
+	 * @param crossoverRate Probability that an offspring is a crossover
+	 *                      rather than a copy of one parent
+	 * @param mutationRateDenominator Inverse of the mutation probability of
+	 *                                a gene
+	 * @param fitnessExecutor Executor for fitness evaluations, or null to
+	 *                        evaluate them one after another
+	 * @param playableOnly Whether every individual keeps exactly one start
+	 *                     and one Wumpus room
+	 * @param state The population, as taken by {@link #checkpoint()}
+	 */
+	public NativeGeneticAlgorithm(WumpusFitnessFunction fitnessFunction,
+			int rows, int columns, double selectionRate, double crossoverRate,
+			int mutationRateDenominator, ExecutorService fitnessExecutor,
+			boolean playableOnly, PopulationState state) {
+		this(fitnessFunction, rows, columns, state.getSize(), selectionRate,
+				crossoverRate, mutationRateDenominator, new SplittableRandom(
+						state.getRandomSeed()), fitnessExecutor, playableOnly);
+
+		for (int ii = 0; ii < populationSize; ii++) {
+			int[][] level = FitnessCache.unpack(state.getGenome(ii), rows,
+					columns);
+			int offset = ii * genomeLength;
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					genomes[offset++] = (byte) level[row][column];
+				}
+			}
+			fitness[ii] = state.getFitness(ii);
+		}
+		generation = state.getGeneration();
+		rank();
+	}
+
+	private NativeGeneticAlgorithm(WumpusFitnessFunction fitnessFunction,
+			int rows, int columns, int populationSize, double selectionRate,
+			double crossoverRate, int mutationRateDenominator,
+			SplittableRandom random, ExecutorService fitnessExecutor,
+			boolean playableOnly) {
+		this.fitnessFunction = fitnessFunction;
+		this.rows = rows;
+		this.columns = columns;
+		this.genomeLength = rows * columns;
+		this.populationSize = populationSize;
+		this.parentCount = Math.max(1,
+				(int) Math.round(selectionRate * populationSize));
+		this.crossoverRate = crossoverRate;
+		this.mutationRateDenominator = mutationRateDenominator;
+		this.random = random;
+		this.fitnessExecutor = fitnessExecutor;
+		this.playableOnly = playableOnly;
+
+		genomes = new byte[populationSize * genomeLength];
+		nextGenomes = new byte[populationSize * genomeLength];
+		fitness = new double[populationSize];
+		nextFitness = new double[populationSize];
+		ranking = new int[populationSize];
+	}
+
+	@Override
+	public void evolve() {
+		// The parents survive unchanged, with their fitness
+		for (int ii = 0; ii < parentCount; ii++) {
+			System.arraycopy(genomes, ranking[ii] * genomeLength, nextGenomes,
+					ii * genomeLength, genomeLength);
+			nextFitness[ii] = fitness[ranking[ii]];
+		}
+
+		for (int child = parentCount; child < populationSize; child++) {
+			int childOffset = child * genomeLength;
+			int motherOffset = ranking[random.nextInt(parentCount)]
+					* genomeLength;
+
+			if (random.nextDouble() < crossoverRate) {
+				int fatherOffset = ranking[random.nextInt(parentCount)]
+						* genomeLength;
+				int cut = 1 + random.nextInt(genomeLength - 1);
+				System.arraycopy(genomes, motherOffset, nextGenomes,
+						childOffset, cut);
+				System.arraycopy(genomes, fatherOffset + cut, nextGenomes,
+						childOffset + cut, genomeLength - cut);
+				if (playableOnly) {
+					LevelConstraints.repair(nextGenomes, childOffset,
+							genomeLength, random::nextInt);
+				}
+			} else {
+				System.arraycopy(genomes, motherOffset, nextGenomes,
+						childOffset, genomeLength);
+			}
+
+			for (int gene = childOffset; gene < childOffset + genomeLength; gene++) {
+				if (random.nextInt(mutationRateDenominator) != 0) {
+					continue;
+				}
+				if (playableOnly) {
+					LevelConstraints.mutate(nextGenomes, childOffset,
+							genomeLength, gene, random::nextInt);
+				} else {
+					nextGenomes[gene] = (byte) random.nextInt(GENE_VALUES);
+				}
+			}
+		}
+		evaluate(nextGenomes, nextFitness, parentCount);
+
+		byte[] swapGenomes = genomes;
+		genomes = nextGenomes;
+		nextGenomes = swapGenomes;
+		double[] swapFitness = fitness;
+		fitness = nextFitness;
+		nextFitness = swapFitness;
+
+		rank();
+		generation++;
+	}
+
+	// Scores the individuals from the given one onwards
+	private void evaluate(byte[] population, double[] scores, int first) {
+		// Evaluation workers take the whole generation as one set of batches
+		if (fitnessFunction.isRemote()) {
+			List<int[][]> levels = new ArrayList<int[][]>();
+			for (int ii = first; ii < populationSize; ii++) {
+				levels.add(toLevel(population, ii));
+			}
+			System.arraycopy(fitnessFunction.evaluateLevels(levels), 0,
+					scores, first, levels.size());
+			return;
+		}
+
+		if (fitnessExecutor == null) {
+			for (int ii = first; ii < populationSize; ii++) {
+				scores[ii] = fitnessFunction.evaluateLevel(toLevel(population, ii));
+			}
+			return;
+		}
+
+		List<Future<Double>> fitnessValues = new ArrayList<Future<Double>>();
+		for (int ii = first; ii < populationSize; ii++) {
+			int[][] level = toLevel(population, ii);
+			fitnessValues.add(fitnessExecutor.submit(() -> fitnessFunction
+					.evaluateLevel(level)));
+		}
+
+		try {
+			for (int ii = first; ii < populationSize; ii++) {
+				scores[ii] = fitnessValues.get(ii - first).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Fitness evaluation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Fitness evaluation failed",
+					e.getCause());
+		}
+	}
+
+	// Orders the population by fitness, the lower index first on ties
+	private void rank() {
+		for (int ii = 0; ii < populationSize; ii++) {
+			int individual = ii;
+			int jj = ii;
+			while (jj > 0 && fitness[ranking[jj - 1]] < fitness[individual]) {
+				ranking[jj] = ranking[jj - 1];
+				jj--;
+			}
+			ranking[jj] = individual;
+		}
+	}
+
+	private int[][] toLevel(byte[] population, int individual) {
+		int[][] level = new int[rows][columns];
+		int offset = individual * genomeLength;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				level[row][column] = population[offset++];
+			}
+		}
+		return level;
+	}
+
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+
+	// The fittest individual always survives, so this is the best so far
+	@Override
+	public double getFittestValue() {
+		return fitness[ranking[0]];
+	}
+
+	@Override
+	public int[][] getFittestLevel() {
+		return toLevel(genomes, ranking[0]);
+	}
+
+	@Override
+	public double[] getFitnessValues() {
+		return fitness.clone();
+	}
+
+	@Override
+	public List<Migrant> emigrants(int count) {
+		List<Migrant> migrants = new ArrayList<Migrant>(count);
+		for (int ii = 0; ii < Math.min(count, populationSize); ii++) {
+			migrants.add(new Migrant(toLevel(genomes, ranking[ii]),
+					fitness[ranking[ii]]));
+		}
+		return migrants;
+	}
+
+	@Override
+	public void immigrate(List<Migrant> migrants) {
+		if (migrants.isEmpty()) {
+			return;
+		}
+		int count = Math.min(migrants.size(), populationSize - 1);
+		for (int ii = 0; ii < count; ii++) {
+			int individual = ranking[populationSize - 1 - ii];
+			int offset = individual * genomeLength;
+			int[][] level = migrants.get(ii).getLevel();
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					genomes[offset++] = (byte) level[row][column];
+				}
+			}
+			fitness[individual] = migrants.get(ii).getFitness();
+		}
+		rank();
+	}
+
+	@Override
+	public List<PopulationState> checkpoint() {
+		long[][] packed = new long[populationSize][];
+		for (int ii = 0; ii < populationSize; ii++) {
+			packed[ii] = FitnessCache.pack(toLevel(genomes, ii));
+		}
+
+		long randomSeed = random.nextLong();
+		random = new SplittableRandom(randomSeed);
+		return Collections.singletonList(new PopulationState(generation,
+				packed, fitness.clone(), randomSeed, packed[ranking[0]],
+				fitness[ranking[0]]));
+	}
+
+}
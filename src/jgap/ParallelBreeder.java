@@ -0,0 +1,92 @@
+package jgap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jgap.Configuration;
+import org.jgap.FitnessFunction;
+import org.jgap.IChromosome;
+import org.jgap.Population;
+import org.jgap.impl.GABreeder;
+
+/**
+ * Breeder that evaluates the fitness of all unevaluated chromosomes of a
+ * generation on an executor, before natural selection runs.
+ *
+ * Fitness values are assigned in population order and evaluation does not
+ * use the random generator, so a run gives the same result as the serial
+ * breeder for the same seed, as long as the fitness function is
+ * deterministic.
+ *
+ */
+@SuppressWarnings("serial")
+public class ParallelBreeder extends GABreeder {
+
+	// Runs the fitness evaluations, e.g. a ForkJoinPool
+	private final transient ExecutorService executor;
+
+	public ParallelBreeder(ExecutorService executor) {
+		super();
+		this.executor = executor;
+	}
+
+	@Override
+	protected void updateChromosomes(Population a_pop, Configuration a_conf) {
+		evaluate(a_pop, a_conf);
+		super.updateChromosomes(a_pop, a_conf);
+	}
+
+	/**
+	 * Computes the fitness of every chromosome in the population that does
+	 * not have one yet.
+	 *
+	 * @param population The chromosomes to evaluate
+	 * @param conf The configuration holding the fitness function
+	 */
+	public void evaluate(Population population, Configuration conf) {
+		FitnessFunction fitnessFunction = conf.getFitnessFunction();
+		if (fitnessFunction == null) {
+			return;
+		}
+
+		// The same chromosome can appear more than once
+		Set<IChromosome> pending = Collections
+				.newSetFromMap(new IdentityHashMap<IChromosome, Boolean>());
+		List<IChromosome> chromosomes = new ArrayList<IChromosome>();
+		List<Future<Double>> fitnessValues = new ArrayList<Future<Double>>();
+
+		for (int ii = 0; ii < population.size(); ii++) {
+			IChromosome chromosome = population.getChromosome(ii);
+			if (chromosome.getFitnessValueDirectly() < 0
+					&& pending.add(chromosome)) {
+				chromosomes.add(chromosome);
+				fitnessValues.add(executor.submit(() -> fitnessFunction
+						.getFitnessValue(chromosome)));
+			}
+		}
+
+		try {
+			for (int ii = 0; ii < chromosomes.size(); ii++) {
+				chromosomes.get(ii).setFitnessValue(fitnessValues.get(ii).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Fitness evaluation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Fitness evaluation failed",
+					e.getCause());
+		}
+	}
+
+	@Override
+	public Object clone() {
+		return new ParallelBreeder(executor);
+	}
+
+}
@@ -0,0 +1,42 @@
+package jgap;
+
+import java.util.List;
+
+import org.jgap.Configuration;
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+import org.jgap.impl.CrossoverOperator;
+
+/**
+ * JGAP's crossover, followed by a repair of the offspring so that each has
+ * exactly one start room and one Wumpus room. See LevelConstraints.
+ *
+ */
+@SuppressWarnings("serial")
+public class PlayableCrossoverOperator extends CrossoverOperator {
+
+	/**
+	 * @param conf The configuration of the run
+	 * @param crossoverRate Share of the population crossed over
+	 * @throws InvalidConfigurationException If JGAP rejects the operator
+	 */
+	public PlayableCrossoverOperator(Configuration conf, double crossoverRate)
+			throws InvalidConfigurationException {
+		super(conf, crossoverRate);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void operate(Population a_population, List a_candidateChromosomes) {
+		int firstOffspring = a_candidateChromosomes.size();
+		super.operate(a_population, a_candidateChromosomes);
+
+		for (int ii = firstOffspring; ii < a_candidateChromosomes.size(); ii++) {
+			LevelConstraints.repair(
+					(IChromosome) a_candidateChromosomes.get(ii),
+					getConfiguration().getRandomGenerator());
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package jgap;
+
+import java.util.List;
+
+import org.jgap.BaseGeneticOperator;
+import org.jgap.Configuration;
+import org.jgap.FitnessFunction;
+import org.jgap.IChromosome;
+import org.jgap.InvalidConfigurationException;
+import org.jgap.Population;
+import org.jgap.RandomGenerator;
+
+/**
+ * Mutation with the rate of JGAP's MutationOperator that keeps chromosomes
+ * playable: ordinary cells get a new ordinary value, and the start and
+ * Wumpus rooms move instead of changing. See LevelConstraints.
+ *
+ * As with MutationOperator, a mutated chromosome is added to the
+ * candidates as a copy and the original is left unchanged.
+ *
+ */
+@SuppressWarnings("serial")
+public class PlayableMutationOperator extends BaseGeneticOperator {
+
+	private final int mutationRateDenominator;
+
+	/**
+	 * @param conf The configuration of the run
+	 * @param mutationRateDenominator Inverse of the mutation probability of
+	 *                                a gene
+	 * @throws InvalidConfigurationException If JGAP rejects the operator
+	 */
+	public PlayableMutationOperator(Configuration conf,
+			int mutationRateDenominator) throws InvalidConfigurationException {
+		super(conf);
+		this.mutationRateDenominator = mutationRateDenominator;
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void operate(Population a_population, List a_candidateChromosomes) {
+		RandomGenerator random = getConfiguration().getRandomGenerator();
+		int populationSize = a_population.size();
+
+		for (int ii = 0; ii < populationSize; ii++) {
+			IChromosome chromosome = a_population.getChromosome(ii);
+			byte[] genes = null;
+			for (int gene = 0; gene < chromosome.size(); gene++) {
+				if (random.nextInt(mutationRateDenominator) == 0) {
+					if (genes == null) {
+						genes = LevelConstraints.toGenes(chromosome);
+					}
+					LevelConstraints.mutate(genes, 0, genes.length, gene,
+							random::nextInt);
+				}
+			}
+
+			if (genes != null) {
+				IChromosome mutant = (IChromosome) chromosome.clone();
+				LevelConstraints.setGenes(mutant, genes);
+				mutant.setFitnessValueDirectly(FitnessFunction.NO_FITNESS_VALUE);
+				a_candidateChromosomes.add(mutant);
+			}
+		}
+	}
+
+	// Operators are ordered by type and rate, as JGAP's own are
+	public int compareTo(Object other) {
+		if (!(other instanceof PlayableMutationOperator)) {
+			return getClass().getName().compareTo(other.getClass().getName());
+		}
+		return Integer.compare(mutationRateDenominator,
+				((PlayableMutationOperator) other).mutationRateDenominator);
+	}
+
+}
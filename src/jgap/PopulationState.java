@@ -0,0 +1,84 @@
+package jgap;
+
+/**
+ * Everything a population needs to carry on evolving where it left off:
+ * its individuals with their fitness, its generation, the best level found
+ * so far and the state of its random generator. Genomes are packed as
+ * FitnessCache.pack does.
+ *
+ * The random generator's state is a seed. A population that takes a
+ * snapshot draws the seed from its generator and restarts the generator
+ * from it, so a population restored from the snapshot draws the same
+ * numbers as the one that took it.
+ *
+ */
+public final class PopulationState {
+
+	private final int generation;
+	private final long[][] genomes;
+	private final double[] fitness;
+	private final long randomSeed;
+	private final long[] bestGenome;
+	private final double bestFitness;
+
+	/**
+	 * @param generation Number of generations evolved so far
+	 * @param genomes The packed genome of every individual
+	 * @param fitness The fitness of every individual, or
+	 *                FitnessFunction.NO_FITNESS_VALUE if it has not been
+	 *                evaluated
+	 * @param randomSeed Seed the random generator continues from
+	 * @param bestGenome The packed best level so far
+	 * @param bestFitness The fitness of the best level so far
+	 */
+	public PopulationState(int generation, long[][] genomes, double[] fitness,
+			long randomSeed, long[] bestGenome, double bestFitness) {
+		if (genomes.length != fitness.length) {
+			throw new IllegalArgumentException("Expected " + genomes.length
+					+ " fitness values, got " + fitness.length);
+		}
+		this.generation = generation;
+		this.genomes = genomes;
+		this.fitness = fitness;
+		this.randomSeed = randomSeed;
+		this.bestGenome = bestGenome;
+		this.bestFitness = bestFitness;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public int getSize() {
+		return genomes.length;
+	}
+
+	/**
+	 * @param individual Index of the individual
+	 * @return Its packed genome
+	 */
+	public long[] getGenome(int individual) {
+		return genomes[individual];
+	}
+
+	/**
+	 * @param individual Index of the individual
+	 * @return Its fitness, or FitnessFunction.NO_FITNESS_VALUE
+	 */
+	public double getFitness(int individual) {
+		return fitness[individual];
+	}
+
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	public long[] getBestGenome() {
+		return bestGenome;
+	}
+
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+}
@@ -0,0 +1,83 @@
+package jgap;
+
+/**
+ * Decides after every generation whether a run should go on. A run stops
+ * when it reaches its generation limit, or earlier when one of the optional
+ * limits of its GenerationOptions is hit:
+ * - the best fitness has not improved for a number of generations,
+ * - the best fitness reached a threshold,
+ * - the time budget is used up,
+ * - the number of simulations reached a maximum,
+ * - the run was cancelled.
+ *
+ * Limits are checked between generations, so a run can overshoot the time
+ * budget and the simulation count by up to one generation.
+ *
+ */
+public class StoppingPolicy {
+
+	/**
+	 * Why a run stopped.
+	 */
+	public enum StopReason {
+		GENERATIONS, STAGNATION, FITNESS_THRESHOLD, DEADLINE, MAX_EVALUATIONS,
+		CANCELLED
+	}
+
+	// Smallest gain in fitness that counts as an improvement
+	private static final double IMPROVEMENT = 1e-9;
+
+	private final GenerationOptions options;
+	private final long deadline;
+
+	private double bestFitness = Double.NEGATIVE_INFINITY;
+	private int lastImprovement;
+
+	/**
+	 * Starts the clock of the time budget.
+	 *
+	 * @param options The limits of the run
+	 */
+	public StoppingPolicy(GenerationOptions options) {
+		this.options = options;
+		this.deadline = options.getTimeBudgetMillis() > 0 ? System.nanoTime()
+				+ options.getTimeBudgetMillis() * 1000000L : 0;
+	}
+
+	/**
+	 * @param generation The number of generations evolved so far
+	 * @param fitness The best fitness so far
+	 * @param evaluations The number of simulations run so far
+	 * @return Why the run should stop, or null if it should go on
+	 */
+	public StopReason check(int generation, double fitness, long evaluations) {
+		if (fitness > bestFitness + IMPROVEMENT) {
+			bestFitness = fitness;
+			lastImprovement = generation;
+		}
+
+		if (options.getCancellation() != null
+				&& options.getCancellation().getAsBoolean()) {
+			return StopReason.CANCELLED;
+		}
+		if (fitness >= options.getFitnessThreshold()) {
+			return StopReason.FITNESS_THRESHOLD;
+		}
+		if (generation >= options.getGenerations()) {
+			return StopReason.GENERATIONS;
+		}
+		if (options.getStagnationWindow() > 0
+				&& generation - lastImprovement >= options.getStagnationWindow()) {
+			return StopReason.STAGNATION;
+		}
+		if (options.getMaxEvaluations() > 0
+				&& evaluations >= options.getMaxEvaluations()) {
+			return StopReason.MAX_EVALUATIONS;
+		}
+		if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+			return StopReason.DEADLINE;
+		}
+		return null;
+	}
+
+}
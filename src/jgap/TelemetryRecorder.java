@@ -0,0 +1,88 @@
+package jgap;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+/**
+ * Turns the counters of a run into a GenerationRecord per generation. The
+ * counters are read before and after every generation, so a record only
+ * covers its own generation.
+ *
+ */
+class TelemetryRecorder {
+
+	private final TelemetrySink sink;
+	private final String difficulty;
+	private final long seed;
+	private final WumpusFitnessFunction fitnessFunction;
+	private final FitnessCache fitnessCache;
+
+	// Counters at the end of the previous record
+	private long lastNanos;
+	private long lastEvaluationNanos;
+	private long lastEvaluations;
+	private long lastSimulations;
+	private long lastHits;
+	private long lastMisses;
+
+	/**
+	 * Starts timing the initial population, so create the recorder before
+	 * the population.
+	 *
+	 * @param fitnessCache The cache of the fitness function, or null
+	 */
+	TelemetryRecorder(TelemetrySink sink, String difficulty, long seed,
+			WumpusFitnessFunction fitnessFunction, FitnessCache fitnessCache) {
+		this.sink = sink;
+		this.difficulty = difficulty;
+		this.seed = seed;
+		this.fitnessFunction = fitnessFunction;
+		this.fitnessCache = fitnessCache;
+
+		lastNanos = System.nanoTime();
+		lastEvaluationNanos = fitnessFunction.getEvaluationNanos();
+		lastEvaluations = fitnessFunction.getEvaluationCount();
+		lastSimulations = fitnessFunction.getSimulationCount();
+		if (fitnessCache != null) {
+			lastHits = fitnessCache.getHits();
+			lastMisses = fitnessCache.getMisses();
+		}
+	}
+
+	// Records the generation the population has just evolved
+	void record(EvolvingPopulation population) {
+		long nanos = System.nanoTime();
+		long evaluationNanos = fitnessFunction.getEvaluationNanos();
+		long evaluations = fitnessFunction.getEvaluationCount();
+		long simulations = fitnessFunction.getSimulationCount();
+
+		double cacheHitRate = Double.NaN;
+		if (fitnessCache != null) {
+			long hits = fitnessCache.getHits();
+			long misses = fitnessCache.getMisses();
+			long lookups = hits - lastHits + misses - lastMisses;
+			cacheHitRate = lookups == 0 ? 0 : (double) (hits - lastHits)
+					/ lookups;
+			lastHits = hits;
+			lastMisses = misses;
+		}
+
+		SummaryStatistics fitness = new SummaryStatistics();
+		for (double value : population.getFitnessValues()) {
+			fitness.addValue(value);
+		}
+
+		sink.record(new GenerationRecord(difficulty, seed,
+				population.getGeneration(), population.getFittestValue(),
+				fitness.getMean(), fitness.getStandardDeviation(),
+				evaluations - lastEvaluations, simulations - lastSimulations,
+				(nanos - lastNanos) / 1e6,
+				(evaluationNanos - lastEvaluationNanos) / 1e6, cacheHitRate));
+
+		// Time spent in the sink counts for no generation
+		lastNanos = System.nanoTime();
+		lastEvaluationNanos = evaluationNanos;
+		lastEvaluations = evaluations;
+		lastSimulations = simulations;
+	}
+
+}
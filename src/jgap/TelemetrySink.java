@@ -0,0 +1,24 @@
+package jgap;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives a GenerationRecord after the initial population and after every
+ * generation of a run, on the thread running the GA. One sink can be
+ * shared by runs on several threads, so implementations must be thread
+ * safe.
+ *
+ * The sink belongs to whoever set it on GenerationOptions, and is not
+ * closed by the runs.
+ *
+ */
+public interface TelemetrySink extends Closeable {
+
+	void record(GenerationRecord record);
+
+	@Override
+	default void close() throws IOException {
+	}
+
+}
@@ -1,16 +1,58 @@
 package jgap;
 
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.jgap.FitnessFunction;
 import org.jgap.IChromosome;
 
+import ai.wumpus.SimulationResult;
 import ai.wumpus.WumpusAI;
 
 @SuppressWarnings("serial")
 public class WumpusFitnessFunction extends FitnessFunction {
 	
 	private String targetDifficulty = "";
-	private final int ROWS = WumpusSimulation.ROWS;
-	private final int COLUMNS = WumpusSimulation.COLUMNS;
+	private final DifficultyProfile profile;
+	private final int rows;
+	private final int columns;
+	private final FitnessCache fitnessCache;
+	private final EvaluationCoordinator coordinator;
+
+	// Number of cells of the levels the normalizers and targets of score
+	// were measured on. Counts of other levels are scaled to this size.
+	private static final double REFERENCE_CELLS = WumpusSimulation.ROWS
+			* WumpusSimulation.COLUMNS;
+
+	// Level features of the level being evaluated on each thread
+	private static final ThreadLocal<LevelFeatures> LEVEL_FEATURES = ThreadLocal
+			.withInitial(LevelFeatures::new);
+
+	// Features of the level being scored on each thread, indexed as in
+	// DifficultyProfile
+	private static final ThreadLocal<double[]> FEATURES = ThreadLocal
+			.withInitial(() -> new double[DifficultyProfile.FEATURES]);
+
+	// Number of simulations run, cache hits excluded
+	private final AtomicLong simulationCount = new AtomicLong();
+
+	// Number of levels that failed the screen and were not simulated
+	private final AtomicLong screenedCount = new AtomicLong();
+
+	// Number of levels evaluated, cache hits and screened levels included
+	private final AtomicLong evaluationCount = new AtomicLong();
+
+	// Wall time during which at least one evaluation was running, on any
+	// thread. The rest of a run's time goes to breeding.
+	private final Object busyLock = new Object();
+	private int activeEvaluations;
+	private long busySince;
+	private long evaluationNanos;
 	
 	/**
      * Constructs WumpusFitnessFunction with the desired
@@ -20,8 +62,69 @@ public class WumpusFitnessFunction extends FitnessFunction {
      *                         "easy", "medium", or "hard" 
      */
     public WumpusFitnessFunction( String targetDifficulty )
+    {
+        this( targetDifficulty, null );
+    }
+
+	/**
+     * Constructs WumpusFitnessFunction with the desired level of difficulty
+     * and a cache of previously evaluated genomes.
+     *
+     * Cached values are only valid if evaluation is deterministic, so with a
+     * cache the runtime feature is fixed at 0 seconds instead of being
+     * measured. That is what the millisecond clock reads for almost every
+     * simulation anyway.
+     *
+     * @param targetDifficulty The desired level of difficulty,
+     *                         "easy", "medium", or "hard"
+     * @param fitnessCache Cache shared by the evaluations of a run, or null
+     */
+    public WumpusFitnessFunction( String targetDifficulty, FitnessCache fitnessCache )
+    {
+        this( targetDifficulty, fitnessCache, null );
+    }
+
+	/**
+     * Constructs WumpusFitnessFunction that runs its simulations on
+     * evaluation workers. Levels are still screened and looked up in the
+     * cache locally.
+     *
+     * @param targetDifficulty The desired level of difficulty,
+     *                         "easy", "medium", or "hard"
+     * @param fitnessCache Cache shared by the evaluations of a run, or null
+     * @param coordinator Sends the simulations to the workers, or null to
+     *                    simulate in this JVM
+     */
+    public WumpusFitnessFunction( String targetDifficulty, FitnessCache fitnessCache,
+            EvaluationCoordinator coordinator )
+    {
+        this( targetDifficulty, WumpusSimulation.ROWS, WumpusSimulation.COLUMNS,
+                fitnessCache, coordinator );
+    }
+
+	/**
+     * Constructs WumpusFitnessFunction for chromosomes of levels with the
+     * given size.
+     *
+     * @param targetDifficulty The desired level of difficulty, "easy",
+     *                         "medium", "hard" or another profile of
+     *                         DifficultyProfiles.getDefault()
+     * @param rows Number of rows of a level
+     * @param columns Number of columns of a level
+     * @param fitnessCache Cache shared by the evaluations of a run, or null
+     * @param coordinator Sends the simulations to the workers, or null to
+     *                    simulate in this JVM
+     * @throws IllegalArgumentException If there is no such difficulty
+     */
+    public WumpusFitnessFunction( String targetDifficulty, int rows, int columns,
+            FitnessCache fitnessCache, EvaluationCoordinator coordinator )
     {
         this.targetDifficulty = targetDifficulty.toLowerCase();
+        this.profile = DifficultyProfiles.getDefault().get(targetDifficulty);
+        this.rows = rows;
+        this.columns = columns;
+        this.fitnessCache = fitnessCache;
+        this.coordinator = coordinator;
     }
 
     /**
@@ -35,211 +138,273 @@ public class WumpusFitnessFunction extends FitnessFunction {
      *         Chromosome.
      */
 	@Override
-	protected double evaluate(IChromosome subject) {		
+	protected double evaluate(IChromosome subject) {
+		return evaluateLevel(GenerateWumpusLevels.convertChromosomeToLevel(
+				subject, rows, columns));
+	}
+
+	/**
+	 * Determine the fitness of a level directly, for GA engines that do not
+	 * keep their genomes as Chromosome instances.
+	 *
+	 * @param map The level, indexed by row and column
+	 * @return The fitness of the level
+	 */
+	public double evaluateLevel(int[][] map) {
+		if (coordinator != null) {
+			return evaluateLevels(Collections.singletonList(map))[0];
+		}
+
+		beginEvaluation();
+		try {
+			return evaluateLocally(map);
+		} finally {
+			endEvaluation();
+		}
+	}
+
+	private double evaluateLocally(int[][] map) {
+		evaluationCount.incrementAndGet();
+		EvaluationEvent event = new EvaluationEvent();
+		event.begin();
+
+		// Unplayable levels are not worth a simulation
+		int[] cellCounts = extractFeatures(map).getCellCounts();
+		if (!LevelScreen.isPlayable(cellCounts)) {
+			screenedCount.incrementAndGet();
+			double fitness = LevelScreen.penaltyFitness(cellCounts);
+			event.finish(targetDifficulty, EvaluationEvent.SCREENED, fitness,
+					null, map);
+			return fitness;
+		}
+
+		if (fitnessCache == null) {
+			return simulateAndScore(map, cellCounts, event);
+		}
+
+		long[] genome = FitnessCache.pack(map);
+		double fitness = fitnessCache.get(genome);
+		if (fitness == NO_FITNESS_VALUE) {
+			fitness = simulateAndScore(map, cellCounts, event);
+			fitnessCache.put(genome, fitness);
+		} else {
+			event.finish(targetDifficulty, EvaluationEvent.CACHED, fitness,
+					null, map);
+		}
+		return fitness;
+	}
+
+	/**
+	 * Determine the fitness of several levels at once. With a coordinator,
+	 * the levels that need a simulation go to the workers as one batch.
+	 *
+	 * @param maps The levels, each indexed by row and column
+	 * @return The fitness of each level, in the same order
+	 */
+	public double[] evaluateLevels(List<int[][]> maps) {
+		beginEvaluation();
+		try {
+			if (coordinator == null) {
+				double[] fitness = new double[maps.size()];
+				for (int ii = 0; ii < maps.size(); ii++) {
+					fitness[ii] = evaluateLocally(maps.get(ii));
+				}
+				return fitness;
+			}
+			return evaluateRemotely(maps);
+		} finally {
+			endEvaluation();
+		}
+	}
+
+	private double[] evaluateRemotely(List<int[][]> maps) {
+		evaluationCount.addAndGet(maps.size());
+		double[] fitness = new double[maps.size()];
+
+		// Screen and look up locally, simulate the rest remotely. With a
+		// cache, a genome that occurs twice is only simulated once, as it
+		// would be when evaluating one level after another.
+		List<List<Integer>> pending = new ArrayList<List<Integer>>();
+		List<int[][]> pendingMaps = new ArrayList<int[][]>();
+		Map<LongBuffer, List<Integer>> pendingGenomes = new HashMap<LongBuffer, List<Integer>>();
+		for (int ii = 0; ii < maps.size(); ii++) {
+			int[] cellCounts = extractFeatures(maps.get(ii)).getCellCounts();
+			if (!LevelScreen.isPlayable(cellCounts)) {
+				screenedCount.incrementAndGet();
+				fitness[ii] = LevelScreen.penaltyFitness(cellCounts);
+				continue;
+			}
+
+			List<Integer> indices = null;
+			if (fitnessCache != null) {
+				long[] genome = FitnessCache.pack(maps.get(ii));
+				fitness[ii] = fitnessCache.get(genome);
+				if (fitness[ii] != NO_FITNESS_VALUE) {
+					continue;
+				}
+				indices = pendingGenomes.get(LongBuffer.wrap(genome));
+				if (indices == null) {
+					indices = new ArrayList<Integer>();
+					pendingGenomes.put(LongBuffer.wrap(genome), indices);
+				} else {
+					indices.add(ii);
+					continue;
+				}
+			} else {
+				indices = new ArrayList<Integer>();
+			}
+			indices.add(ii);
+			pending.add(indices);
+			pendingMaps.add(maps.get(ii));
+		}
+		if (pending.isEmpty()) {
+			return fitness;
+		}
+
+		List<EvaluationProtocol.Evaluation> evaluations = coordinator
+				.evaluate(targetDifficulty, fitnessCache != null, pendingMaps);
+		for (int ii = 0; ii < pending.size(); ii++) {
+			EvaluationProtocol.Evaluation evaluation = evaluations.get(ii);
+			simulationCount.incrementAndGet();
+			WumpusSimulation.recordSimulation(evaluation.getResult());
+
+			for (int index : pending.get(ii)) {
+				fitness[index] = evaluation.getFitness();
+			}
+			if (fitnessCache != null) {
+				fitnessCache.put(FitnessCache.pack(pendingMaps.get(ii)),
+						evaluation.getFitness());
+			}
+		}
+		return fitness;
+	}
+
+	// Size of the levels of the chromosomes this function evaluates
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	private void beginEvaluation() {
+		synchronized (busyLock) {
+			if (activeEvaluations++ == 0) {
+				busySince = System.nanoTime();
+			}
+		}
+	}
+
+	private void endEvaluation() {
+		synchronized (busyLock) {
+			if (--activeEvaluations == 0) {
+				evaluationNanos += System.nanoTime() - busySince;
+			}
+		}
+	}
+
+	// Whether simulations run on evaluation workers
+	public boolean isRemote() {
+		return coordinator != null;
+	}
+
+	private double simulateAndScore(int[][] map, int[] cellCounts,
+			EvaluationEvent event) {
 		// The fitness measures difficulty of a level generated from the Chromosome.
 		
 		// Step 1: run synthetic player simulation
-		int[][] map = GenerateWumpusLevels.convertChromosomeToLevel(subject);
-		WumpusAI.runSimulation(map, COLUMNS, ROWS);
-		
-		// Step 2: record and normalize the statistics 
+		SimulationResult result = WumpusAI.runSimulation(map);
+		simulationCount.incrementAndGet();
+		WumpusSimulation.recordSimulation(result);
+
+		double fitness = score(result, cellCounts, fitnessCache == null ? result.getRuntime() : 0);
+		event.finish(targetDifficulty, EvaluationEvent.SIMULATED, fitness,
+				result, map);
+		return fitness;
+	}
+
+	/**
+	 * Scores a simulated level, without running anything.
+	 *
+	 * @param result The simulation of the level
+	 * @param cellCounts The cell type counts of the level, see
+	 *                   LevelFeatures.getCellCounts
+	 * @param runtime The runtime feature in seconds, the simulation's
+	 *                runtime or 0 for a deterministic score
+	 * @return The fitness of the level
+	 */
+	public double score(SimulationResult result, int[] cellCounts, double runtime) {
+		// Step 2: record the statistics
 		// Simulation (steps, unique, moveratio, runtime)
-		// Level (noOfTunnels, roomToTunnelsRatio, noOfPits)
-				
-		double steps = WumpusAI.getSteps();
-		double unique = WumpusAI.getUnique();
-		double moveratio = WumpusAI.getMoveratio();
-		double runtime = WumpusAI.getRuntime();
-		
-		String[] mapElements = getMapElements(map);
-		
-		double noOfTunnels = Double.parseDouble(mapElements[0]);
-		double roomsToTunnelsRatio = Double.parseDouble(mapElements[1]);
-		
-		// Normalizer for noOfPits
-		NormUtil noOfPitsNormalizer = new NormUtil(1, 3, 0, 1);
-		double noOfPits = noOfPitsNormalizer.normalize(Double.parseDouble(mapElements[2]));
-		
-		double noOfWumpus = Double.parseDouble(mapElements[3]);
-		double noOfStart = Double.parseDouble(mapElements[4]);
-				
-		// Step 3: calculate fitness with the formula and return the fitness
-		double fitness = 0;
-		
-		// Initialize target value for each features
-		double targetSteps = 0;
-		double targetUnique = 0;
-		double targetMoveratio = 0;
-		double targetRuntime = 0;
-		
-		double targetNoOfTunnels = 0;
-		double targetRoomsToTunnelsRatio = 0;
-		double targetNoOfPits = 0;
-		
-		if (targetDifficulty.equals("easy")) {
-			// Normalizer for steps
-			NormUtil stepsNormalizer = new NormUtil(2, 1052, 0, 1);
-			
-			// Normalizer for unique
-			NormUtil uniqueNormalizer = new NormUtil(2, 66, 0, 1);
-			
-			// Normalizer for moveratio
-			NormUtil moveRatioNormalizer = new NormUtil(0.059, 1, 0, 1);
-			
-			// Normalizer for runtime
-			NormUtil runtimeNormalizer = new NormUtil(0, 0.074, 0, 1);
-			
-			// Normalizer for tunnels
-			NormUtil tunnelsNormalizer = new NormUtil(2, 28, 0, 1);
-			
-			// Normalizer for roomTunnelRatio
-			NormUtil roomToTunnelsRatioNormalizer = new NormUtil(1.321, 32.5, 0, 1);
-			
-			steps = stepsNormalizer.normalize(steps);
-			unique = uniqueNormalizer.normalize(unique);
-			moveratio = moveRatioNormalizer.normalize(moveratio);
-			runtime = runtimeNormalizer.normalize(runtime);
-			
-			noOfTunnels = tunnelsNormalizer.normalize(noOfTunnels);
-			roomsToTunnelsRatio = roomToTunnelsRatioNormalizer.normalize(roomsToTunnelsRatio);
-			
-			targetSteps = 0.234;
-			targetUnique = 0.703;
-			targetMoveratio = 0.271;
-			targetRuntime = 0.071;
-			
-			targetNoOfTunnels = 0.461;
-//			System.out.println(tunnelNormalizer.normalize(13.991));			
-			targetRoomsToTunnelsRatio = 0.086;
-			targetNoOfPits = 0.727;
-		} else if (targetDifficulty.equals("medium")) {
-			// Normalizer for steps
-			NormUtil stepsNormalizer = new NormUtil(2, 480, 0, 1);
-			
-			// Normalizer for unique
-			NormUtil uniqueNormalizer = new NormUtil(1, 47, 0, 1);
-			
-			// Normalizer for moveratio
-			NormUtil moveRatioNormalizer = new NormUtil(0.09, 1, 0, 1);
-			
-			// Normalizer for runtime
-			NormUtil runtimeNormalizer = new NormUtil(0, 0.062, 0, 1);
-			
-			// Normalizer for tunnels
-			NormUtil tunnelsNormalizer = new NormUtil(18, 53, 0, 1);
-			
-			// Normalizer for roomTunnelRatio
-			NormUtil roomToTunnelsRatioNormalizer = new NormUtil(0.226, 2.667, 0, 1);
-			
-			steps = stepsNormalizer.normalize(steps);
-			unique = uniqueNormalizer.normalize(unique);
-			moveratio = moveRatioNormalizer.normalize(moveratio);
-			runtime = runtimeNormalizer.normalize(runtime);
-			
-			noOfTunnels = tunnelsNormalizer.normalize(noOfTunnels);
-			roomsToTunnelsRatio = roomToTunnelsRatioNormalizer.normalize(roomsToTunnelsRatio);
-			
-			targetSteps = 0.245;
-			targetUnique = 0.562;
-			targetMoveratio = 0.234;
-			targetRuntime = 0.036;
-			
-			targetNoOfTunnels = 0.485;
-			targetRoomsToTunnelsRatio = 0.277;
-			targetNoOfPits = 0.711;
-		} else {
-			// Normalizer for steps
-			NormUtil stepsNormalizer = new NormUtil(2, 244, 0, 1);
-			
-			// Normalizer for unique
-			NormUtil uniqueNormalizer = new NormUtil(1, 33, 0, 1);
-			
-			// Normalizer for moveratio
-			NormUtil moveRatioNormalizer = new NormUtil(0.126, 1, 0, 1);
-			
-			// Normalizer for runtime
-			NormUtil runtimeNormalizer = new NormUtil(0, 0.032, 0, 1);
-			
-			// Normalizer for tunnels
-			NormUtil tunnelsNormalizer = new NormUtil(31, 63, 0, 1);
-			
-			// Normalizer for roomTunnelRatio
-			NormUtil roomToTunnelsRatioNormalizer = new NormUtil(0.048, 1.129, 0, 1);
-			
-			steps = stepsNormalizer.normalize(steps);
-			unique = uniqueNormalizer.normalize(unique);
-			moveratio = moveRatioNormalizer.normalize(moveratio);
-			runtime = runtimeNormalizer.normalize(runtime);
-			
-			noOfTunnels = tunnelsNormalizer.normalize(noOfTunnels);
-			roomsToTunnelsRatio = roomToTunnelsRatioNormalizer.normalize(roomsToTunnelsRatio);
-			
-			targetSteps = 0.147;
-			targetUnique = 0.356;
-			targetMoveratio = 0.371;
-			targetRuntime = 0.026;
-			
-			targetNoOfTunnels = 0.556;
-			targetRoomsToTunnelsRatio = 0.282;
-			targetNoOfPits = 0.684;
+		// Level (noOfTunnels, roomToTunnelsRatio, noOfPits, noOfWumpus, noOfStart)
+
+		// Features that count cells or moves grow with the level, so they
+		// are scaled to a level of the reference size. Ratios are not.
+		int cellCount = 0;
+		for (int count : cellCounts) {
+			cellCount += count;
 		}
-		
-		// Exactly one wumpus and one start room for any level of difficulty
-		double targetNoOfWumpus = 1.0;
-		double targetNoOfStart = 1.0;
-		
-		// Square of difference for each features
-		double squareOfDiffSteps = Math.pow(targetSteps - steps, 2);
-		double squareOfDiffUnique = Math.pow(targetUnique - unique, 2);
-		double squareOfDiffMoveratio = Math.pow(targetMoveratio - moveratio, 2);
-		double squareOfDiffRuntime = Math.pow(targetRuntime - runtime, 2);
-		
-		double squareOfDiffNoOfTunnels = Math.pow(targetNoOfTunnels - noOfTunnels, 2);
-		double squareOfDiffRoomsToTunnelsRatio = Math.pow(targetRoomsToTunnelsRatio - roomsToTunnelsRatio, 2);
-		double squareOfDiffNoOfPits = Math.pow(targetNoOfPits - noOfPits, 2);
-		double squareOfDiffNoOfWumpus = Math.pow(targetNoOfWumpus - noOfWumpus, 2);
-		double squareOfDiffNoOfStart = Math.pow(targetNoOfStart - noOfStart, 2);
-		
-		
-		// Euclidean distance of features 
-		fitness = Math.sqrt(squareOfDiffSteps + squareOfDiffUnique
-				+ squareOfDiffMoveratio + squareOfDiffRuntime
-				+ squareOfDiffNoOfTunnels + squareOfDiffRoomsToTunnelsRatio
-				+ squareOfDiffNoOfPits + squareOfDiffNoOfWumpus
-				+ squareOfDiffNoOfStart);
+		double sizeScale = REFERENCE_CELLS / cellCount;
+		double noOfTunnels = cellCounts[2] + cellCounts[3];
+
+		double[] features = FEATURES.get();
+		features[DifficultyProfile.STEPS] = result.getSteps() * sizeScale;
+		features[DifficultyProfile.UNIQUE] = result.getUnique() * sizeScale;
+		features[DifficultyProfile.MOVE_RATIO] = result.getMoveratio();
+		features[DifficultyProfile.RUNTIME] = runtime;
+		features[DifficultyProfile.TUNNELS] = noOfTunnels * sizeScale;
+		features[DifficultyProfile.ROOMS_TO_TUNNELS_RATIO] = cellCounts[1] / noOfTunnels;
+		features[DifficultyProfile.PITS] = cellCounts[4] * sizeScale;
+		features[DifficultyProfile.WUMPUS] = cellCounts[5];
+		features[DifficultyProfile.START] = cellCounts[0];
+
+		// Step 3: normalize, and take the distance from the targets of the
+		// difficulty
+		double fitness = profile.distance(features);
 		if (Double.isNaN(fitness)) {
 			return 0;
 		}
-		// Normalize
-		fitness = 100.0 - fitness;
-//		System.out.println(fitness);
-		return fitness;
+		// Normalize. JGAP rejects negative fitness, which a profile with
+		// large weights can give to a level far from its targets.
+		return Math.max(0, 100.0 - fitness);
+	}
+
+	/**
+	 * Extracts the level features into the calling thread's record, which
+	 * the next call on the thread overwrites.
+	 *
+	 * @param map The level, indexed by row and column
+	 * @return The features of the level
+	 */
+	static LevelFeatures extractFeatures(int[][] map) {
+		return LEVEL_FEATURES.get().extract(map);
+	}
+
+	public DifficultyProfile getProfile() {
+		return profile;
 	}
 	
-	public static String[] getMapElements(int[][] map) {
-		// 0: noOfTunnels
-		// 1: room/tunnel ratio
-		// 2: noOfPits
-		int[] mapElements = new int[5];
-		String[] mapElementsStr = new String[5];
-		
-		for (int ii = 0; ii < map.length; ii++) {
-			for (int jj = 0; jj < map[0].length; jj++) {
-				if (map[ii][jj] == 2 || map[ii][jj] == 3) mapElements[0]++;
-				else if (map[ii][jj] == 1) mapElements[1]++;
-				else if (map[ii][jj] == 4) mapElements[2]++;
-				else if (map[ii][jj] == 5) mapElements[3]++;
-				else if (map[ii][jj] == 0) mapElements[4]++;
-				
+	public long getSimulationCount() {
+		return simulationCount.get();
+	}
+
+	public long getScreenedCount() {
+		return screenedCount.get();
+	}
+
+	public long getEvaluationCount() {
+		return evaluationCount.get();
+	}
+
+	// Wall time spent evaluating so far, overlapping evaluations counted once
+	public long getEvaluationNanos() {
+		synchronized (busyLock) {
+			if (activeEvaluations > 0) {
+				return evaluationNanos + System.nanoTime() - busySince;
 			}
+			return evaluationNanos;
 		}
-		mapElementsStr[0] = mapElements[0] + "";
-		mapElementsStr[1] = ((double) mapElements[1] / mapElements[0]) + ""; 
-		mapElementsStr[2] = mapElements[2] + "";
-		mapElementsStr[3] = mapElements[3] + "";
-		mapElementsStr[4] = mapElements[4] + "";
-				
-		return mapElementsStr;
 	}
-	
+
 }
@@ -1,35 +1,118 @@
 package jgap;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
+import ai.wumpus.SimulationResult;
 import ai.wumpus.WumpusAI;
 
 public class WumpusSimulation {
 	public static PrintWriter logWriter;
 
-	public static SummaryStatistics fitnessLogger;
-	public static SummaryStatistics levelGenDurationLogger;
+	public static SummaryStatistics fitnessLogger = new SummaryStatistics();
+	public static SummaryStatistics levelGenDurationLogger = new SummaryStatistics();
 
-	// Number of levels to simulate
+	// Number of levels to simulate when no difficulty mix is given
 	public static final int NO_OF_LEVELS = 5;
 
-	// Rows and columns in a level
+	// Prefix of the argument listing evaluation workers
+	private static final String WORKERS_ARGUMENT = "workers=";
+
+	// Prefix of the argument giving the level size
+	private static final String SIZE_ARGUMENT = "size=";
+
+	// Prefix of the argument naming the per-generation telemetry file
+	private static final String TELEMETRY_ARGUMENT = "telemetry=";
+
+	// Prefixes of the arguments giving the checkpoint directory and the
+	// seed of the batch
+	private static final String CHECKPOINTS_ARGUMENT = "checkpoints=";
+	private static final String SEED_ARGUMENT = "seed=";
+
+	// Prefix of the argument naming a difficulty profile file
+	private static final String DIFFICULTIES_ARGUMENT = "difficulties=";
+
+	// Rows and columns in a level, unless another size is given
 	public static final int ROWS = 7;
 	public static final int COLUMNS = 10;
 
-	private static int sumOfMoves = 0;
-	private static int sumOfKilledWumpus = 0;
+	// Totals over every simulation run in this JVM
+	private static final AtomicInteger sumOfMoves = new AtomicInteger();
+	private static final AtomicInteger sumOfKilledWumpus = new AtomicInteger();
 
+	// Arguments are the difficulty mix, e.g. "easy=100 medium=50 hard=20".
+	// Without arguments NO_OF_LEVELS easy levels are generated. An argument
+	// "workers=host:port,host:port" runs the simulations on those
+	// EvaluationWorkers, and an argument "size=ROWSxCOLUMNS", e.g.
+	// "size=32x32", generates levels of that size. An argument
+	// "telemetry=file.jsonl" or "telemetry=file.csv" writes a record of
+	// every generation of every run to that file, see GenerationRecord. An
+	// argument "checkpoints=dir" checkpoints every run to that directory.
+	// Started again with the same "seed=N", which is logged, the batch
+	// resumes its runs from their checkpoints. An argument
+	// "difficulties=file.properties" adds or changes difficulty profiles,
+	// see DifficultyProfiles.
 	public static void main(String[] args) throws FileNotFoundException,
-			UnsupportedEncodingException {
+			UnsupportedEncodingException, IOException {
 		long simStartTime = System.currentTimeMillis();
 
+		List<InetSocketAddress> workers = new ArrayList<InetSocketAddress>();
+		List<String> mixArgs = new ArrayList<String>();
+		int rows = ROWS;
+		int columns = COLUMNS;
+		String telemetryFile = null;
+		Path checkpointDirectory = null;
+		long seed = simStartTime;
+		for (String arg : args) {
+			if (arg.startsWith(WORKERS_ARGUMENT)) {
+				workers.addAll(parseWorkers(arg.substring(WORKERS_ARGUMENT
+						.length())));
+			} else if (arg.startsWith(SIZE_ARGUMENT)) {
+				String[] size = arg.substring(SIZE_ARGUMENT.length()).split("x");
+				if (size.length != 2) {
+					throw new IllegalArgumentException(
+							"Expected size=ROWSxCOLUMNS, got " + arg);
+				}
+				rows = Integer.parseInt(size[0]);
+				columns = Integer.parseInt(size[1]);
+			} else if (arg.startsWith(TELEMETRY_ARGUMENT)) {
+				telemetryFile = arg.substring(TELEMETRY_ARGUMENT.length());
+			} else if (arg.startsWith(CHECKPOINTS_ARGUMENT)) {
+				checkpointDirectory = Paths.get(arg
+						.substring(CHECKPOINTS_ARGUMENT.length()));
+			} else if (arg.startsWith(SEED_ARGUMENT)) {
+				seed = Long.parseLong(arg.substring(SEED_ARGUMENT.length()));
+			} else if (arg.startsWith(DIFFICULTIES_ARGUMENT)) {
+				DifficultyProfiles.setDefault(DifficultyProfiles.load(Paths
+						.get(arg.substring(DIFFICULTIES_ARGUMENT.length()))));
+			} else {
+				mixArgs.add(arg);
+			}
+		}
+
+		Map<String, Integer> difficultyMix = parseDifficultyMix(mixArgs
+				.toArray(new String[0]));
+		int noOfLevels = 0;
+		for (int count : difficultyMix.values()) {
+			noOfLevels += count;
+		}
+
 		// Create file writer
 		logWriter = new PrintWriter("parameter-tweaking.txt", "UTF-8");
 
@@ -39,31 +122,73 @@ public class WumpusSimulation {
 		// Log timestamp
 		Date date = new Date();
 		logWriter.println("Experiment started at "
-				+ new Timestamp(date.getTime()) + " with " + NO_OF_LEVELS
-				+ " levels");
+				+ new Timestamp(date.getTime()) + " with " + noOfLevels
+				+ " levels " + difficultyMix + " of " + rows + "x" + columns
+				+ ", seed " + seed);
 		logWriter
 				.println("--------------------------------------------------------------------");
 
 		fitnessLogger = new SummaryStatistics();
 		levelGenDurationLogger = new SummaryStatistics();
 
+		// Generate the levels from GA, one run per core at a time
+		EvaluationCoordinator coordinator = workers.isEmpty() ? null
+				: new EvaluationCoordinator(workers,
+						EvaluationCoordinator.DEFAULT_BATCH_SIZE);
+		TelemetrySink telemetry = null;
+		if (telemetryFile != null) {
+			telemetry = telemetryFile.endsWith(".csv") ? new CsvTelemetrySink(
+					Paths.get(telemetryFile)) : new JsonLinesTelemetrySink(
+					Paths.get(telemetryFile));
+		}
+		GenerationOptions settings = new GenerationOptions();
+		settings.setCoordinator(coordinator);
+		settings.setGridSize(rows, columns);
+		settings.setTelemetrySink(telemetry);
+		if (checkpointDirectory != null) {
+			Files.createDirectories(checkpointDirectory);
+			settings.setCheckpoints(checkpointDirectory,
+					GenerationOptions.DEFAULT_CHECKPOINT_INTERVAL);
+		}
+
+		ForkJoinPool generationExecutor = new ForkJoinPool();
+		List<GeneratedLevel> levels = LevelBatch.generate(logWriter,
+				difficultyMix, seed, generationExecutor, settings);
+		generationExecutor.shutdown();
+		if (telemetry != null) {
+			telemetry.close();
+		}
+		if (coordinator != null) {
+			logWriter.print("Evaluation workers:\n" + coordinator);
+			coordinator.close();
+		}
+
+		// Keep the levels for the game servers
+		try (LevelArchiveWriter archive = new LevelArchiveWriter(
+				Paths.get("levels.wla"), rows, columns)) {
+			for (GeneratedLevel level : levels) {
+				archive.append(level);
+			}
+		}
+
 		// Run experiment
-		for (int ii = 0; ii < NO_OF_LEVELS; ii++) {
-			// Generate the level from GA
-			int[][] rawMap = GenerateWumpusLevels.generate(logWriter, "easy");
+		LevelFeatures features = new LevelFeatures();
+		for (GeneratedLevel level : levels) {
+			int[][] rawMap = level.getLevel();
 
 			// Record map information
-			String[] mapElements = WumpusFitnessFunction.getMapElements(rawMap);
-			simulationLogger.printf("%s,%3.3f,%s,", mapElements[0],
-					Double.parseDouble(mapElements[1]), mapElements[2]);
+			features.extract(rawMap);
+			simulationLogger.printf("%d,%3.3f,%d,", features.getTunnels(),
+					features.getRoomsToTunnelsRatio(), features.getPits());
 
 			// Run AI simulation
-			WumpusAI.runSimulation(rawMap, COLUMNS, ROWS);
+			SimulationResult result = WumpusAI.runSimulation(rawMap);
+			recordSimulation(result);
 
-			simulationLogger.printf("%d,%d,%d,%3.3f,%3.3f,hard\n",
-					(int) WumpusAI.getOutcome(), (int) WumpusAI.getSteps(),
-					(int) WumpusAI.getUnique(), WumpusAI.getMoveratio(),
-					WumpusAI.getRuntime());
+			simulationLogger.printf("%d,%d,%d,%3.3f,%3.3f,%s\n",
+					(int) result.getOutcome(), (int) result.getSteps(),
+					(int) result.getUnique(), result.getMoveratio(),
+					result.getRuntime(), level.getDifficulty());
 
 			simulationLogger.flush();
 		}
@@ -76,35 +201,76 @@ public class WumpusSimulation {
 				+ " seconds");
 
 		logWriter.printf("Mean of fitness from %d levels: %3.3f\n",
-				NO_OF_LEVELS, fitnessLogger.getMean());
+				noOfLevels, fitnessLogger.getMean());
 		logWriter.printf("StDev of fitness from %d levels: %3.3f\n",
-				NO_OF_LEVELS, fitnessLogger.getStandardDeviation());
+				noOfLevels, fitnessLogger.getStandardDeviation());
 
 		logWriter.printf(
 				"Mean of generation duration from %d levels: %3.3f seconds\n",
-				NO_OF_LEVELS, levelGenDurationLogger.getMean());
+				noOfLevels, levelGenDurationLogger.getMean());
 		logWriter.printf(
 				"StDev of generation duration from %d levels: %3.3f seconds\n",
-				NO_OF_LEVELS, levelGenDurationLogger.getStandardDeviation());
+				noOfLevels, levelGenDurationLogger.getStandardDeviation());
 
 		logWriter.close();
 		simulationLogger.close();
 	}
 
-	public static int getSumOfMoves() {
-		return sumOfMoves;
+	// Reads "difficulty=count" arguments
+	private static Map<String, Integer> parseDifficultyMix(String[] args) {
+		Map<String, Integer> difficultyMix = new LinkedHashMap<String, Integer>();
+		if (args.length == 0) {
+			difficultyMix.put("easy", NO_OF_LEVELS);
+		}
+		for (String arg : args) {
+			String[] mix = arg.split("=");
+			if (mix.length != 2) {
+				throw new IllegalArgumentException(
+						"Expected difficulty=count, got " + arg);
+			}
+			difficultyMix.merge(mix[0].toLowerCase(),
+					Integer.parseInt(mix[1]), Integer::sum);
+		}
+		return difficultyMix;
 	}
 
-	public static void setSumOfMoves(int sumOfMoves) {
-		WumpusSimulation.sumOfMoves = sumOfMoves;
+	// Reads "host:port,host:port"
+	private static List<InetSocketAddress> parseWorkers(String list) {
+		List<InetSocketAddress> workers = new ArrayList<InetSocketAddress>();
+		for (String worker : list.split(",")) {
+			int colon = worker.lastIndexOf(':');
+			if (colon < 0) {
+				throw new IllegalArgumentException(
+						"Expected host:port, got " + worker);
+			}
+			workers.add(new InetSocketAddress(worker.substring(0, colon),
+					Integer.parseInt(worker.substring(colon + 1))));
+		}
+		return workers;
 	}
 
-	public static int getSumOfKilledWumpus() {
-		return sumOfKilledWumpus;
+	// Adds a generated level to the fitness and duration statistics. Safe to
+	// call from any thread.
+	public static synchronized void recordGeneration(double fitness,
+			double duration) {
+		fitnessLogger.addValue(fitness);
+		levelGenDurationLogger.addValue(duration);
 	}
 
-	public static void setSumOfKilledWumpus(int sumOfKilledWumpus) {
-		WumpusSimulation.sumOfKilledWumpus = sumOfKilledWumpus;
+	// Adds a finished simulation to the totals. Safe to call from any thread.
+	public static void recordSimulation(SimulationResult result) {
+		sumOfMoves.addAndGet((int) result.getSteps());
+		if (result.isWumpusKilled()) {
+			sumOfKilledWumpus.incrementAndGet();
+		}
+	}
+
+	public static int getSumOfMoves() {
+		return sumOfMoves.get();
+	}
+
+	public static int getSumOfKilledWumpus() {
+		return sumOfKilledWumpus.get();
 	}
 
 }
\ No newline at end of file
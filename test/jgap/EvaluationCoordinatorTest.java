@@ -0,0 +1,179 @@
+package jgap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ai.wumpus.WumpusAI;
+
+/**
+ * Coordinators of workers on loopback, some of which fail.
+ *
+ */
+public class EvaluationCoordinatorTest {
+
+	private final List<EvaluationWorker> workers = new ArrayList<EvaluationWorker>();
+	private DyingWorker dyingWorker;
+	private EvaluationCoordinator coordinator;
+
+	// A worker that is killed in the middle of every call: it reads the
+	// request and drops the connection without answering
+	private static final class DyingWorker implements Runnable {
+		final ServerSocket serverSocket = new ServerSocket(0, 50,
+				InetAddress.getLoopbackAddress());
+		final AtomicInteger requests = new AtomicInteger();
+
+		DyingWorker() throws IOException {
+			Thread acceptor = new Thread(this, "dying-worker");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try (Socket connection = serverSocket.accept()) {
+					EvaluationProtocol.readRequest(new DataInputStream(
+							new BufferedInputStream(connection
+									.getInputStream())));
+					requests.incrementAndGet();
+				} catch (IOException e) {
+					// Closed, or the coordinator went away
+				}
+			}
+		}
+
+		InetSocketAddress getAddress() {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					serverSocket.getLocalPort());
+		}
+	}
+
+	@Before
+	public void startWorkers() throws IOException {
+		for (int ii = 0; ii < 2; ii++) {
+			workers.add(new EvaluationWorker(new InetSocketAddress(InetAddress
+					.getLoopbackAddress(), 0)));
+		}
+		dyingWorker = new DyingWorker();
+	}
+
+	@After
+	public void stopWorkers() throws IOException {
+		if (coordinator != null) {
+			coordinator.close();
+		}
+		for (EvaluationWorker worker : workers) {
+			worker.close();
+		}
+		dyingWorker.serverSocket.close();
+	}
+
+	private static InetSocketAddress addressOf(EvaluationWorker worker) {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				worker.getPort());
+	}
+
+	private static List<int[][]> levels(int count) {
+		List<int[][]> levels = new ArrayList<int[][]>();
+		for (int ii = 0; ii < count; ii++) {
+			levels.add(EvaluationProtocolTest.level(1 + ii % 6, 1 + ii % 9));
+		}
+		return levels;
+	}
+
+	@Test
+	public void batchOfKilledWorkerGoesToOthers() throws IOException {
+		coordinator = new EvaluationCoordinator(Arrays.asList(
+				dyingWorker.getAddress(), addressOf(workers.get(0))), 1);
+		List<int[][]> levels = levels(16);
+
+		List<EvaluationProtocol.Evaluation> evaluations = coordinator
+				.evaluate("easy", true, levels);
+		assertEquals(levels.size(), evaluations.size());
+		for (int ii = 0; ii < levels.size(); ii++) {
+			assertEquals(WumpusAI.runSimulation(levels.get(ii)).getSteps(),
+					evaluations.get(ii).getResult().getSteps(), 0);
+		}
+
+		assertTrue(dyingWorker.requests.get() > 0);
+		assertEquals(1, coordinator.getFailureCount(0));
+		assertEquals(levels.size(), coordinator.getEvaluatedCount(1));
+		assertEquals(1, coordinator.getConnectedCount());
+	}
+
+	@Test
+	public void failsWithoutWorkersLeft() throws IOException {
+		coordinator = new EvaluationCoordinator(Arrays.asList(dyingWorker
+				.getAddress()), 4);
+		try {
+			coordinator.evaluate("easy", true, levels(4));
+			fail("Evaluated without a worker");
+		} catch (IllegalStateException e) {
+			// The lost connection is the cause
+			assertTrue(String.valueOf(e.getCause()),
+					e.getCause() instanceof IOException);
+		}
+		assertEquals(0, coordinator.getConnectedCount());
+	}
+
+	@Test
+	public void errorResponseFailsCall() throws IOException {
+		coordinator = new EvaluationCoordinator(Arrays.asList(
+				addressOf(workers.get(0)), addressOf(workers.get(1))), 2);
+		try {
+			coordinator.evaluate("impossible", true, levels(8));
+			fail("Evaluated an unknown difficulty");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("impossible"));
+		}
+
+		// Neither retried nor taken for lost workers
+		assertEquals(2, coordinator.getConnectedCount());
+		assertEquals(0, coordinator.getFailureCount(0));
+		assertEquals(0, coordinator.getFailureCount(1));
+		assertEquals(8, coordinator.evaluate("easy", true, levels(8)).size());
+	}
+
+	@Test
+	public void remoteFitnessMatchesLocal() throws IOException {
+		coordinator = new EvaluationCoordinator(Arrays.asList(
+				addressOf(workers.get(0)), addressOf(workers.get(1))), 8);
+
+		GenerationOptions local = new GenerationOptions();
+		local.setSeed(42);
+		local.setGenerations(3);
+		GenerationOptions remote = new GenerationOptions(local);
+		remote.setCoordinator(coordinator);
+
+		PrintWriter log = new PrintWriter(new StringWriter());
+		GeneratedLevel localLevel = GenerateWumpusLevels.generate(log,
+				"medium", local);
+		GeneratedLevel remoteLevel = GenerateWumpusLevels.generate(log,
+				"medium", remote);
+		assertEquals(localLevel.getFitness(), remoteLevel.getFitness(), 0);
+		assertTrue(Arrays.deepEquals(localLevel.getLevel(),
+				remoteLevel.getLevel()));
+		assertTrue(coordinator.getEvaluatedCount(0)
+				+ coordinator.getEvaluatedCount(1) > 0);
+	}
+
+}
@@ -0,0 +1,192 @@
+package jgap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ai.wumpus.SimulationResult;
+import ai.wumpus.WumpusAI;
+
+/**
+ * Requests and responses between a coordinator and a worker on loopback.
+ *
+ */
+public class EvaluationProtocolTest {
+
+	private EvaluationWorker worker;
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	@Before
+	public void connect() throws IOException {
+		worker = new EvaluationWorker(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), 0));
+		socket = new Socket(InetAddress.getLoopbackAddress(), worker.getPort());
+		in = new DataInputStream(new BufferedInputStream(
+				socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(
+				socket.getOutputStream()));
+	}
+
+	@After
+	public void close() throws IOException {
+		socket.close();
+		worker.close();
+	}
+
+	// A playable 7x10 level: the start, the Wumpus and empty rooms
+	static int[][] level(int wumpusRow, int wumpusColumn) {
+		int[][] level = new int[7][10];
+		for (int[] row : level) {
+			Arrays.fill(row, 1);
+		}
+		level[0][0] = 0;
+		level[wumpusRow][wumpusColumn] = 5;
+		return level;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		List<int[][]> levels = Arrays.asList(level(3, 3), level(6, 9));
+		EvaluationProtocol.writeRequest(out, new EvaluationProtocol.Request(
+				"easy", true, levels));
+		List<EvaluationProtocol.Evaluation> evaluations = EvaluationProtocol
+				.readResponse(in);
+
+		assertEquals(levels.size(), evaluations.size());
+		for (int ii = 0; ii < levels.size(); ii++) {
+			SimulationResult local = WumpusAI.runSimulation(levels.get(ii));
+			SimulationResult remote = evaluations.get(ii).getResult();
+			assertEquals(local.getOutcome(), remote.getOutcome(), 0);
+			assertEquals(local.getSteps(), remote.getSteps(), 0);
+			assertEquals(local.getUnique(), remote.getUnique(), 0);
+			assertEquals(local.getCauseOfDeath(), remote.getCauseOfDeath());
+		}
+		assertEquals(levels.size(), worker.getEvaluatedCount());
+
+		// The connection carries the next request
+		EvaluationProtocol.writeRequest(out, new EvaluationProtocol.Request(
+				"hard", true, levels.subList(0, 1)));
+		assertEquals(1, EvaluationProtocol.readResponse(in).size());
+	}
+
+	@Test
+	public void requestRoundTripsLevels() throws IOException {
+		int[][] level = level(2, 7);
+		level[4][4] = 2;
+		level[5][1] = 3;
+		level[6][6] = 4;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		EvaluationProtocol.writeRequest(new DataOutputStream(bytes),
+				new EvaluationProtocol.Request("medium", false, Arrays.asList(
+						level, level(3, 3))));
+
+		EvaluationProtocol.Request request = EvaluationProtocol
+				.readRequest(new DataInputStream(new ByteArrayInputStream(
+						bytes.toByteArray())));
+		assertEquals("medium", request.getDifficulty());
+		assertEquals(false, request.isFixedRuntime());
+		assertEquals(2, request.getLevels().size());
+		assertTrue(Arrays.deepEquals(level, request.getLevels().get(0)));
+	}
+
+	// A request header with the given fields and no levels
+	private static byte[] header(int magic, int version, int rows,
+			int columns, int count) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(magic);
+		header.writeByte(version);
+		header.writeByte(EvaluationProtocol.FIXED_RUNTIME);
+		header.writeUTF("easy");
+		header.writeShort(rows);
+		header.writeShort(columns);
+		header.writeInt(count);
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void rejectsBadHeaders() throws IOException {
+		int magic = EvaluationProtocol.REQUEST_MAGIC;
+		int version = EvaluationProtocol.VERSION;
+		byte[][] headers = {
+				header(EvaluationProtocol.RESPONSE_MAGIC, version, 7, 10, 1),
+				header(magic, version + 1, 7, 10, 1),
+				header(magic, version, -3, 10, 1),
+				header(magic, version, 7, 0, 1),
+				header(magic, version, 2000, 2000, 1),
+				header(magic, version, 7, 10, 0),
+				header(magic, version, 7, 10, Integer.MAX_VALUE),
+				header(magic, version, 7, 10,
+						EvaluationProtocol.MAX_LEVELS + 1) };
+		for (byte[] header : headers) {
+			try {
+				EvaluationProtocol.readRequest(new DataInputStream(
+						new ByteArrayInputStream(header)));
+				fail("Accepted a bad header");
+			} catch (EOFException e) {
+				fail("Read levels for a bad header");
+			} catch (IOException e) {
+				// Rejected before the levels
+			}
+		}
+	}
+
+	@Test
+	public void workerDropsBadRequest() throws IOException {
+		out.write(header(EvaluationProtocol.REQUEST_MAGIC,
+				EvaluationProtocol.VERSION, 2000, 2000, 1));
+		out.flush();
+		try {
+			EvaluationProtocol.readResponse(in);
+			fail("Answered a bad request");
+		} catch (IOException e) {
+			// The worker closed the connection
+		}
+		assertEquals(0, worker.getEvaluatedCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesEmptyRequest() throws IOException {
+		EvaluationProtocol.writeRequest(out, new EvaluationProtocol.Request(
+				"easy", true, Collections.<int[][]> emptyList()));
+	}
+
+	@Test
+	public void errorResponse() throws IOException {
+		EvaluationProtocol.writeRequest(out, new EvaluationProtocol.Request(
+				"impossible", true, Collections.singletonList(level(3, 3))));
+		try {
+			EvaluationProtocol.readResponse(in);
+			fail("Evaluated an unknown difficulty");
+		} catch (EvaluationProtocol.WorkerException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("impossible"));
+		}
+
+		// The connection is still good
+		EvaluationProtocol.writeRequest(out, new EvaluationProtocol.Request(
+				"easy", true, Collections.singletonList(level(3, 3))));
+		assertEquals(1, EvaluationProtocol.readResponse(in).size());
+	}
+
+}
@@ -0,0 +1,168 @@
+package jgap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Takes from a pool that generates short runs on a real executor, held
+ * back by a latch where a take has to find the stock empty.
+ *
+ */
+public class LevelPoolTest {
+
+	private final PrintWriter log = new PrintWriter(new StringWriter());
+	private final GenerationOptions options = new GenerationOptions();
+	private final CountDownLatch refillsReleased = new CountDownLatch(1);
+	private ExecutorService refillExecutor;
+
+	@Before
+	public void startExecutor() {
+		options.setGenerations(2);
+		refillExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void stopExecutor() throws InterruptedException {
+		refillsReleased.countDown();
+		refillExecutor.shutdownNow();
+		refillExecutor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	// Keeps the refills queued until refillsReleased is counted down
+	private void holdRefills() {
+		refillExecutor.execute(() -> {
+			try {
+				refillsReleased.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+
+	@Test
+	public void takeWaitsForRefill() throws InterruptedException {
+		holdRefills();
+		LevelPool pool = new LevelPool(log, refillExecutor, options, 2, 1,
+				"easy");
+
+		AtomicReference<GeneratedLevel> taken =
+				new AtomicReference<GeneratedLevel>();
+		Thread taker = new Thread(() -> {
+			try {
+				taken.set(pool.take("easy"));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		taker.start();
+		while (taker.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, pool.getStarvationCount("easy"));
+		assertNull(taken.get());
+
+		refillsReleased.countDown();
+		taker.join();
+		assertNotNull(taken.get());
+		assertEquals("easy", taken.get().getDifficulty());
+		assertEquals(1, pool.getServedCount("easy"));
+		pool.close();
+	}
+
+	@Test
+	public void timedTake() throws InterruptedException {
+		holdRefills();
+		LevelPool pool = new LevelPool(log, refillExecutor, options, 1, 1,
+				"medium");
+
+		assertNull(pool.take("medium", 20, TimeUnit.MILLISECONDS));
+		assertEquals(1, pool.getPending("medium"));
+
+		refillsReleased.countDown();
+		GeneratedLevel level = pool.take("medium", 1, TimeUnit.MINUTES);
+		assertNotNull(level);
+		assertEquals("medium", level.getDifficulty());
+		pool.close();
+	}
+
+	@Test
+	public void closedPool() throws InterruptedException {
+		holdRefills();
+		LevelPool pool = new LevelPool(log, refillExecutor, options, 2, 1,
+				"easy");
+		pool.close();
+
+		// The refills queued before closing generate nothing
+		refillsReleased.countDown();
+		try {
+			pool.take("easy");
+			fail("Took a level from an empty closed pool");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("closed"));
+		}
+		assertEquals(0, pool.getPending("easy"));
+		assertEquals(0, pool.getGeneratedCount("easy"));
+	}
+
+	@Test
+	public void refillsAllFail() throws InterruptedException {
+		LevelPool pool = new LevelPool(log, refillExecutor, options, 2, 1,
+				"impossible");
+		try {
+			pool.take("impossible");
+			fail("Took a level no refill could generate");
+		} catch (IllegalStateException e) {
+			// Why the refills failed is the cause
+			assertTrue(String.valueOf(e.getCause()),
+					e.getCause() instanceof IllegalArgumentException);
+		}
+		try {
+			pool.take("impossible", 1, TimeUnit.MINUTES);
+			fail("Took a level no refill could generate");
+		} catch (IllegalStateException e) {
+			// Failed again, without waiting out the timeout
+		}
+		pool.close();
+	}
+
+	@Test
+	public void refillsRejected() throws InterruptedException {
+		refillExecutor.shutdown();
+		LevelPool pool = new LevelPool(log, refillExecutor, options, 2, 1,
+				"easy");
+		try {
+			pool.take("easy");
+			fail("Took a level without an executor to generate it");
+		} catch (IllegalStateException e) {
+			assertTrue(String.valueOf(e.getCause()),
+					e.getCause() instanceof RejectedExecutionException);
+		}
+		assertEquals(0, pool.getPending("easy"));
+		pool.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unpooledDifficulty() throws InterruptedException {
+		holdRefills();
+		LevelPool pool = new LevelPool(log, refillExecutor, options, 1, 1,
+				"easy");
+		pool.take("hard");
+	}
+
+}